@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.benchmark;
+
+import cl.ucn.disc.pdbp.tdd.ContratosImpl;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.search.SearchMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the Contratos: buscarFicha (index vs sql) and the pages of getAllFichas.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContratosBenchmark {
+
+    /**
+     * The number of fichas.
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * The backend.
+     */
+    @Param({"h2", "sqlite"})
+    public String database;
+
+    /**
+     * The way to search.
+     */
+    @Param({"INDEX", "SQL"})
+    public SearchMode searchMode;
+
+    /**
+     * The query: nombre of paciente, nombre of duenio, numero.
+     */
+    @Param({"Firulais", "Andrea", "1234"})
+    public String query;
+
+    /**
+     * The Contratos.
+     */
+    private ContratosImpl contratos;
+
+    /**
+     * Create and populate the database.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String databaseUrl = DataGenerator.databaseUrl(database, "contratos" + size);
+        DataGenerator.populate(databaseUrl, size, 2, 42);
+        contratos = new ContratosImpl(databaseUrl, searchMode);
+    }
+
+    /**
+     * @return the fichas found.
+     */
+    @Benchmark
+    public List<Ficha> buscarFicha() {
+        return contratos.buscarFicha(query);
+    }
+
+    /**
+     * @return the first page of fichas (relations in batch).
+     */
+    @Benchmark
+    public List<Ficha> getAllFichasPage() {
+        return contratos.getAllFichas(null, 100);
+    }
+
+}
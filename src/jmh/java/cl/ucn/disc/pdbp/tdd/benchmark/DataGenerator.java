@@ -0,0 +1,244 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.benchmark;
+
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.model.Sexo;
+import cl.ucn.disc.pdbp.tdd.model.Tipo;
+import cl.ucn.disc.pdbp.utils.Validation;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded synthetic data of Persona, Ficha and Control (the same seed, the same data).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class DataGenerator {
+
+    /**
+     * The nombres.
+     */
+    private static final String[] NOMBRES = {"Diego", "Andrea", "Luis", "Camila", "Pedro", "Javiera", "Matias",
+            "Fernanda", "Jose", "Valentina", "Cristobal", "Constanza"};
+
+    /**
+     * The apellidos.
+     */
+    private static final String[] APELLIDOS = {"Urrutia", "Contreras", "Gonzalez", "Munoz", "Rojas", "Diaz",
+            "Perez", "Soto", "Silva", "Araya", "Torres", "Castillo"};
+
+    /**
+     * The nombres of the pacientes.
+     */
+    private static final String[] PACIENTES = {"Firulais", "Michi", "Cachupin", "Rex", "Luna", "Toby", "Nala",
+            "Max", "Kira", "Bobby", "Pelusa", "Simba"};
+
+    /**
+     * The especies.
+     */
+    private static final String[] ESPECIES = {"Canino", "Felino", "Ave", "Roedor"};
+
+    /**
+     * The base of the ruts.
+     */
+    private static final int RUT_BASE = 10_000_000;
+
+    /**
+     * The dates of the data.
+     */
+    private static final ZonedDateTime EPOCH = ZonedDateTime.of(2020, 1, 1, 9, 0, 0, 0, ZoneId.of("America/Santiago"));
+
+    /**
+     * The source of random.
+     */
+    private final Random random;
+
+    /**
+     * The Constructor.
+     *
+     * @param seed of the data.
+     */
+    public DataGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param body of the rut.
+     * @return the rut (body + digito verificador), ej. 152532873.
+     */
+    public static String rut(int body) {
+        return String.valueOf(body) + Validation.rutCheckDigit(body);
+    }
+
+    /**
+     * @param i the number of the persona (unique).
+     * @return the Persona.
+     */
+    public Persona persona(int i) {
+        return new Persona(
+                rut(RUT_BASE + i),
+                pick(NOMBRES),
+                pick(APELLIDOS),
+                "Angamos #" + random.nextInt(2000),
+                null,
+                56900000000L + random.nextInt(100_000_000),
+                "persona" + i + "@fivet.cl");
+    }
+
+    /**
+     * @param i      the number of the ficha.
+     * @param duenio of the ficha.
+     * @return the Ficha.
+     */
+    public Ficha ficha(int i, Persona duenio) {
+        return new Ficha(
+                i,
+                pick(PACIENTES) + " " + pick(APELLIDOS),
+                pick(ESPECIES),
+                EPOCH.minusDays(random.nextInt(5000)),
+                "Mestizo",
+                random.nextBoolean() ? Sexo.MACHO : Sexo.HEMBRA,
+                "Cafe",
+                random.nextBoolean() ? Tipo.INTERNO : Tipo.EXTERNO,
+                duenio);
+    }
+
+    /**
+     * @param ficha       of the control.
+     * @param veterinario of the control.
+     * @return the Control.
+     */
+    public Control control(Ficha ficha, Persona veterinario) {
+        ZonedDateTime fecha = EPOCH.plusMinutes(random.nextInt(500_000));
+        return new Control(
+                fecha,
+                fecha.plusDays(30),
+                35 + random.nextFloat() * 5,
+                1 + random.nextFloat() * 40,
+                10 + random.nextFloat() * 80,
+                "Control de rutina",
+                veterinario,
+                ficha);
+    }
+
+    /**
+     * Create the tables and insert the data: one duenio each two fichas, 10 veterinarios.
+     *
+     * @param databaseUrl       to use.
+     * @param fichas            the number of fichas.
+     * @param controlesPorFicha the number of controles of each ficha.
+     * @param seed              of the data.
+     */
+    public static void populate(String databaseUrl, int fichas, int controlesPorFicha, long seed)
+            throws SQLException, IOException {
+
+        DataGenerator generator = new DataGenerator(seed);
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            TableUtils.createTableIfNotExists(connectionSource, Control.class);
+
+            RepositoryOrmLite<Persona, Long> repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            RepositoryOrmLite<Ficha, Long> repoFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+            RepositoryOrmLite<Control, Long> repoControl = new RepositoryOrmLite<>(connectionSource, Control.class);
+
+            // The veterinarios
+            List<Persona> veterinarios = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                veterinarios.add(generator.persona(i));
+            }
+            repoPersona.createAll(veterinarios);
+
+            // The duenios, fichas and controles (in blocks, to keep the memory bounded)
+            int block = 10_000;
+            for (int from = 0; from < fichas; from += block) {
+                int to = Math.min(from + block, fichas);
+
+                List<Persona> duenios = new ArrayList<>();
+                for (int i = from; i < to; i += 2) {
+                    duenios.add(generator.persona(veterinarios.size() + i / 2));
+                }
+                repoPersona.createAll(duenios);
+
+                List<Ficha> list = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    list.add(generator.ficha(i + 1, duenios.get((i - from) / 2)));
+                }
+                repoFicha.createAll(list);
+
+                List<Control> controles = new ArrayList<>();
+                for (Ficha ficha : list) {
+                    for (int c = 0; c < controlesPorFicha; c++) {
+                        controles.add(generator.control(ficha, veterinarios.get(generator.random.nextInt(10))));
+                    }
+                }
+                repoControl.createAll(controles);
+            }
+        }
+    }
+
+    /**
+     * @param database h2 or sqlite.
+     * @param name     of the database.
+     * @return the url of a new database (sqlite in a temporal file).
+     */
+    public static String databaseUrl(String database, String name) throws IOException {
+        switch (database) {
+            case "h2":
+                return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+            case "sqlite":
+                File file = File.createTempFile(name, ".db");
+                file.deleteOnExit();
+                return "jdbc:sqlite:" + file.getAbsolutePath();
+            default:
+                throw new IllegalArgumentException("Database not supported: " + database);
+        }
+    }
+
+    /**
+     * @param values to use.
+     * @return one of the values.
+     */
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.benchmark;
+
+import cl.ucn.disc.pdbp.tdd.dao.Fetch;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.support.ConnectionSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the {@link RepositoryOrmLite}: findById, a page of findByIds (default vs batch) and a lookup by
+ * numero (QueryBuilder vs prepared query).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    /**
+     * The number of fichas.
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * The backend.
+     */
+    @Param({"h2", "sqlite"})
+    public String database;
+
+    /**
+     * The connection.
+     */
+    private ConnectionSource connectionSource;
+
+    /**
+     * The repo of Persona.
+     */
+    private RepositoryOrmLite<Persona, Long> repoPersona;
+
+    /**
+     * The repo of Ficha.
+     */
+    private RepositoryOrmLite<Ficha, Long> repoFicha;
+
+    /**
+     * The ids to use.
+     */
+    private final Random random = new Random(42);
+
+    /**
+     * Create and populate the database.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String databaseUrl = DataGenerator.databaseUrl(database, "repository" + size);
+        DataGenerator.populate(databaseUrl, size, 2, 42);
+        connectionSource = new JdbcPooledConnectionSource(databaseUrl);
+        repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+        repoFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+        repoFicha.prepare("byNumero", query -> query.where().eq("numero", new SelectArg()));
+    }
+
+    /**
+     * Close the connection.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connectionSource.close();
+    }
+
+    /**
+     * @return a random Persona.
+     */
+    @Benchmark
+    public Persona findPersonaById() {
+        return repoPersona.findById(1L + random.nextInt(size / 2));
+    }
+
+    /**
+     * @return a random Ficha (with the relations as declared).
+     */
+    @Benchmark
+    public Ficha findFichaById() {
+        return repoFicha.findById(1L + random.nextInt(size));
+    }
+
+    /**
+     * @return 100 random Fichas, the relations one query per row.
+     */
+    @Benchmark
+    public List<Ficha> findFichasByIdsDefault() {
+        return repoFicha.findByIds(ids(100), Fetch.DEFAULT);
+    }
+
+    /**
+     * @return 100 random Fichas, the relations in batch.
+     */
+    @Benchmark
+    public List<Ficha> findFichasByIdsBatch() {
+        return repoFicha.findByIds(ids(100), Fetch.BATCH);
+    }
+
+    /**
+     * @return the Fichas with a random numero, building the SQL in each call.
+     */
+    @Benchmark
+    public List<Ficha> findFichaByNumeroQueryBuilder() throws SQLException {
+        return repoFicha.getQuery().where().eq("numero", random.nextInt(size)).query();
+    }
+
+    /**
+     * @return the Fichas with a random numero, with the query compiled once.
+     */
+    @Benchmark
+    public List<Ficha> findFichaByNumeroPrepared() {
+        return repoFicha.query("byNumero", random.nextInt(size));
+    }
+
+    /**
+     * @param n the number of ids.
+     * @return n random ids of Ficha.
+     */
+    private List<Long> ids(int n) {
+        List<Long> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ids.add(1L + random.nextInt(size));
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.benchmark;
+
+import cl.ucn.disc.pdbp.tdd.ContratosImpl;
+import cl.ucn.disc.pdbp.tdd.dao.PoolConfig;
+import cl.ucn.disc.pdbp.tdd.dao.SqliteConfig;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.search.SearchMode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of the Contratos in a SQLite file with readers and writers at the same time: the generic pool (the
+ * default journal, all the connections read and write) vs the {@link SqliteConfig} (WAL, one writer and the
+ * read-only pool).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqliteBenchmark {
+
+    /**
+     * The number of fichas.
+     */
+    private static final int FICHAS = 10_000;
+
+    /**
+     * The connections: pool (today) or wal (the SqliteConfig).
+     */
+    @Param({"pool", "wal"})
+    public String profile;
+
+    /**
+     * The Contratos.
+     */
+    private ContratosImpl contratos;
+
+    /**
+     * The generator of Personas.
+     */
+    private final DataGenerator generator = new DataGenerator(42);
+
+    /**
+     * The number of the next Persona (after the populated ones).
+     */
+    private final AtomicInteger next = new AtomicInteger(FICHAS);
+
+    /**
+     * Create and populate the database.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String databaseUrl = DataGenerator.databaseUrl("sqlite", "sqlite" + profile);
+        DataGenerator.populate(databaseUrl, FICHAS, 5, 42);
+        if ("wal".equals(profile)) {
+            contratos = new ContratosImpl(databaseUrl, Collections.emptyList(), SearchMode.INDEX,
+                    PoolConfig.DEFAULT, SqliteConfig.DEFAULT);
+        } else {
+            // The writers wait the lock of the database (instead of SQLITE_BUSY)
+            contratos = new ContratosImpl(databaseUrl + "?busy_timeout=30000", SearchMode.INDEX);
+        }
+    }
+
+    /**
+     * Close the connections.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        contratos.getControlQueue().close();
+        contratos.getRouter().close();
+    }
+
+    /**
+     * @return the history of a random ficha.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public List<Control> read() {
+        return contratos.getControlesFicha((long) ThreadLocalRandom.current().nextInt(1, FICHAS + 1), 0, 10);
+    }
+
+    /**
+     * @param writes the committed and failed.
+     * @return a new Persona (null if failed).
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public Persona write(Writes writes) {
+        try {
+            Persona persona = contratos.registrarPersona(generator.persona(next.incrementAndGet()));
+            writes.committed++;
+            return persona;
+        } catch (RuntimeException ex) {
+            // SQLITE_BUSY: the lock of the file taken by other connection
+            writes.failed++;
+            return null;
+        }
+    }
+
+    /**
+     * The writes of each thread (in the results).
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Writes {
+
+        /**
+         * The Personas saved.
+         */
+        public long committed;
+
+        /**
+         * The Personas not saved.
+         */
+        public long failed;
+
+        /**
+         * Reset in each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            committed = 0;
+            failed = 0;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.benchmark;
+
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.dao.TableConfigs;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the startup: the creation of the repositories of Ficha, Persona and Control reading the annotations
+ * vs using the configuration precomputed ({@link TableConfigs}). One shot by JVM (a cold start, like a batch job);
+ * with -bm avgt the time with the JVM warm.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    /**
+     * The source of the configuration of the tables.
+     */
+    @Param({"annotations", "configs"})
+    public String mode;
+
+    /**
+     * The connection (new in each iteration: the daos are cached by connection).
+     */
+    private ConnectionSource connectionSource;
+
+    /**
+     * The connection, without daos.
+     */
+    @Setup(Level.Iteration)
+    public void connect() throws Exception {
+        DaoManager.clearDaoCache();
+        connectionSource = new JdbcConnectionSource("jdbc:h2:mem:");
+    }
+
+    /**
+     * Close the connection.
+     */
+    @TearDown(Level.Iteration)
+    public void close() throws Exception {
+        connectionSource.close();
+    }
+
+    /**
+     * @return the repositories.
+     */
+    @Benchmark
+    public List<RepositoryOrmLite<?, Long>> createRepositories() {
+
+        // The load of the configuration is part of the startup (once)
+        if ("configs".equals(mode)) {
+            TableConfigs.install();
+        }
+
+        List<RepositoryOrmLite<?, Long>> repositories = new ArrayList<>(3);
+        repositories.add(new RepositoryOrmLite<Ficha, Long>(connectionSource, Ficha.class));
+        repositories.add(new RepositoryOrmLite<Persona, Long>(connectionSource, Persona.class));
+        repositories.add(new RepositoryOrmLite<Control, Long>(connectionSource, Control.class));
+        return repositories;
+    }
+
+}
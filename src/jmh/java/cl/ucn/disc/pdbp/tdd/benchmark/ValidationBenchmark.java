@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.benchmark;
+
+import cl.ucn.disc.pdbp.utils.Validation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmark of the {@link Validation}.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    /**
+     * The number of ruts.
+     */
+    private static final int SIZE = 1024;
+
+    /**
+     * The ruts to validate.
+     */
+    private final String[] ruts = new String[SIZE];
+
+    /**
+     * The ruts formatted (15.253.287-3).
+     */
+    private final String[] formatted = new String[SIZE];
+
+    /**
+     * The emails to validate.
+     */
+    private final String[] emails = new String[SIZE];
+
+    /**
+     * The data.
+     */
+    @Setup
+    public void setup() {
+        for (int i = 0; i < SIZE; i++) {
+            int body = 10_000_000 + i * 7919;
+            ruts[i] = DataGenerator.rut(body);
+            formatted[i] = String.format(Locale.US, "%,d-%c", body, Validation.rutCheckDigit(body)).replace(',', '.');
+            emails[i] = "persona" + i + "@fivet.cl";
+        }
+    }
+
+    /**
+     * @param blackhole to consume.
+     */
+    @Benchmark
+    public void isRutValid(Blackhole blackhole) {
+        for (String rut : ruts) {
+            blackhole.consume(Validation.isRutValid(rut));
+        }
+    }
+
+    /**
+     * @param blackhole to consume.
+     */
+    @Benchmark
+    public void isRutValidFormatted(Blackhole blackhole) {
+        for (String rut : formatted) {
+            blackhole.consume(Validation.isRutValid(rut));
+        }
+    }
+
+    /**
+     * @param blackhole to consume.
+     */
+    @Benchmark
+    public void isRutValidLegacy(Blackhole blackhole) {
+        for (String rut : ruts) {
+            blackhole.consume(legacyIsRutValid(rut));
+        }
+    }
+
+    /**
+     * @return the bodies of the ruts.
+     */
+    @Benchmark
+    public long[] parseRuts() {
+        return Validation.parseRuts(Arrays.asList(ruts));
+    }
+
+    /**
+     * @param blackhole to consume.
+     */
+    @Benchmark
+    public void isEmailValid(Blackhole blackhole) {
+        for (String email : emails) {
+            blackhole.consume(Validation.isEmailValid(email));
+        }
+    }
+
+    /**
+     * The implementation before the single pass parser (substring + regex + parseInt), the baseline.
+     *
+     * @param rut to validate.
+     * @return true is rut is valid.
+     */
+    @SuppressWarnings("MethodWithMultipleReturnPoints")
+    private static boolean legacyIsRutValid(String rut) {
+        if (rut == null || rut.length() < 2) {
+            return false;
+        }
+        char dv = rut.charAt(rut.length() - 1);
+        String numbers = rut.substring(0, rut.length() - 1);
+        if (!Pattern.matches("[0-9]+", numbers)) {
+            return false;
+        }
+        int m = 0, s = 1;
+        for (int r = Integer.parseInt(numbers); r != 0; r /= 10) {
+            s = (s + r % 10 * (9 - m++ % 6)) % 11;
+        }
+        return dv == (char) (s != 0 ? s + 47 : 75);
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.benchmark;
+
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.dao.WriteBehindQueue;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the inserts of Control from many threads in SQLite: each one in its own transaction (autocommit) vs
+ * the {@link WriteBehindQueue} (group commit). The time until the commit of each insert.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+    /**
+     * The max number of Controles by transaction (1: without group commit).
+     */
+    @Param({"1", "100"})
+    public int maxBatch;
+
+    /**
+     * The connection.
+     */
+    private ConnectionSource connectionSource;
+
+    /**
+     * The repo of Control.
+     */
+    private RepositoryOrmLite<Control, Long> repoControl;
+
+    /**
+     * The write behind.
+     */
+    private WriteBehindQueue<Control, Long> queue;
+
+    /**
+     * The generator of Controles.
+     */
+    private final DataGenerator generator = new DataGenerator(42);
+
+    /**
+     * The ficha of the Controles.
+     */
+    private Ficha ficha;
+
+    /**
+     * The veterinario of the Controles.
+     */
+    private Persona veterinario;
+
+    /**
+     * Create the database.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String databaseUrl = DataGenerator.databaseUrl("sqlite", "writebehind");
+        DataGenerator.populate(databaseUrl, 10, 0, 42);
+        // The writers wait the lock of the database (instead of SQLITE_BUSY)
+        connectionSource = new JdbcPooledConnectionSource(databaseUrl + "?busy_timeout=30000");
+        repoControl = new RepositoryOrmLite<>(connectionSource, Control.class);
+        queue = new WriteBehindQueue<>(repoControl, maxBatch, 5, 10_000);
+        ficha = new RepositoryOrmLite<>(connectionSource, Ficha.class).findById(1L);
+        veterinario = new RepositoryOrmLite<>(connectionSource, Persona.class).findById(1L);
+    }
+
+    /**
+     * Close the queue and the connection.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        queue.close();
+        connectionSource.close();
+    }
+
+    /**
+     * @return the Control saved (one transaction each one).
+     */
+    @Benchmark
+    public Control autocommit() {
+        Control control = generator.control(ficha, veterinario);
+        repoControl.create(control);
+        return control;
+    }
+
+    /**
+     * @return the Control saved (in the transaction of the group).
+     */
+    @Benchmark
+    public Control writeBehind() {
+        return queue.submit(generator.control(ficha, veterinario)).join();
+    }
+
+}
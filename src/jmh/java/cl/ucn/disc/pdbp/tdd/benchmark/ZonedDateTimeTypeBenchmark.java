@@ -0,0 +1,244 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.benchmark;
+
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeEpochType;
+import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeType;
+import com.j256.ormlite.field.DataPersister;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTable;
+import com.j256.ormlite.table.TableUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link ZonedDateTimeType} (string) vs {@link ZonedDateTimeEpochType} (number): the conversions and
+ * the write/read of rows with two dates (like Control).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZonedDateTimeTypeBenchmark {
+
+    /**
+     * The number of rows.
+     */
+    private static final int ROWS = 1000;
+
+    /**
+     * The type: iso (string) or epoch (number).
+     */
+    @Param({"iso", "epoch"})
+    public String type;
+
+    /**
+     * The java value.
+     */
+    private final ZonedDateTime now = ZonedDateTime.now();
+
+    /**
+     * The persister.
+     */
+    private DataPersister persister;
+
+    /**
+     * The sql value.
+     */
+    private Object sql;
+
+    /**
+     * The connection.
+     */
+    private ConnectionSource connectionSource;
+
+    /**
+     * The repo of iso.
+     */
+    private RepositoryOrmLite<IsoRow, Long> repoIso;
+
+    /**
+     * The repo of epoch.
+     */
+    private RepositoryOrmLite<EpochRow, Long> repoEpoch;
+
+    /**
+     * The tables with ROWS rows.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+
+        persister = "iso".equals(type) ? ZonedDateTimeType.getSingleton() : ZonedDateTimeEpochType.getSingleton();
+        sql = persister.javaToSqlArg(null, now);
+
+        connectionSource = new JdbcConnectionSource(DataGenerator.databaseUrl("h2", "dates"));
+        TableUtils.createTableIfNotExists(connectionSource, IsoRow.class);
+        TableUtils.createTableIfNotExists(connectionSource, EpochRow.class);
+        repoIso = new RepositoryOrmLite<>(connectionSource, IsoRow.class);
+        repoEpoch = new RepositoryOrmLite<>(connectionSource, EpochRow.class);
+        repoIso.createAll(isoRows());
+        repoEpoch.createAll(epochRows());
+    }
+
+    /**
+     * Close the connection.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connectionSource.close();
+    }
+
+    /**
+     * @return ZonedDateTime to sql.
+     */
+    @Benchmark
+    public Object javaToSql() throws Exception {
+        return persister.javaToSqlArg(null, now);
+    }
+
+    /**
+     * @return sql to ZonedDateTime.
+     */
+    @Benchmark
+    public Object sqlToJava() throws Exception {
+        return persister.sqlArgToJava(null, sql, 0);
+    }
+
+    /**
+     * @return the ROWS rows read.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<?> read() {
+        return "iso".equals(type) ? repoIso.findAll() : repoEpoch.findAll();
+    }
+
+    /**
+     * @return the number of rows written (ROWS, one transaction).
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int write() {
+        return "iso".equals(type) ? repoIso.updateAll(isoRows()) : repoEpoch.updateAll(epochRows());
+    }
+
+    /**
+     * @return the rows with string.
+     */
+    private List<IsoRow> isoRows() {
+        List<IsoRow> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new IsoRow(i + 1L, now.minusDays(i), now.plusDays(i)));
+        }
+        return rows;
+    }
+
+    /**
+     * @return the rows with number.
+     */
+    private List<EpochRow> epochRows() {
+        List<EpochRow> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new EpochRow(i + 1L, now.minusDays(i), now.plusDays(i)));
+        }
+        return rows;
+    }
+
+    /**
+     * Two dates as string.
+     */
+    @DatabaseTable
+    public static final class IsoRow {
+
+        @DatabaseField(id = true)
+        private Long id;
+
+        @DatabaseField(persisterClass = ZonedDateTimeType.class)
+        private ZonedDateTime fecha;
+
+        @DatabaseField(persisterClass = ZonedDateTimeType.class)
+        private ZonedDateTime fechaProximoControl;
+
+        IsoRow() {
+            // Nothing here
+        }
+
+        IsoRow(Long id, ZonedDateTime fecha, ZonedDateTime fechaProximoControl) {
+            this.id = id;
+            this.fecha = fecha;
+            this.fechaProximoControl = fechaProximoControl;
+        }
+    }
+
+    /**
+     * Two dates as number.
+     */
+    @DatabaseTable
+    public static final class EpochRow {
+
+        @DatabaseField(id = true)
+        private Long id;
+
+        @DatabaseField(persisterClass = ZonedDateTimeEpochType.class)
+        private ZonedDateTime fecha;
+
+        @DatabaseField(persisterClass = ZonedDateTimeEpochType.class)
+        private ZonedDateTime fechaProximoControl;
+
+        EpochRow() {
+            // Nothing here
+        }
+
+        EpochRow(Long id, ZonedDateTime fecha, ZonedDateTime fechaProximoControl) {
+            this.id = id;
+            this.fecha = fecha;
+            this.fechaProximoControl = fechaProximoControl;
+        }
+    }
+
+}
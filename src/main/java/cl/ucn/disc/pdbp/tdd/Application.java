@@ -24,19 +24,56 @@
 
 package cl.ucn.disc.pdbp.tdd;
 
-import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.bulk.BulkExporter;
+import cl.ucn.disc.pdbp.tdd.bulk.Format;
+import cl.ucn.disc.pdbp.tdd.dao.PoolConfig;
+import cl.ucn.disc.pdbp.tdd.dao.PooledConnectionSource;
+import cl.ucn.disc.pdbp.tdd.dao.RoutingConnectionSource;
+import cl.ucn.disc.pdbp.tdd.dao.SqliteConfig;
+import cl.ucn.disc.pdbp.tdd.dao.TableConfigs;
+import cl.ucn.disc.pdbp.tdd.dao.WriteBehindQueue;
+import cl.ucn.disc.pdbp.tdd.metrics.MetricsRegistry;
+import cl.ucn.disc.pdbp.tdd.metrics.RequestTiming;
+import cl.ucn.disc.pdbp.tdd.model.Control;
 import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.search.SearchMode;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonSerializer;
+import com.j256.ormlite.dao.ForeignCollection;
+import com.j256.ormlite.dao.LazyForeignCollection;
 import io.javalin.Javalin;
 import io.javalin.core.util.RouteOverviewPlugin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
+import io.javalin.http.ServiceUnavailableResponse;
 import io.javalin.plugin.json.JavalinJson;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.server.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * The Main Application.
@@ -50,6 +87,46 @@ public final class Application {
      */
     private static final Logger log = LoggerFactory.getLogger(Application.class);
 
+    /**
+     * The default size of the page of /fichas/.
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * The max size of the page of /fichas/.
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The days of the default range of the controles.
+     */
+    private static final int DAYS = 7;
+
+    /**
+     * The max number of requests waiting the database (the rest: 503).
+     */
+    private static final int MAX_QUEUED = 256;
+
+    /**
+     * The attribute of the {@link RequestTiming} in the context.
+     */
+    private static final String TIMING = "timing";
+
+    /**
+     * The max number of responses in the cache.
+     */
+    private static final int CACHE_ENTRIES = 1000;
+
+    /**
+     * The max size of a response in the cache.
+     */
+    private static final int CACHE_ENTRY_BYTES = 1024 * 1024;
+
+    /**
+     * The tables to export.
+     */
+    private static final List<String> EXPORTS = Arrays.asList("persona", "ficha", "control");
+
     /**
      * Private constructor.
      */
@@ -64,11 +141,72 @@ public final class Application {
      */
     public static void main(String[] args) {
 
+        // The daos without reading the annotations: -Dfivet.tableConfigs=true
+        if (Boolean.getBoolean("fivet.tableConfigs")) {
+            TableConfigs.install();
+        }
+
         // The Contratos
         log.debug("Building Contratos ..");
         // Contratos contratos = new ContratosImpl("jdbc:h2:mem:");
         // Contratos contratos = new ContratosImpl("jdbc:sqlite::memory:");
-        Contratos contratos = new ContratosImpl("jdbc:sqlite:fivet.db");
+        // The pool: -Dfivet.pool.maxSize=20 ..
+        PoolConfig poolConfig = PoolConfig.fromProperties(System.getProperties(), "fivet.pool.");
+        // The read-only copies: -Dfivet.replicas=jdbc:sqlite:replica1.db,jdbc:sqlite:replica2.db
+        String replicas = System.getProperty("fivet.replicas", "");
+        List<String> replicaUrls = replicas.isEmpty() ? Collections.emptyList() : Arrays.asList(replicas.split(","));
+        // SQLite: WAL, one writer, the reads in a pool: -Dfivet.sqlite.synchronous=FULL .. (off: -Dfivet.sqlite=false)
+        SqliteConfig sqliteConfig = Boolean.parseBoolean(System.getProperty("fivet.sqlite", "true"))
+                ? SqliteConfig.fromProperties(System.getProperties(), "fivet.sqlite.") : null;
+        ContratosImpl contratos = new ContratosImpl("jdbc:sqlite:fivet.db", replicaUrls, SearchMode.INDEX,
+                poolConfig, sqliteConfig);
+        PooledConnectionSource pool = contratos.getPool();
+
+        // The Contratos outside of the threads of jetty: one running for each connection
+        AsyncContratosImpl async = new AsyncContratosImpl(contratos, poolConfig.getMaxSize(), MAX_QUEUED);
+
+        // The metrics of the pool, the executor and the routing (the rest: in each request and repository)
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        metrics.gauge("pool_active_connections", "The connections in use.", pool::getActiveConnections);
+        metrics.gauge("pool_idle_connections", "The connections open and free.", pool::getIdleConnections);
+        metrics.gauge("pool_waiting_threads", "The threads waiting for a connection.", pool::getWaitingThreads);
+        metrics.counter("pool_checkouts_total", "The connections got.", pool::getCheckouts);
+        metrics.counter("pool_timeouts_total", "The gets that timed out.", pool::getTimeouts);
+        metrics.counter("pool_idle_closed_total", "The connections closed by idle.", pool::getIdleClosed);
+        metrics.register("pool_wait_seconds", "The time waiting for a connection.", pool.getWaits());
+        PooledConnectionSource readPool = contratos.getReadPool();
+        if (readPool != null) {
+            metrics.gauge("read_pool_active_connections", "The read-only connections in use.",
+                    readPool::getActiveConnections);
+            metrics.gauge("read_pool_waiting_threads", "The threads waiting for a read-only connection.",
+                    readPool::getWaitingThreads);
+            metrics.register("read_pool_wait_seconds", "The time waiting for a read-only connection.",
+                    readPool.getWaits());
+        }
+        metrics.register("contratos_queue_seconds", "The time waiting to run.", async.getQueueWaits());
+        metrics.counter("contratos_rejected_total", "The tasks rejected (503).", async::getRejected);
+        WriteBehindQueue<Control, Long> controlQueue = contratos.getControlQueue();
+        metrics.gauge("write_queue_depth", "The writes waiting.", controlQueue::getDepth, "table", "control");
+        metrics.register("write_queue_latency_seconds", "The time from the write to the commit.",
+                controlQueue.getLatencies(), "table", "control");
+        metrics.register("write_queue_commit_seconds", "The time of the transactions.", controlQueue.getCommits(),
+                "table", "control");
+        metrics.counter("write_queue_rows_total", "The writes by result.", controlQueue::getCommitted,
+                "table", "control", "result", "committed");
+        metrics.counter("write_queue_rows_total", "The writes by result.", controlQueue::getFailed,
+                "table", "control", "result", "failed");
+        metrics.counter("write_queue_rows_total", "The writes by result.", controlQueue::getRejected,
+                "table", "control", "result", "rejected");
+        metrics.counter("routing_reads_total", "The reads by database.", contratos.getRouter()::getPrimaryReads,
+                "database", "primary");
+        metrics.counter("routing_reads_total", "The reads by database.", contratos.getRouter()::getReplicaReads,
+                "database", "replica");
+
+        // The responses, until the next write
+        ResponseCache cache = new ResponseCache(CACHE_ENTRIES, CACHE_ENTRY_BYTES);
+        contratos.addWriteListener(cache::invalidate);
+        metrics.counter("response_cache_hits_total", "The responses from the cache.", cache::getHits);
+        metrics.counter("response_cache_misses_total", "The responses rendered.", cache::getMisses);
 
         // Populate the db
         log.debug("Populating the Database ..");
@@ -90,8 +228,15 @@ public final class Application {
             }
         }
 
-        // Gson configuration
+        // Gson configuration: compact by default, pretty only on request (?pretty=true)
+        // The foreign collections: the lazy ones (not loaded) are skipped, no queries while writing the json
+        JsonSerializer<ForeignCollection<?>> collections = (src, type, context) ->
+                src instanceof LazyForeignCollection ? JsonNull.INSTANCE : context.serialize(src.toArray());
         Gson gson = new GsonBuilder()
+                .registerTypeHierarchyAdapter(ForeignCollection.class, collections)
+                .create();
+        Gson gsonPretty = new GsonBuilder()
+                .registerTypeHierarchyAdapter(ForeignCollection.class, collections)
                 .setPrettyPrinting()
                 .create();
         JavalinJson.setFromJsonMapper(gson::fromJson);
@@ -104,10 +249,20 @@ public final class Application {
             // enable extensive development logging for http and websocket
             config.enableDevLogging();
 
-            // Measure the time
+            // Measure the time: by route, and the phases
             config.requestLogger(((ctx, executionTimeMs) -> {
-                log.info("Served {} in {} ms.", ctx.fullUrl(), executionTimeMs);
-                ctx.header("Server-Timing", "total;dur=" + executionTimeMs);
+                RequestTiming timing = ctx.attribute(TIMING);
+                String path = ctx.endpointHandlerPath();
+                String route = path != null && path.startsWith("/") ? path : "unmatched";
+                metrics.histogram("http_request_seconds", "The time of the requests.", "route", route)
+                        .record(timing.getElapsedNanos());
+                metrics.histogram("http_db_seconds", "The time in the database of the requests.", "route", route)
+                        .record(timing.getDbNanos());
+                metrics.histogram("http_serialize_seconds", "The time writing the responses.", "route", route)
+                        .record(timing.getSerializeNanos());
+                metrics.counter("http_requests_total", "The requests by route and status.",
+                        "route", route, "status", String.valueOf(ctx.status())).increment();
+                log.info("Served {} in {} ms ({}).", ctx.fullUrl(), executionTimeMs, timing.toServerTiming());
             }));
 
             // Enable routes helper
@@ -122,9 +277,38 @@ public final class Application {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             log.debug("Stopping the server ..");
             javalin.stop();
+            async.close();
+            // The controles accepted: saved before the end
+            controlQueue.close();
             log.debug("The end.");
         }));
 
+        // The read-your-writes of each request: a new session, not the one of the previous request of the thread
+        javalin.before(ctx -> RoutingConnectionSource.Session.bind(new RoutingConnectionSource.Session()));
+        javalin.after(ctx -> RoutingConnectionSource.Session.bind(null));
+
+        // The phases of the request: db and serialize
+        javalin.before(ctx -> ctx.attribute(TIMING, RequestTiming.begin()));
+        javalin.after(ctx -> {
+            if (!ctx.res.isCommitted()) {
+                ctx.header("Server-Timing", ctx.<RequestTiming>attribute(TIMING).toServerTiming());
+            }
+        });
+
+        // The metrics, in the text format of Prometheus
+        javalin.get("/metrics", ctx -> {
+            StringBuilder sb = new StringBuilder();
+            metrics.writePrometheus(sb);
+            ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+            ctx.result(sb.toString());
+        });
+
+        // Too many requests in flight: back-pressure
+        javalin.exception(RejectedExecutionException.class, (ex, ctx) -> {
+            ctx.header("Retry-After", "1");
+            throw new ServiceUnavailableResponse("Too many requests, try again later");
+        });
+
         // A simple route to show time
         javalin.get("/", ctx -> {
 
@@ -133,11 +317,42 @@ public final class Application {
 
         });
 
-        // Get the fichas
+        // The health: the database answer? and the state of the pool
+        javalin.get("/health", ctx -> {
+
+            Map<String, Object> health = new LinkedHashMap<>();
+            boolean up = pool.ping();
+            health.put("status", up ? "UP" : "DOWN");
+            health.put("active", pool.getActiveConnections());
+            health.put("idle", pool.getIdleConnections());
+            health.put("waiting", pool.getWaitingThreads());
+            health.put("checkouts", pool.getCheckouts());
+            health.put("timeouts", pool.getTimeouts());
+            health.put("replicas", contratos.getRouter().getReplicaCount());
+            health.put("primaryReads", contratos.getRouter().getPrimaryReads());
+            health.put("replicaReads", contratos.getRouter().getReplicaReads());
+            health.put("async", async.isVirtual() ? "virtual" : "platform");
+            health.put("rejected", async.getRejected());
+
+            ctx.status(up ? 200 : 503);
+            ctx.json(health);
+
+        });
+
+        // Get the fichas: one page (?after=&limit=) at a time
         javalin.get("/fichas/", ctx -> {
 
-            List<Ficha> fichas = contratos.getAllFichas();
-            ctx.json(fichas);
+            Long after = ctx.queryParam("after", Long.class).getOrNull();
+            int limit = ctx.queryParam("limit", Integer.class, String.valueOf(PAGE_SIZE)).get();
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new BadRequestResponse("Limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+
+            // The cursor of the next page
+            Gson json = isPretty(ctx) ? gsonPretty : gson;
+            cachedArray(ctx, cache, json, () -> async.getAllFichas(after, limit), fichas -> fichas.size() == limit
+                    ? Collections.singletonMap("X-Next-After", String.valueOf(fichas.get(limit - 1).getId()))
+                    : Collections.emptyMap());
 
         });
 
@@ -146,8 +361,27 @@ public final class Application {
             String query = ctx.pathParam("query");
             log.debug("Query: <{}>", query);
 
-            List<Ficha> fichas = contratos.buscarFicha(query);
-            ctx.json(fichas);
+            Gson json = isPretty(ctx) ? gsonPretty : gson;
+            cachedArray(ctx, cache, json, () -> async.buscarFicha(query), fichas -> Collections.emptyMap());
+
+        });
+
+        // The controles of a ficha: one page (?offset=&limit=) at a time, the most recent first
+        javalin.get("/fichas/:id/controles", ctx -> {
+
+            Long id = ctx.pathParam("id", Long.class).get();
+            long offset = ctx.queryParam("offset", Long.class, "0").get();
+            int limit = ctx.queryParam("limit", Integer.class, String.valueOf(PAGE_SIZE)).get();
+            if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new BadRequestResponse("Offset must be positive and limit between 1 and " + MAX_PAGE_SIZE);
+            }
+
+            Gson json = isPretty(ctx) ? gsonPretty : gson;
+            ctx.result(async.controlCount(id)
+                    .thenCombine(async.getControlesFicha(id, offset, limit), (total, controles) -> {
+                        ctx.header("X-Total-Count", String.valueOf(total));
+                        return writeArray(ctx, json, controles.iterator());
+                    }));
 
         });
 
@@ -156,15 +390,279 @@ public final class Application {
             String rut = ctx.pathParam("rut");
             log.debug("RUT: <{}>", rut);
 
-            Persona persona = contratos.findByRut(rut);
-            if (persona == null) {
-                throw new NotFoundResponse("Persona Not Found");
-            } else {
-                ctx.json(persona);
+            RequestTiming timing = ctx.attribute(TIMING);
+            cached(ctx, cache, () -> async.findByRut(rut).thenApply(persona -> {
+                if (persona == null) {
+                    throw new NotFoundResponse("Persona Not Found");
+                }
+                long start = System.nanoTime();
+                byte[] body = gson.toJson(persona).getBytes(StandardCharsets.UTF_8);
+                timing.addSerialize(System.nanoTime() - start);
+                return new ResponseCache.Entry(body, Collections.emptyMap());
+            }));
+
+        });
+
+        // The controles in [from, to) (?from=&to=, ISO-8601), of all, of a ficha (?ficha=) or a veterinario
+        javalin.get("/controles/", ctx -> {
+
+            ZonedDateTime to = fecha(ctx, "to", ZonedDateTime.now());
+            ZonedDateTime from = fecha(ctx, "from", to.minusDays(DAYS));
+            Long ficha = ctx.queryParam("ficha", Long.class).getOrNull();
+            Long veterinario = ctx.queryParam("veterinario", Long.class).getOrNull();
+
+            // The stream is consumed (and closed) in the same thread
+            Gson json = isPretty(ctx) ? gsonPretty : gson;
+            ctx.result(async.submit(c -> {
+                try (Stream<Control> controles = ficha != null ? c.getControlesFicha(ficha, from, to)
+                        : veterinario != null ? c.getControlesVeterinario(veterinario, from, to)
+                        : c.getControles(from, to)) {
+                    return writeArray(ctx, json, controles.iterator());
+                }
+            }));
+
+        });
+
+        // The reminders: the next controles in [from, to) (by default, the next week)
+        javalin.get("/controles/proximos", ctx -> {
+
+            ZonedDateTime from = fecha(ctx, "from", ZonedDateTime.now());
+            ZonedDateTime to = fecha(ctx, "to", from.plusDays(DAYS));
+
+            Gson json = isPretty(ctx) ? gsonPretty : gson;
+            ctx.result(async.submit(c -> {
+                try (Stream<Control> controles = c.getProximosControles(from, to)) {
+                    return writeArray(ctx, json, controles.iterator());
+                }
+            }));
+
+        });
+
+        // The export: /export/{persona|ficha|control}.{csv|jsonl}[.gz], one row at a time (?from=&to= the controles)
+        BulkExporter exporter = contratos.exporter();
+        javalin.get("/export/:file", ctx -> {
+
+            String file = ctx.pathParam("file");
+            String kind = file.indexOf('.') < 0 ? file : file.substring(0, file.indexOf('.'));
+            if (!EXPORTS.contains(kind)) {
+                throw new NotFoundResponse("Can't export " + kind);
             }
+            Format format;
+            try {
+                format = Format.fromFileName(file);
+            } catch (IllegalArgumentException ex) {
+                throw new BadRequestResponse(ex.getMessage());
+            }
+            boolean gzip = file.endsWith(".gz");
+            ZonedDateTime from = fecha(ctx, "from", null);
+            ZonedDateTime to = fecha(ctx, "to", null);
+
+            ctx.contentType(gzip ? "application/gzip" : format.getContentType());
+            ctx.header("Content-Disposition", "attachment; filename=\"" + file + "\"");
+            ctx.result(async.submit(c -> {
+                try {
+                    OutputStream out = ctx.res.getOutputStream();
+                    if ("control".equals(kind)) {
+                        exporter.exportControles(format, gzip, out, from, to);
+                    } else {
+                        exporter.export(kind, format, gzip, out);
+                    }
+                    return null;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }));
 
         });
 
     }
 
+    /**
+     * @param ctx          to use.
+     * @param name         of the query param.
+     * @param defaultValue if the param is missing.
+     * @return the fecha (ISO-8601) of the query param.
+     */
+    private static ZonedDateTime fecha(Context ctx, String name, ZonedDateTime defaultValue) {
+        String value = ctx.queryParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return ZonedDateTime.parse(value);
+        } catch (DateTimeParseException ex) {
+            throw new BadRequestResponse("The " + name + " must be a ISO-8601 date: " + value);
+        }
+    }
+
+    /**
+     * The response from the cache (without queries) or rendered by the future and cached. With ETag: 304 if the
+     * client has the same response (If-None-Match).
+     *
+     * @param ctx    to use.
+     * @param cache  to use.
+     * @param render the response (called only if not in the cache).
+     */
+    private static void cached(Context ctx, ResponseCache cache,
+                               Supplier<CompletableFuture<ResponseCache.Entry>> render) {
+
+        String key = key(ctx);
+        if (hit(ctx, cache, key)) {
+            return;
+        }
+
+        // The version before the queries
+        long version = cache.getVersion();
+        ctx.header("X-Cache", "MISS");
+        ctx.result(render.get().thenApply(rendered -> {
+            cache.put(key, version, rendered);
+            return respond(ctx, rendered);
+        }));
+    }
+
+    /**
+     * The json array from the cache (without queries) or streamed by the future: the body is copied to the cache
+     * while it fits in an entry, the bigger ones are only streamed (the memory of a response is bounded). The ETag
+     * from the next request (once cached): 304 if the client has the same response (If-None-Match).
+     *
+     * @param ctx     to use.
+     * @param cache   to use.
+     * @param gson    to use.
+     * @param query   the items (called only if not in the cache).
+     * @param headers of the response, from the items.
+     * @param <T>     type of the items.
+     */
+    private static <T> void cachedArray(Context ctx, ResponseCache cache, Gson gson,
+                                        Supplier<CompletableFuture<List<T>>> query,
+                                        Function<List<T>, Map<String, String>> headers) {
+
+        String key = key(ctx);
+        if (hit(ctx, cache, key)) {
+            return;
+        }
+
+        // The version before the queries
+        long version = cache.getVersion();
+        ctx.header("X-Cache", "MISS");
+        ctx.result(query.get().thenApply(items -> {
+            Map<String, String> rendered = headers.apply(items);
+            rendered.forEach(ctx::header);
+            try {
+                ResponseCache.Capture capture = cache.capture(ctx.res.getOutputStream());
+                writeArray(ctx, gson, items.iterator(), capture);
+                ResponseCache.Entry entry = capture.toEntry(rendered);
+                if (entry != null) {
+                    cache.put(key, version, entry);
+                }
+                return null;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }));
+    }
+
+    /**
+     * @param ctx to use.
+     * @return the key in the cache: the route and params.
+     */
+    private static String key(Context ctx) {
+        return ctx.queryString() == null ? ctx.path() : ctx.path() + "?" + ctx.queryString();
+    }
+
+    /**
+     * @param ctx   to use.
+     * @param cache to use.
+     * @param key   of the response.
+     * @return true if the response was sent from the cache.
+     */
+    private static boolean hit(Context ctx, ResponseCache cache, String key) {
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            return false;
+        }
+        ctx.header("X-Cache", "HIT");
+        InputStream body = respond(ctx, entry);
+        if (body != null) {
+            ctx.result(body);
+        }
+        return true;
+    }
+
+    /**
+     * @param ctx   to use.
+     * @param entry to send.
+     * @return the body, null if 304.
+     */
+    private static InputStream respond(Context ctx, ResponseCache.Entry entry) {
+
+        entry.getHeaders().forEach(ctx::header);
+        ctx.header("ETag", entry.getEtag());
+        ctx.header("Cache-Control", "no-cache");
+        if (ResponseCache.matches(ctx.header("If-None-Match"), entry.getEtag())) {
+            ctx.status(304);
+            return null;
+        }
+        ctx.contentType("application/json");
+        return new ByteArrayInputStream(entry.getBody());
+    }
+
+    /**
+     * Write the items as a json array in the response (in the thread of the future).
+     *
+     * @param ctx   to use.
+     * @param gson  to use.
+     * @param items to write.
+     * @return null, the result is already written.
+     */
+    private static String writeArray(Context ctx, Gson gson, Iterator<?> items) {
+        return writeArray(ctx, gson, items, null);
+    }
+
+    /**
+     * Write the items as a json array in the response (in the thread of the future).
+     *
+     * @param ctx     to use.
+     * @param gson    to use.
+     * @param items   to write.
+     * @param capture the output with the copy for the cache (null: only the response).
+     * @return null, the result is already written.
+     */
+    private static String writeArray(Context ctx, Gson gson, Iterator<?> items, ResponseCache.Capture capture) {
+
+        // The body is streamed: the Server-Timing until now in the header, the final one in the trailer (chunked)
+        RequestTiming timing = ctx.attribute(TIMING);
+        ctx.header("Server-Timing", timing.toServerTiming());
+        ctx.header("Trailer", "Server-Timing");
+        Request.getBaseRequest(ctx.req).getResponse().setTrailers(() -> {
+            HttpFields trailers = new HttpFields();
+            trailers.put("Server-Timing", timing.toServerTiming());
+            return trailers;
+        });
+
+        // The database time while writing (the iterators of the streams) is not serialize time
+        long db = timing.getDbNanos();
+        long start = System.nanoTime();
+        try {
+            if (capture == null) {
+                JsonStreams.writeArray(ctx, gson, items);
+            } else {
+                ctx.contentType("application/json");
+                JsonStreams.writeArray(capture, gson, items);
+            }
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            timing.addSerialize(System.nanoTime() - start - (timing.getDbNanos() - db));
+        }
+    }
+
+    /**
+     * @param ctx to use.
+     * @return true if the client request the pretty printing (?pretty=true).
+     */
+    private static boolean isPretty(Context ctx) {
+        return Boolean.parseBoolean(ctx.queryParam("pretty"));
+    }
+
 }
@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd;
+
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * The {@link Contratos} without blocking the caller: each one executed in a bounded executor. If the executor is full
+ * the {@link CompletableFuture} fails with {@link java.util.concurrent.RejectedExecutionException} (back-pressure).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public interface AsyncContratos {
+
+    /**
+     * @param ficha to insert.
+     * @return the {@link Ficha} in the backend.
+     * @see Contratos#registrarPaciente(Ficha)
+     */
+    CompletableFuture<Ficha> registrarPaciente(Ficha ficha);
+
+    /**
+     * @param ficha          to insert.
+     * @param controles      of the ficha to insert.
+     * @param idempotencyKey of the registration (null if not retried).
+     * @return the {@link Ficha} in the backend.
+     * @see Contratos#registrarPaciente(Ficha, List, String)
+     */
+    CompletableFuture<Ficha> registrarPaciente(Ficha ficha, List<Control> controles, String idempotencyKey);
+
+    /**
+     * @param persona to insert.
+     * @return the {@link Persona} in the backend.
+     * @see Contratos#registrarPersona(Persona)
+     */
+    CompletableFuture<Persona> registrarPersona(Persona persona);
+
+    /**
+     * @param query to search.
+     * @return the {@link List} of {@link Ficha}.
+     * @see Contratos#buscarFicha(String)
+     */
+    CompletableFuture<List<Ficha>> buscarFicha(String query);
+
+    /**
+     * @param rut to search.
+     * @return the {@link Persona} (null if not found).
+     * @see Contratos#findByRut(String)
+     */
+    CompletableFuture<Persona> findByRut(String rut);
+
+    /**
+     * @param after the id of the last {@link Ficha} of the previous page (null for the first page).
+     * @param limit the size of the page.
+     * @return the {@link List} of {@link Ficha}.
+     * @see Contratos#getAllFichas(Long, int)
+     */
+    CompletableFuture<List<Ficha>> getAllFichas(Long after, int limit);
+
+    /**
+     * @param idFicha the id of the {@link Ficha}.
+     * @param offset  the number of {@link Control} to skip.
+     * @param limit   the size of the page.
+     * @return the {@link List} of {@link Control}.
+     * @see Contratos#getControlesFicha(Long, long, int)
+     */
+    CompletableFuture<List<Control>> getControlesFicha(Long idFicha, long offset, int limit);
+
+    /**
+     * @param idFicha the id of the {@link Ficha}.
+     * @return the most recent {@link Control} (null if there is no one).
+     * @see Contratos#latestControl(Long)
+     */
+    CompletableFuture<Control> latestControl(Long idFicha);
+
+    /**
+     * @param idFicha the id of the {@link Ficha}.
+     * @return the number of {@link Control}.
+     * @see Contratos#controlCount(Long)
+     */
+    CompletableFuture<Long> controlCount(Long idFicha);
+
+    /**
+     * Any work with the {@link Contratos} (ej. consume a {@link java.util.stream.Stream} in the same thread).
+     *
+     * @param task to execute.
+     * @param <R>  the type of the result.
+     * @return the result of the task.
+     */
+    <R> CompletableFuture<R> submit(Function<Contratos, R> task);
+
+}
@@ -0,0 +1,338 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd;
+
+import cl.ucn.disc.pdbp.tdd.dao.RoutingConnectionSource.Session;
+import cl.ucn.disc.pdbp.tdd.metrics.Histogram;
+import cl.ucn.disc.pdbp.tdd.metrics.RequestTiming;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The {@link AsyncContratos} over a {@link Contratos}.
+ * <p>
+ * The executor: virtual threads (one per task) if the JDK have them, a fixed pool of threads if not. In both cases
+ * only maxConcurrent tasks run at the same time, maxQueued wait and the rest are rejected.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class AsyncContratosImpl implements AsyncContratos, AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AsyncContratosImpl.class);
+
+    /**
+     * The seconds to wait the tasks in {@link #close()}.
+     */
+    private static final int SHUTDOWN_SECONDS = 30;
+
+    /**
+     * The Contratos.
+     */
+    private final Contratos contratos;
+
+    /**
+     * The executor.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * True if the executor use virtual threads.
+     */
+    private final boolean virtual;
+
+    /**
+     * The tasks running + waiting (back-pressure).
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * The tasks running.
+     */
+    private final Semaphore running;
+
+    /**
+     * The number of tasks rejected.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * The time waiting to run.
+     */
+    private final Histogram queueWaits = new Histogram();
+
+    /**
+     * The Constructor.
+     *
+     * @param contratos     to use.
+     * @param maxConcurrent the max number of tasks running at the same time.
+     * @param maxQueued     the max number of tasks waiting.
+     */
+    public AsyncContratosImpl(Contratos contratos, int maxConcurrent, int maxQueued) {
+
+        // Nullity test and sizes
+        if (contratos == null || maxConcurrent < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Can't create AsyncContratos without Contratos or sizes");
+        }
+
+        this.contratos = contratos;
+        this.inFlight = new Semaphore(maxConcurrent + maxQueued);
+        this.running = new Semaphore(maxConcurrent);
+
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        this.virtual = virtualExecutor != null;
+        this.executor = this.virtual ? virtualExecutor : Executors.newFixedThreadPool(maxConcurrent, new ThreadFactory());
+
+        log.debug("AsyncContratos with {} threads, max concurrent: {}, max queued: {}.",
+                this.virtual ? "virtual" : "platform", maxConcurrent, maxQueued);
+    }
+
+    /**
+     * @return the executor of virtual threads (JDK 21+) or null.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<Ficha> registrarPaciente(Ficha ficha) {
+        return submit(c -> c.registrarPaciente(ficha));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<Ficha> registrarPaciente(Ficha ficha, List<Control> controles, String idempotencyKey) {
+        return submit(c -> c.registrarPaciente(ficha, controles, idempotencyKey));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<Persona> registrarPersona(Persona persona) {
+        return submit(c -> c.registrarPersona(persona));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<List<Ficha>> buscarFicha(String query) {
+        return submit(c -> c.buscarFicha(query));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<Persona> findByRut(String rut) {
+        return submit(c -> c.findByRut(rut));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<List<Ficha>> getAllFichas(Long after, int limit) {
+        return submit(c -> c.getAllFichas(after, limit));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<List<Control>> getControlesFicha(Long idFicha, long offset, int limit) {
+        return submit(c -> c.getControlesFicha(idFicha, offset, limit));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<Control> latestControl(Long idFicha) {
+        return submit(c -> c.latestControl(idFicha));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public CompletableFuture<Long> controlCount(Long idFicha) {
+        return submit(c -> c.controlCount(idFicha));
+    }
+
+    /**
+     *
+     */
+    @Override
+    public <R> CompletableFuture<R> submit(Function<Contratos, R> task) {
+
+        // Nullity test
+        if (task == null) {
+            throw new IllegalArgumentException("Can't submit a null task");
+        }
+
+        CompletableFuture<R> future = new CompletableFuture<>();
+
+        // Back-pressure: full
+        if (!this.inFlight.tryAcquire()) {
+            this.rejected.incrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException("Too many requests in flight"));
+            return future;
+        }
+
+        // The database time and the read-your-writes go to the caller
+        RequestTiming timing = RequestTiming.current();
+        Session session = Session.current();
+        long start = System.nanoTime();
+
+        try {
+            this.executor.execute(() -> {
+                RequestTiming.bind(timing);
+                Session.bind(session);
+                R result = null;
+                Exception error = null;
+                try {
+                    this.running.acquire();
+                    this.queueWaits.recordSince(start);
+                    try {
+                        result = task.apply(this.contratos);
+                    } finally {
+                        this.running.release();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    error = ex;
+                } catch (RuntimeException ex) {
+                    error = ex;
+                } finally {
+                    this.inFlight.release();
+                }
+
+                // The next stages (ej. write the response) without a slot
+                try {
+                    if (error == null) {
+                        future.complete(result);
+                    } else {
+                        future.completeExceptionally(error);
+                    }
+                } finally {
+                    RequestTiming.bind(null);
+                    Session.bind(null);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Closed
+            this.inFlight.release();
+            this.rejected.incrementAndGet();
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * @return true if the tasks run in virtual threads.
+     */
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    /**
+     * @return the number of tasks rejected.
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * @return the time of the tasks waiting to run.
+     */
+    public Histogram getQueueWaits() {
+        return this.queueWaits;
+    }
+
+    /**
+     * Wait the tasks in execution (30 seconds max).
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The threads of the pool: daemon and with name.
+     */
+    private static final class ThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        /**
+         * The number of thread.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * @see java.util.concurrent.ThreadFactory#newThread(Runnable)
+         */
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "contratos-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -24,10 +24,13 @@
 
 package cl.ucn.disc.pdbp.tdd;
 
+import cl.ucn.disc.pdbp.tdd.model.Control;
 import cl.ucn.disc.pdbp.tdd.model.Ficha;
 import cl.ucn.disc.pdbp.tdd.model.Persona;
 
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * The List of Contratos.
@@ -45,13 +48,34 @@ public interface Contratos {
     Ficha registrarPaciente(Ficha ficha);
 
     /**
-     * Contrato: C02-Registrar los datos de una Persona.
+     * Contrato: C01-Registrar los datos de un Paciente, in one transaction: the duenio (inserted or updated by rut),
+     * the {@link Ficha} and their first {@link Control}. The veterinarios need to be registered: found by rut, not
+     * updated. The retries with the same idempotencyKey return the {@link Ficha} of the first time.
+     *
+     * @param ficha          to insert.
+     * @param controles      of the ficha to insert.
+     * @param idempotencyKey of the registration (null if not retried).
+     * @return the {@link Ficha} in the backend.
+     */
+    Ficha registrarPaciente(Ficha ficha, List<Control> controles, String idempotencyKey);
+
+    /**
+     * Contrato: C02-Registrar los datos de una Persona. The same rut: the {@link Persona} registered, not updated.
      *
      * @param persona to insert.
      * @return the {@link Persona} in the backend.
      */
     Persona registrarPersona(Persona persona);
 
+    /**
+     * Contrato: Registrar un Control. The {@link Ficha} of the control load its controles again on the next
+     * {@link Ficha#getControles()}.
+     *
+     * @param control to insert (the {@link Ficha} and the veterinario already in the backend).
+     * @return the {@link Control} in the backend (after the commit).
+     */
+    Control registrarControl(Control control);
+
     /**
      * Contrato: C03-Buscar Ficha
      *
@@ -73,6 +97,75 @@ public interface Contratos {
      */
     List<Ficha> getAllFichas();
 
-}
+    /**
+     * @param after the id of the last {@link Ficha} of the previous page (null for the first page).
+     * @param limit the size of the page.
+     * @return the {@link List} of {@link Ficha} with id greater than after, sorted by id.
+     */
+    List<Ficha> getAllFichas(Long after, int limit);
+
+    /**
+     * The history of the clinic: the {@link Control} with fecha in [from, to), sorted by fecha.
+     * The {@link Stream} need to be closed (try-with-resources).
+     *
+     * @param from the first fecha (inclusive).
+     * @param to   the last fecha (exclusive).
+     * @return the {@link Stream} of {@link Control}.
+     */
+    Stream<Control> getControles(ZonedDateTime from, ZonedDateTime to);
+
+    /**
+     * The history of a paciente: the {@link Control} of the {@link Ficha} with fecha in [from, to), sorted by fecha.
+     * The {@link Stream} need to be closed (try-with-resources).
+     *
+     * @param idFicha the id of the {@link Ficha}.
+     * @param from    the first fecha (inclusive).
+     * @param to      the last fecha (exclusive).
+     * @return the {@link Stream} of {@link Control}.
+     */
+    Stream<Control> getControlesFicha(Long idFicha, ZonedDateTime from, ZonedDateTime to);
+
+    /**
+     * The agenda of a veterinario: the {@link Control} with fecha in [from, to), sorted by fecha.
+     * The {@link Stream} need to be closed (try-with-resources).
+     *
+     * @param idVeterinario the id of the {@link Persona}.
+     * @param from          the first fecha (inclusive).
+     * @param to            the last fecha (exclusive).
+     * @return the {@link Stream} of {@link Control}.
+     */
+    Stream<Control> getControlesVeterinario(Long idVeterinario, ZonedDateTime from, ZonedDateTime to);
 
+    /**
+     * The reminders: the {@link Control} with fechaProximoControl in [from, to), sorted by fechaProximoControl.
+     * The {@link Stream} need to be closed (try-with-resources).
+     *
+     * @param from the first fecha (inclusive).
+     * @param to   the last fecha (exclusive).
+     * @return the {@link Stream} of {@link Control}.
+     */
+    Stream<Control> getProximosControles(ZonedDateTime from, ZonedDateTime to);
 
+    /**
+     * The history of a paciente, one page at a time: the most recent first.
+     *
+     * @param idFicha the id of the {@link Ficha}.
+     * @param offset  the number of {@link Control} to skip.
+     * @param limit   the size of the page.
+     * @return the {@link List} of {@link Control}.
+     */
+    List<Control> getControlesFicha(Long idFicha, long offset, int limit);
+
+    /**
+     * @param idFicha the id of the {@link Ficha}.
+     * @return the most recent {@link Control} of the {@link Ficha} (null if there is no one).
+     */
+    Control latestControl(Long idFicha);
+
+    /**
+     * @param idFicha the id of the {@link Ficha}.
+     * @return the number of {@link Control} of the {@link Ficha}.
+     */
+    long controlCount(Long idFicha);
+
+}
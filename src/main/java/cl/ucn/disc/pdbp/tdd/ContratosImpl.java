@@ -24,26 +24,53 @@
 
 package cl.ucn.disc.pdbp.tdd;
 
+import cl.ucn.disc.pdbp.tdd.bulk.BulkExporter;
+import cl.ucn.disc.pdbp.tdd.bulk.BulkImporter;
+import cl.ucn.disc.pdbp.tdd.dao.Fetch;
+import cl.ucn.disc.pdbp.tdd.dao.IdempotencyKey;
+import cl.ucn.disc.pdbp.tdd.dao.PoolConfig;
+import cl.ucn.disc.pdbp.tdd.dao.PooledConnectionSource;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryCached;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryListener;
 import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.dao.RoutingConnectionSource;
+import cl.ucn.disc.pdbp.tdd.dao.SqliteConfig;
+import cl.ucn.disc.pdbp.tdd.dao.SchemaMigrator;
+import cl.ucn.disc.pdbp.tdd.dao.WriteBehindQueue;
+import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeMigration;
 import cl.ucn.disc.pdbp.tdd.model.Control;
 import cl.ucn.disc.pdbp.tdd.model.Ficha;
 import cl.ucn.disc.pdbp.tdd.model.Persona;
-import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import cl.ucn.disc.pdbp.tdd.search.FichaSearchIndex;
+import cl.ucn.disc.pdbp.tdd.search.SearchMode;
+import cl.ucn.disc.pdbp.utils.Validation;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.dao.GenericRawResults;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.stmt.Where;
 import com.j256.ormlite.support.ConnectionSource;
-import com.j256.ormlite.table.TableUtils;
-import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Concrete implementation of {@link Contratos}.
@@ -58,6 +85,71 @@ public final class ContratosImpl implements Contratos {
      */
     private static final Logger log = LoggerFactory.getLogger(ContratosImpl.class);
 
+    /**
+     * Max number of Personas in memory.
+     */
+    private static final int PERSONA_CACHE_SIZE = 10_000;
+
+    /**
+     * Time to live of the Personas in memory.
+     */
+    private static final long PERSONA_CACHE_TTL_MINUTES = 10;
+
+    /**
+     * Time that the reads go to the primary after a write (read-your-writes).
+     */
+    private static final long REPLICA_STICKY_MILLIS = 5_000;
+
+    /**
+     * The prepared query of the ids of the Fichas (nombre paciente and nombre duenio).
+     */
+    private static final String QUERY_FICHA_IDS = "fichaIds";
+
+    /**
+     * The prepared query of the ids of the Fichas (+ numero and rut duenio).
+     */
+    private static final String QUERY_FICHA_IDS_NUMERIC = "fichaIdsNumeric";
+
+    /**
+     * The prepared query of the most recent Control of a Ficha.
+     */
+    private static final String QUERY_LATEST_CONTROL = "latestControl";
+
+    /**
+     * The prepared query of the number of Control of a Ficha.
+     */
+    private static final String QUERY_CONTROL_COUNT = "controlCount";
+
+    /**
+     * The name of the registration of a paciente (in the {@link IdempotencyKey}).
+     */
+    private static final String REGISTRAR_PACIENTE = "registrarPaciente";
+
+    /**
+     * The attempts of a registration: the second one sees the rows of a concurrent registration that won.
+     */
+    private static final int REGISTRATION_ATTEMPTS = 2;
+
+    /**
+     * The SQLState of a duplicated unique key.
+     */
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    /**
+     * The max number of Controles by transaction of the write behind.
+     */
+    private static final int CONTROL_QUEUE_BATCH = 100;
+
+    /**
+     * The max time of a Control waiting for its transaction.
+     */
+    private static final long CONTROL_QUEUE_DELAY_MILLIS = 5;
+
+    /**
+     * The max number of Controles waiting.
+     */
+    private static final int CONTROL_QUEUE_CAPACITY = 10_000;
+
     /**
      * The {@link cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite} of Ficha.
      */
@@ -73,31 +165,170 @@ public final class ContratosImpl implements Contratos {
      */
     private final RepositoryOrmLite<Control, Long> repoControl;
 
+    /**
+     * The {@link RepositoryCached} of Persona (by id and rut).
+     */
+    private final RepositoryCached<Persona, Long> cachePersona;
+
+    /**
+     * The {@link cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite} of the {@link IdempotencyKey}.
+     */
+    private final RepositoryOrmLite<IdempotencyKey, String> repoKeys;
+
+    /**
+     * The inserts of Control, with group commit.
+     */
+    private final WriteBehindQueue<Control, Long> controlQueue;
+
+    /**
+     * The {@link FichaSearchIndex} used by {@link #buscarFicha(String)}.
+     */
+    private final FichaSearchIndex searchIndex;
+
+    /**
+     * The {@link SearchMode} of {@link #buscarFicha(String)}.
+     */
+    private final SearchMode searchMode;
+
+    /**
+     * The pool of connections.
+     */
+    private final PooledConnectionSource pool;
+
+    /**
+     * The pool of read-only connections of SQLite (null without {@link SqliteConfig}).
+     */
+    private final PooledConnectionSource readPool;
+
+    /**
+     * The routing of the reads to the replicas.
+     */
+    private final RoutingConnectionSource router;
+
     /**
      * The Constructor.
      *
      * @param databaseUrl to use to connect.
      */
     public ContratosImpl(String databaseUrl) {
+        this(databaseUrl, SearchMode.INDEX);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param databaseUrl to use to connect.
+     * @param searchMode  to use in {@link #buscarFicha(String)}.
+     */
+    public ContratosImpl(String databaseUrl, SearchMode searchMode) {
+        this(databaseUrl, searchMode, PoolConfig.DEFAULT);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param databaseUrl to use to connect.
+     * @param searchMode  to use in {@link #buscarFicha(String)}.
+     * @param poolConfig  the configuration of the pool of connections.
+     */
+    public ContratosImpl(String databaseUrl, SearchMode searchMode, PoolConfig poolConfig) {
+        this(databaseUrl, Collections.emptyList(), searchMode, poolConfig);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param databaseUrl to use to connect (the primary: writes).
+     * @param replicaUrls the read-only copies of the database (the reads), with the same tables.
+     * @param searchMode  to use in {@link #buscarFicha(String)}.
+     * @param poolConfig  the configuration of the pool of connections (of each database).
+     */
+    public ContratosImpl(String databaseUrl, List<String> replicaUrls, SearchMode searchMode,
+                         PoolConfig poolConfig) {
+        this(databaseUrl, replicaUrls, searchMode, poolConfig, null);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param databaseUrl  to use to connect (the primary: writes).
+     * @param replicaUrls  the read-only copies of the database (the reads), with the same tables.
+     * @param searchMode   to use in {@link #buscarFicha(String)}.
+     * @param poolConfig   the configuration of the pool of connections (of each database).
+     * @param sqliteConfig the profile of a SQLite file: one writer and the reads in a pool of read-only connections
+     *                     (null: the same pool for all).
+     */
+    public ContratosImpl(String databaseUrl, List<String> replicaUrls, SearchMode searchMode,
+                         PoolConfig poolConfig, SqliteConfig sqliteConfig) {
+
+        // Nullity test
+        if (replicaUrls == null || searchMode == null || poolConfig == null) {
+            throw new IllegalArgumentException("Can't create Contratos without the replicas, SearchMode or PoolConfig");
+        }
+        this.searchMode = searchMode;
 
         log.debug("Using <{}> as databaseUrl ..", databaseUrl);
         try {
 
             // The connection
             log.debug("Creating the Connection ..");
-            ConnectionSource connectionSource = buildConnectionSource(databaseUrl);
+            if (sqliteConfig == null) {
+                pool = new PooledConnectionSource(databaseUrl, poolConfig);
+            } else {
+                log.debug("Using SQLite with {} ..", sqliteConfig);
+                pool = new PooledConnectionSource(sqliteConfig.writerUrl(databaseUrl),
+                        sqliteConfig.writerPool(poolConfig));
+            }
 
-            // Create the table
-            log.debug("Creating the Tables ..");
-            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
-            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
-            TableUtils.createTableIfNotExists(connectionSource, Control.class);
+            // The schema (in the primary): only the new versions
+            log.debug("Migrating the Schema ..");
+            schema(pool).migrate();
+
+            // The reads to the replicas
+            List<ConnectionSource> replicas = new ArrayList<>(replicaUrls.size() + 1);
+            if (sqliteConfig == null) {
+                readPool = null;
+            } else {
+                // The same file: the commits visible at once (without sticky time)
+                readPool = new PooledConnectionSource(sqliteConfig.readerUrl(databaseUrl), poolConfig);
+                replicas.add(readPool);
+            }
+            for (String replicaUrl : replicaUrls) {
+                log.debug("Using <{}> as replica ..", replicaUrl);
+                replicas.add(new PooledConnectionSource(replicaUrl, poolConfig));
+            }
+            router = new RoutingConnectionSource(pool, replicas, replicaUrls.isEmpty() ? 0 : REPLICA_STICKY_MILLIS);
+            ConnectionSource connectionSource = router;
 
             // The repo
             log.debug("Creating the Repos ..");
             repoFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
             repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
             repoControl = new RepositoryOrmLite<>(connectionSource, Control.class);
+            cachePersona = new RepositoryCached<>(repoPersona, PERSONA_CACHE_SIZE, PERSONA_CACHE_TTL_MINUTES,
+                    TimeUnit.MINUTES, "rut");
+            repoKeys = new RepositoryOrmLite<>(connectionSource, IdempotencyKey.class);
+            controlQueue = new WriteBehindQueue<>(repoControl, CONTROL_QUEUE_BATCH, CONTROL_QUEUE_DELAY_MILLIS,
+                    CONTROL_QUEUE_CAPACITY);
+
+            // The hot queries, compiled once
+            log.debug("Preparing the Queries ..");
+            repoFicha.prepare(QUERY_FICHA_IDS, query -> this.fichaIds(query, false));
+            repoFicha.prepare(QUERY_FICHA_IDS_NUMERIC, query -> this.fichaIds(query, true));
+            repoControl.prepare(QUERY_LATEST_CONTROL, Fetch.LAZY, query -> query
+                    .orderBy("fecha", false)
+                    .orderBy("id", false)
+                    .limit(1L)
+                    .where().eq("ficha_id", new SelectArg()));
+            repoControl.prepare(QUERY_CONTROL_COUNT, query -> query
+                    .setCountOf(true)
+                    .where().eq("ficha_id", new SelectArg()));
+
+            // The search index
+            log.debug("Building the Search Index ..");
+            searchIndex = FichaSearchIndex.build(repoFicha, repoPersona);
+            repoFicha.addListener(searchIndex.fichaListener());
+            repoPersona.addListener(searchIndex.personaListener());
 
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
@@ -105,22 +336,163 @@ public final class ContratosImpl implements Contratos {
     }
 
     /**
-     * @param databaseUrl to use.
-     * @return the connection to the database.
+     * The versions of the schema of the backend. Never change a version already released: add a new one.
+     *
+     * @param connectionSource to migrate.
+     * @return the {@link SchemaMigrator}.
+     */
+    public static SchemaMigrator schema(ConnectionSource connectionSource) {
+        return new SchemaMigrator(connectionSource)
+                .add(1, "The tables of ficha, persona and control", SchemaMigrator.all(
+                        SchemaMigrator.createTables(Ficha.class, Persona.class),
+                        // The fechas of Control: string -> number (before the indexes)
+                        cs -> ZonedDateTimeMigration.migrate(cs, Control.class),
+                        SchemaMigrator.createTables(Control.class)))
+                .add(2, "The indexes of the joins and of the history of a ficha", SchemaMigrator.all(
+                        SchemaMigrator.createIndex("ficha_duenio_idx", "ficha", "duenio_id"),
+                        SchemaMigrator.createIndex("ficha_numero_idx", "ficha", "numero"),
+                        SchemaMigrator.createIndex("control_ficha_id_fecha_idx", "control", "ficha_id", "fecha")))
+                .add(3, "The idempotency keys of the registrations", SchemaMigrator.createTables(IdempotencyKey.class))
+                // control(ficha_id) is the prefix of control(ficha_id, fecha), persona(rut) has the unique one
+                .add(4, "Without the duplicated indexes", SchemaMigrator.all(
+                        SchemaMigrator.dropIndex("control_ficha_idx"),
+                        SchemaMigrator.dropIndex("persona_rut_idx")))
+                .add(5, "The ruts in the canonical form", ContratosImpl::normalizeRuts)
+                .add(6, "The nanoseconds of the fechas of control", SchemaMigrator.all(
+                        SchemaMigrator.addColumn("control", "fechaNanos", "INTEGER DEFAULT 0"),
+                        SchemaMigrator.addColumn("control", "fechaProximoControlNanos", "INTEGER DEFAULT 0")));
+    }
+
+    /**
+     * The ruts saved before the canonical form (15.253.287-3, 15253287-k, 015253287-3) to
+     * {@link Validation#normalizeRut(CharSequence)}: the only one found by {@link #findByRut(String)}. The ruts not
+     * valid and the ones with the canonical form already used by other persona are left as is.
+     *
+     * @param connectionSource to use.
      * @throws SQLException if any problem.
      */
-    private static ConnectionSource buildConnectionSource(String databaseUrl) throws SQLException {
+    private static void normalizeRuts(ConnectionSource connectionSource) throws SQLException {
+
+        Dao<Persona, Long> dao = DaoManager.createDao(connectionSource, Persona.class);
+
+        // The id + rut of all the personas
+        Map<String, String> ruts = new LinkedHashMap<>();
+        try (GenericRawResults<String[]> results = dao.queryBuilder().selectColumns("id", "rut").queryRaw()) {
+            for (String[] row : results) {
+                ruts.put(row[1], row[0]);
+            }
+        } catch (IOException ex) {
+            throw new SQLException(ex);
+        }
+
+        int normalized = 0;
+        for (Map.Entry<String, String> entry : new ArrayList<>(ruts.entrySet())) {
+
+            String rut = entry.getKey();
+            String canonical = Validation.normalizeRut(rut);
+            if (canonical == null || canonical.equals(rut)) {
+                continue;
+            }
+
+            // Two ruts of the same persona: the unique one can't be changed
+            if (ruts.containsKey(canonical)) {
+                log.warn("Rut {} not normalized: {} already used by the persona {}.", rut, canonical,
+                        ruts.get(canonical));
+                continue;
+            }
+
+            UpdateBuilder<Persona, Long> update = dao.updateBuilder();
+            update.updateColumnValue("rut", canonical).where().idEq(Long.valueOf(entry.getValue()));
+            update.update();
+
+            ruts.remove(rut);
+            ruts.put(canonical, entry.getValue());
+            normalized++;
+        }
+
+        log.debug("Ruts normalized: {} of {}.", normalized, ruts.size());
+    }
+
+    /**
+     * @return the pool of connections (the metrics and the health).
+     */
+    public PooledConnectionSource getPool() {
+        return this.pool;
+    }
+
+    /**
+     * @return the pool of read-only connections of SQLite (null without {@link SqliteConfig}).
+     */
+    public PooledConnectionSource getReadPool() {
+        return this.readPool;
+    }
+
+    /**
+     * @param listener to call after each write in the backend (ej. to invalidate the caches).
+     */
+    public void addWriteListener(Runnable listener) {
+
+        // Nullity test
+        if (listener == null) {
+            throw new IllegalArgumentException("Can't add a null listener");
+        }
+
+        repoFicha.addListener(writeListener(listener));
+        repoPersona.addListener(writeListener(listener));
+        repoControl.addListener(writeListener(listener));
+    }
+
+    /**
+     * @param listener to call.
+     * @param <T>      the type of model domain.
+     * @return the {@link RepositoryListener} that call the listener on each write.
+     */
+    private static <T> RepositoryListener<T, Long> writeListener(Runnable listener) {
+        return new RepositoryListener<T, Long>() {
+
+            @Override
+            public void onCreate(T t) {
+                listener.run();
+            }
 
-        // pooling !
-        JdbcPooledConnectionSource connectionSource = new JdbcPooledConnectionSource(databaseUrl);
+            @Override
+            public void onUpdate(T t) {
+                listener.run();
+            }
 
-        // only keep the connections open for 5 minutes
-        connectionSource.setMaxConnectionAgeMillis(5 * 60 * 1000);
+            @Override
+            public void onDelete(Long id) {
+                listener.run();
+            }
+        };
+    }
 
-        // enable the testing of connections
-        connectionSource.setTestBeforeGet(true);
+    /**
+     * @return the write behind of the Controles (the metrics and the shutdown).
+     */
+    public WriteBehindQueue<Control, Long> getControlQueue() {
+        return this.controlQueue;
+    }
 
-        return connectionSource;
+    /**
+     * @return the routing of the connections (the reads in the primary and in the replicas).
+     */
+    public RoutingConnectionSource getRouter() {
+        return this.router;
+    }
+
+    /**
+     * @return the import of Personas, Fichas and Controles (with the listeners of the backend: caches and index).
+     */
+    public BulkImporter importer() {
+        return new BulkImporter(repoPersona, repoFicha, repoControl, BulkImporter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @return the export of Personas, Fichas and Controles.
+     */
+    public BulkExporter exporter() {
+        return new BulkExporter(repoPersona, repoFicha, repoControl);
     }
 
     /**
@@ -128,85 +500,264 @@ public final class ContratosImpl implements Contratos {
      */
     @Override
     public Ficha registrarPaciente(Ficha ficha) {
-        throw new NotImplementedException("Not yet!");
+        return this.registrarPaciente(ficha, Collections.emptyList(), null);
     }
 
     /**
      *
      */
     @Override
+    public Ficha registrarPaciente(Ficha ficha, List<Control> controles, String idempotencyKey) {
+
+        // Nullity test
+        if (ficha == null || ficha.getDuenio() == null || controles == null) {
+            throw new IllegalArgumentException("Can't register the paciente without the ficha, duenio or controles");
+        }
+        for (Control control : controles) {
+            if (control == null || control.getFicha() != ficha || control.getVeterinario() == null) {
+                throw new IllegalArgumentException("The controles need to be of the ficha and with veterinario");
+            }
+        }
+
+        // A retry already committed: without lock
+        Ficha registered = this.registered(idempotencyKey);
+        if (registered != null) {
+            return registered;
+        }
+
+        return this.inTransaction(() -> {
+
+            // A concurrent retry committed before this transaction
+            Ficha previous = this.registered(idempotencyKey);
+            if (previous != null) {
+                return previous;
+            }
+
+            // The duenio by rut: inserted or updated
+            this.cachePersona.upsert(ficha.getDuenio(), "rut");
+
+            // The veterinarios by rut: already registered, not updated
+            for (Control control : controles) {
+                Persona veterinario = control.getVeterinario();
+                if (veterinario != ficha.getDuenio() && !this.cachePersona.assignId(veterinario, "rut")) {
+                    throw new IllegalArgumentException("The veterinario is not registered: " + veterinario.getRut());
+                }
+            }
+
+            this.repoFicha.create(ficha);
+            controles.forEach(this.repoControl::create);
+            if (idempotencyKey != null) {
+                this.repoKeys.create(new IdempotencyKey(idempotencyKey, REGISTRAR_PACIENTE, ficha.getId()));
+            }
+            log.debug("Registered the ficha {} with {} controles.", ficha.getId(), controles.size());
+            return ficha;
+        });
+    }
+
+    /**
+     * @param idempotencyKey of the registration (can be null).
+     * @return the {@link Ficha} registered with the key or null.
+     */
+    private Ficha registered(String idempotencyKey) {
+
+        if (idempotencyKey == null) {
+            return null;
+        }
+
+        IdempotencyKey key = this.repoKeys.findById(idempotencyKey);
+        if (key == null) {
+            return null;
+        }
+        if (!REGISTRAR_PACIENTE.equals(key.getOperation())) {
+            throw new IllegalArgumentException("The key was used in other operation: " + idempotencyKey);
+        }
+        log.debug("Ficha {} already registered with the key <{}>.", key.getResultId(), idempotencyKey);
+        return this.repoFicha.findById(key.getResultId());
+    }
+
+    /**
+     * The same rut: the {@link Persona} registered is returned, not updated (a retry).
+     */
+    @Override
     public Persona registrarPersona(Persona persona) {
-        this.repoPersona.create(persona);
-        return persona;
+
+        // Nullity test
+        if (persona == null) {
+            throw new IllegalArgumentException("Can't register a null persona");
+        }
+
+        return this.inTransaction(() -> {
+            if (this.cachePersona.assignId(persona, "rut")) {
+                return this.cachePersona.findById(persona.getId());
+            }
+            this.cachePersona.create(persona);
+            return persona;
+        });
     }
 
     /**
-     *
+     * The Control is saved with the ones registered at the same time (one transaction each few milliseconds).
      */
     @Override
-    public List<Ficha> buscarFicha(String query) {
+    public Control registrarControl(Control control) {
 
-        // The main list
-        List<Ficha> fichas = new ArrayList<>();
+        // Nullity test
+        if (control == null || control.getFicha() == null || control.getFicha().getId() == null
+                || control.getVeterinario() == null || control.getVeterinario().getId() == null) {
+            throw new IllegalArgumentException("Can't register the control without the ficha and veterinario saved");
+        }
 
+        // Wait the commit (made by the writer thread: the reads of this caller to the primary)
         try {
+            Control saved = this.controlQueue.submit(control).join();
+            this.router.markWrite();
+
+            // The Ficha of the caller: the new Control in the next getControles()
+            control.getFicha().reloadControles();
+            return saved;
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
 
-            // If query is numeric
-            if (StringUtils.isNumeric(query)) {
-
-                // 1. Find Fichas by numero
-                log.debug("Searching with numero ..");
-                fichas.addAll(this.repoFicha.findAll("numero", query));
+    /**
+     * Execute the task in one transaction, again only if it fails by an unique key: a concurrent transaction can
+     * insert the same rut or key between the read and the write of this one (the retry reads and updates it).
+     *
+     * @param task to execute.
+     * @param <R>  the type of the result.
+     * @return the result of the task.
+     */
+    private <R> R inTransaction(Callable<R> task) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return RepositoryOrmLite.callInTransaction(this.router, task);
+            } catch (RuntimeException ex) {
+                if (attempt >= REGISTRATION_ATTEMPTS || !isUniqueViolation(ex)) {
+                    throw ex;
+                }
+                log.debug("Transaction failed by an unique key (attempt {}): {}", attempt, ex.getMessage());
+            }
+        }
+    }
 
-                // 2. Find by partial rut with foreign key
-                // https://ormlite.com/javadoc/ormlite-core/doc-files/ormlite_3.html#Join-Queries
-                log.debug("Searching with rut ..");
-                QueryBuilder<Persona, Long> personaQuery = repoPersona.getQuery();
+    /**
+     * @param ex to check.
+     * @return true if caused by a duplicated unique key or primary key (SQLState 23505, or the message of SQLite).
+     */
+    private static boolean isUniqueViolation(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String message = cause.getMessage();
+                if (UNIQUE_VIOLATION.equals(((SQLException) cause).getSQLState())
+                        || message != null && message.contains("UNIQUE constraint failed")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
-                personaQuery
-                        .where()
-                        .like("rut", "%" + query + "%");
+    /**
+     *
+     */
+    @Override
+    public List<Ficha> buscarFicha(String query) {
+        return this.buscarFicha(query, this.searchMode);
+    }
 
-                fichas.addAll(this.repoFicha
-                        .getQuery()
-                        .join(personaQuery)
-                        .query());
+    /**
+     * Contrato: C03-Buscar Ficha (numero, rut, nombre paciente and nombre duenio).
+     *
+     * @param query      to search.
+     * @param searchMode to use.
+     * @return the {@link List} of {@link Ficha}, each one only once.
+     */
+    public List<Ficha> buscarFicha(String query, SearchMode searchMode) {
 
-            }
+        // Nullity test
+        if (query == null || searchMode == null) {
+            throw new IllegalArgumentException("Can't search nulls");
+        }
 
-            // 3. Find by partial nombrePaciente with foreign key
-            log.debug("Searching with nombre paciente ..");
-            fichas.addAll(this.repoFicha
-                    .getQuery()
-                    .where()
-                    .like("nombrePaciente", "%" + query + "%")
-                    .query()
-            );
+        // 1. The ids of the Fichas
+        List<Long> ids;
+        switch (searchMode) {
+            case INDEX:
+                // Most relevant first
+                log.debug("Searching in the index ..");
+                ids = this.searchIndex.search(query);
+                break;
+            case SQL:
+                log.debug("Searching in the database ..");
+                ids = this.findFichaIds(query);
+                break;
+            default:
+                throw new IllegalArgumentException("SearchMode not supported: " + searchMode);
+        }
 
-            // 4. Find by partial nombre duenio.
-            log.debug("Searching with nombre duenio ..");
-            QueryBuilder<Persona, Long> personaQuery = repoPersona.getQuery();
-            personaQuery
-                    .where()
-                    .like("nombre", "%" + query + "%");
+        // 2. The Fichas, in the same order (each one hydrated only once, relations in batch)
+        log.debug("Found {} fichas, loading ..", ids.size());
+        return this.repoFicha.findByIds(ids, Fetch.BATCH);
 
-            fichas.addAll(repoFicha
-                    .getQuery()
-                    .join(personaQuery)
-                    .query()
-            );
+    }
 
-        } catch (SQLException ex) {
+    /**
+     * All the criteria in one statement: ficha join persona, returning the distinct ids.
+     *
+     * @param query to search.
+     * @return the ids of the Fichas.
+     */
+    private List<Long> findFichaIds(String query) {
+
+        String pattern = "%" + query + "%";
+        boolean numeric = StringUtils.isNumeric(query) && query.length() < 10;
+
+        // The args in the order of the statement: ficha, then persona
+        List<Long> ids = new ArrayList<>();
+        try (GenericRawResults<String[]> rows = numeric
+                ? this.repoFicha.queryRaw(QUERY_FICHA_IDS_NUMERIC, pattern, Integer.valueOf(query), pattern, pattern)
+                : this.repoFicha.queryRaw(QUERY_FICHA_IDS, pattern, pattern)) {
+            for (String[] row : rows) {
+                ids.add(Long.valueOf(row[0]));
+            }
+        } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
+        return ids;
+    }
 
-        // Remove duplicated (by id)
-        return new ArrayList<>(
-                fichas.stream().collect(
-                        Collectors.toCollection(() -> new TreeSet<>(Comparator.comparing(Ficha::getId)))
-                )
-        );
+    /**
+     * The criteria of {@link #findFichaIds(String)}, with a {@link SelectArg} for each value.
+     *
+     * @param fichaQuery to configure.
+     * @param numeric    true to search the numero and the rut too.
+     * @throws SQLException if any problem.
+     */
+    private void fichaIds(QueryBuilder<Ficha, Long> fichaQuery, boolean numeric) throws SQLException {
+
+        // The duenio: nombre (+ rut if numeric)
+        // https://ormlite.com/javadoc/ormlite-core/doc-files/ormlite_3.html#Join-Queries
+        QueryBuilder<Persona, Long> personaQuery = this.repoPersona.getQuery();
+        Where<Persona, Long> personaWhere = personaQuery.where().like("nombre", new SelectArg());
+        if (numeric) {
+            personaWhere.or().like("rut", new SelectArg());
+        }
 
+        // The ficha: nombrePaciente (+ numero if numeric)
+        fichaQuery.distinct()
+                .selectColumns("id")
+                .orderBy("id", true);
+        Where<Ficha, Long> fichaWhere = fichaQuery.where().like("nombrePaciente", new SelectArg());
+        if (numeric) {
+            fichaWhere.or().eq("numero", new SelectArg());
+        }
+
+        // Ficha criteria OR Persona criteria
+        fichaQuery.joinOr(personaQuery);
     }
 
     /**
@@ -216,7 +767,14 @@ public final class ContratosImpl implements Contratos {
     @Nullable
     public Persona findByRut(String rut) {
 
-        List<Persona> personas = this.repoPersona.findAll("rut", rut);
+        // The rut in the database is canonical
+        String canonical = Validation.normalizeRut(rut);
+        if (canonical == null) {
+            return null;
+        }
+
+        // From memory if possible
+        List<Persona> personas = this.cachePersona.findAll("rut", canonical);
 
         if (!personas.isEmpty()) {
             return personas.get(0);
@@ -230,6 +788,153 @@ public final class ContratosImpl implements Contratos {
      */
     @Override
     public List<Ficha> getAllFichas() {
-        return this.repoFicha.findAll();
+        // The duenios, controles and veterinarios: one query each
+        return this.repoFicha.findAll(Fetch.BATCH);
+    }
+
+    /**
+     *
+     */
+    @Override
+    public List<Ficha> getAllFichas(Long after, int limit) {
+        // The duenios, controles and veterinarios of the page: one query each
+        return this.repoFicha.findPage(after, limit, Fetch.BATCH);
+    }
+
+    /**
+     *
+     */
+    @Override
+    public Stream<Control> getControles(ZonedDateTime from, ZonedDateTime to) {
+        return this.streamControles("fecha", null, null, from, to);
+    }
+
+    /**
+     *
+     */
+    @Override
+    public Stream<Control> getControlesFicha(Long idFicha, ZonedDateTime from, ZonedDateTime to) {
+
+        // Nullity test
+        if (idFicha == null) {
+            throw new IllegalArgumentException("Can't find the controles without the ficha");
+        }
+        return this.streamControles("fecha", "ficha_id", idFicha, from, to);
+    }
+
+    /**
+     *
+     */
+    @Override
+    public Stream<Control> getControlesVeterinario(Long idVeterinario, ZonedDateTime from, ZonedDateTime to) {
+
+        // Nullity test
+        if (idVeterinario == null) {
+            throw new IllegalArgumentException("Can't find the controles without the veterinario");
+        }
+        return this.streamControles("fecha", "veterinario_id", idVeterinario, from, to);
+    }
+
+    /**
+     *
+     */
+    @Override
+    public Stream<Control> getProximosControles(ZonedDateTime from, ZonedDateTime to) {
+        return this.streamControles("fechaProximoControl", null, null, from, to);
+    }
+
+    /**
+     *
+     */
+    @Override
+    public List<Control> getControlesFicha(Long idFicha, long offset, int limit) {
+
+        // Nullity test and size
+        if (idFicha == null || offset < 0 || limit < 1) {
+            throw new IllegalArgumentException("Can't find the controles without the ficha, offset or limit");
+        }
+
+        try (Stream<Control> controles = this.streamControlesFicha(idFicha, offset, limit)) {
+            return controles.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     *
+     */
+    @Override
+    @Nullable
+    public Control latestControl(Long idFicha) {
+
+        // Nullity test
+        if (idFicha == null) {
+            throw new IllegalArgumentException("Can't find the control without the ficha");
+        }
+
+        // ORDER BY fecha DESC LIMIT 1
+        List<Control> controles = this.repoControl.query(QUERY_LATEST_CONTROL, idFicha);
+        return controles.isEmpty() ? null : controles.get(0);
+    }
+
+    /**
+     *
+     */
+    @Override
+    public long controlCount(Long idFicha) {
+
+        // Nullity test
+        if (idFicha == null) {
+            throw new IllegalArgumentException("Can't count the controles without the ficha");
+        }
+
+        // SELECT COUNT(*)
+        return this.repoControl.countOf(QUERY_CONTROL_COUNT, idFicha);
     }
+
+    /**
+     * @param idFicha the id of the Ficha.
+     * @param offset  the number of Control to skip.
+     * @param limit   the size of the page.
+     * @return the Stream of Control, the most recent first.
+     */
+    private Stream<Control> streamControlesFicha(Long idFicha, long offset, long limit) {
+        return this.repoControl.stream(Fetch.LAZY, query -> query
+                .orderBy("fecha", false)
+                .orderBy("id", false)
+                .offset(offset)
+                .limit(limit)
+                .where().eq("ficha_id", idFicha));
+    }
+
+    /**
+     * The Control with the fecha in [from, to) using the index of fecha (and of the id, if any).
+     *
+     * @param fechaColumn the column of the fecha.
+     * @param idColumn    the column to filter (null for all).
+     * @param id          the value of idColumn.
+     * @param from        the first fecha (inclusive).
+     * @param to          the last fecha (exclusive).
+     * @return the Stream of Control, sorted by fecha.
+     */
+    private Stream<Control> streamControles(String fechaColumn, String idColumn, Long id,
+                                            ZonedDateTime from, ZonedDateTime to) {
+
+        // Nullity test
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Can't find the controles without the range");
+        }
+
+        return this.repoControl.stream(Fetch.LAZY, query -> {
+            // The min offset: the first number of the instant (see ZonedDateTimeEpochType)
+            Where<Control, Long> where = query.where()
+                    .ge(fechaColumn, from.withZoneSameInstant(ZoneOffset.MIN))
+                    .and()
+                    .lt(fechaColumn, to.withZoneSameInstant(ZoneOffset.MIN));
+            if (idColumn != null) {
+                where.and().eq(idColumn, id);
+            }
+            query.orderBy(fechaColumn, true);
+        });
+    }
+
 }
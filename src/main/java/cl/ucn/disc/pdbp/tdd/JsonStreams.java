@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import io.javalin.http.Context;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Write a JSON array to the response one element at a time (without building the whole String in memory).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class JsonStreams {
+
+    /**
+     * Size of the buffer before send a chunk to the output.
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Not for construction.
+     */
+    private JsonStreams() {
+        // Empty
+    }
+
+    /**
+     * @param ctx   to write.
+     * @param gson  to use (compact or pretty).
+     * @param items to write.
+     * @throws IOException if any problem.
+     */
+    public static void writeArray(Context ctx, Gson gson, Iterable<?> items) throws IOException {
+        writeArray(ctx, gson, items.iterator());
+    }
+
+    /**
+     * @param ctx   to write.
+     * @param gson  to use (compact or pretty).
+     * @param items to write.
+     * @throws IOException if any problem.
+     */
+    public static void writeArray(Context ctx, Gson gson, Iterator<?> items) throws IOException {
+
+        ctx.contentType("application/json");
+
+        // The output of the servlet: the buffer goes to the client when full (chunked)
+        writeArray(ctx.res.getOutputStream(), gson, items);
+    }
+
+    /**
+     * @param out   to write (not closed).
+     * @param gson  to use (compact or pretty).
+     * @param items to write.
+     * @throws IOException if any problem.
+     */
+    public static void writeArray(OutputStream out, Gson gson, Iterator<?> items) throws IOException {
+
+        JsonWriter writer = gson.newJsonWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+
+        writer.beginArray();
+        while (items.hasNext()) {
+            Object item = items.next();
+            if (item == null) {
+                writer.nullValue();
+            } else {
+                gson.toJson(item, item.getClass(), writer);
+            }
+        }
+        writer.endArray();
+
+        // Don't close: the caller own the output
+        writer.flush();
+    }
+
+}
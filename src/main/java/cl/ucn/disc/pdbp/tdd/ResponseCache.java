@@ -0,0 +1,363 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the rendered responses (the body, the ETag and the headers), by route and params.
+ * <p>
+ * The invalidation: each write in the repositories change the version, the entries of other version are stale. The
+ * version is taken before the queries: a write during the render make the entry stale too.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class ResponseCache {
+
+    /**
+     * The version of the data.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The max size of the body of an entry (the bigger ones are not cached).
+     */
+    private final int maxEntryBytes;
+
+    /**
+     * The entries (LRU).
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * The number of hits.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of misses.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The Constructor.
+     *
+     * @param maxEntries    the max number of entries.
+     * @param maxEntryBytes the max size of the body of an entry.
+     */
+    public ResponseCache(int maxEntries, int maxEntryBytes) {
+
+        // Sizes
+        if (maxEntries < 1 || maxEntryBytes < 1) {
+            throw new IllegalArgumentException("The max entries and bytes need to be greater than zero");
+        }
+
+        this.maxEntryBytes = maxEntryBytes;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResponseCache.Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * A write in the backend: all the entries are stale.
+     */
+    public void invalidate() {
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * @return the current version, to use in {@link #put(String, long, Entry)}.
+     */
+    public long getVersion() {
+        return this.version.get();
+    }
+
+    /**
+     * @param key the route and params.
+     * @return the Entry of the current version (null if missing or stale).
+     */
+    public Entry get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+        }
+        if (entry == null || entry.version != this.version.get()) {
+            this.misses.increment();
+            return null;
+        }
+        this.hits.increment();
+        return entry;
+    }
+
+    /**
+     * @param key     the route and params.
+     * @param version taken before the render.
+     * @param entry   rendered.
+     */
+    public void put(String key, long version, Entry entry) {
+
+        // Stale or too big
+        if (version != this.version.get() || entry.body.length > this.maxEntryBytes) {
+            return;
+        }
+        entry.version = version;
+        synchronized (this) {
+            this.entries.put(key, entry);
+        }
+    }
+
+    /**
+     * @return the number of entries (current and stale).
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @param ifNoneMatch the header of the request (can be null).
+     * @param etag        of the response.
+     * @return true if the client has the same response (304).
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param out the output of the response.
+     * @return the {@link Capture} of the body written to out (up to the max size of an entry).
+     */
+    public Capture capture(OutputStream out) {
+
+        // Nullity test
+        if (out == null) {
+            throw new IllegalArgumentException("Can't capture without the output");
+        }
+        return new Capture(out, this.maxEntryBytes);
+    }
+
+    /**
+     * The body written to the client and copied for the cache, while the copy is not bigger than the max size of an
+     * entry (the bigger ones are only written: the memory of a response is bounded).
+     */
+    public static final class Capture extends OutputStream {
+
+        /**
+         * The output of the response.
+         */
+        private final OutputStream out;
+
+        /**
+         * The max size of the copy.
+         */
+        private final int maxBytes;
+
+        /**
+         * The copy (null if bigger than maxBytes).
+         */
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        /**
+         * The Constructor.
+         *
+         * @param out      the output of the response.
+         * @param maxBytes the max size of the copy.
+         */
+        private Capture(OutputStream out, int maxBytes) {
+            this.out = out;
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         *
+         */
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        /**
+         *
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+
+            // Over the max size: only written
+            if (this.copy != null) {
+                if (this.copy.size() + len > this.maxBytes) {
+                    this.copy = null;
+                } else {
+                    this.copy.write(b, off, len);
+                }
+            }
+        }
+
+        /**
+         *
+         */
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        /**
+         * @param headers of the response.
+         * @return the Entry with the body written, null if too big to cache.
+         */
+        public Entry toEntry(Map<String, String> headers) {
+            return this.copy == null ? null : new Entry(this.copy.toByteArray(), headers);
+        }
+    }
+
+    /**
+     * A rendered response.
+     */
+    public static final class Entry {
+
+        /**
+         * The hex digits.
+         */
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        /**
+         * The body.
+         */
+        private final byte[] body;
+
+        /**
+         * The ETag: the hash of the body.
+         */
+        private final String etag;
+
+        /**
+         * The headers (ej. the cursor of the next page).
+         */
+        private final Map<String, String> headers;
+
+        /**
+         * The version of the data.
+         */
+        private volatile long version;
+
+        /**
+         * The Constructor.
+         *
+         * @param body    of the response.
+         * @param headers of the response (without the ETag).
+         */
+        public Entry(byte[] body, Map<String, String> headers) {
+
+            // Nullity test
+            if (body == null || headers == null) {
+                throw new IllegalArgumentException("Can't create an Entry without body or headers");
+            }
+
+            this.body = body;
+            this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+            this.etag = etag(body);
+        }
+
+        /**
+         * @param body to hash.
+         * @return the strong ETag (MD5: not for security, only to detect changes).
+         */
+        private static String etag(byte[] body) {
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(body);
+                byte[] text = new byte[digest.length * 2 + 2];
+                text[0] = '"';
+                for (int i = 0; i < digest.length; i++) {
+                    text[i * 2 + 1] = HEX[(digest[i] >> 4) & 0xF];
+                    text[i * 2 + 2] = HEX[digest[i] & 0xF];
+                }
+                text[text.length - 1] = '"';
+                return new String(text, StandardCharsets.US_ASCII);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("MD5 is required in all the JDKs", ex);
+            }
+        }
+
+        /**
+         * @return the body.
+         */
+        public byte[] getBody() {
+            return this.body;
+        }
+
+        /**
+         * @return the ETag.
+         */
+        public String getEtag() {
+            return this.etag;
+        }
+
+        /**
+         * @return the headers.
+         */
+        public Map<String, String> getHeaders() {
+            return this.headers;
+        }
+    }
+
+}
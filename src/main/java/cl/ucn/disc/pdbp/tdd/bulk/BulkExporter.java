@@ -0,0 +1,507 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.bulk;
+
+import cl.ucn.disc.pdbp.tdd.dao.Fetch;
+import cl.ucn.disc.pdbp.tdd.dao.PoolConfig;
+import cl.ucn.disc.pdbp.tdd.dao.PooledConnectionSource;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.google.gson.stream.JsonWriter;
+import com.j256.ormlite.stmt.Where;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The export of Personas, Fichas and Controles to CSV or JSON lines, one row at a time: the tables are walked with
+ * cursors (the relations loaded in blocks) and written to the output as they come, the memory don't depend on the
+ * size of the tables. The columns are the same of the {@link BulkImporter}: the export of a backend can be imported
+ * in other.
+ * <p>
+ * The Fichas in JSON lines include their Controles (a merge of two cursors sorted by ficha), in CSV only the Ficha.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class BulkExporter {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BulkExporter.class);
+
+    /**
+     * Size of the buffer before send a chunk to the output.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The columns of Persona.
+     */
+    static final List<String> PERSONA_COLUMNS = Arrays.asList("rut", "nombre", "apellido", "direccion",
+            "telefonoFijo", "telefonoMovil", "email");
+
+    /**
+     * The columns of Ficha.
+     */
+    static final List<String> FICHA_COLUMNS = Arrays.asList("numero", "nombrePaciente", "especie",
+            "fechaNacimiento", "raza", "sexo", "color", "tipo", "rutDuenio");
+
+    /**
+     * The columns of Control (numeroFicha only outside of the Ficha).
+     */
+    static final List<String> CONTROL_COLUMNS = Arrays.asList("fecha", "fechaProximoControl", "temperatura", "peso",
+            "altura", "diagnostico", "rutVeterinario", "numeroFicha");
+
+    /**
+     * The name of the Controles inside of the Ficha (JSON lines).
+     */
+    public static final String CONTROLES = "controles";
+
+    /**
+     * The repo of Persona.
+     */
+    private final RepositoryOrmLite<Persona, Long> repoPersona;
+
+    /**
+     * The repo of Ficha.
+     */
+    private final RepositoryOrmLite<Ficha, Long> repoFicha;
+
+    /**
+     * The repo of Control.
+     */
+    private final RepositoryOrmLite<Control, Long> repoControl;
+
+    /**
+     * The Constructor.
+     *
+     * @param repoPersona the repo of Persona.
+     * @param repoFicha   the repo of Ficha.
+     * @param repoControl the repo of Control.
+     */
+    public BulkExporter(RepositoryOrmLite<Persona, Long> repoPersona,
+                        RepositoryOrmLite<Ficha, Long> repoFicha,
+                        RepositoryOrmLite<Control, Long> repoControl) {
+
+        // Nullity test
+        if (repoPersona == null || repoFicha == null || repoControl == null) {
+            throw new IllegalArgumentException("Can't create the exporter without the repos");
+        }
+
+        this.repoPersona = repoPersona;
+        this.repoFicha = repoFicha;
+        this.repoControl = repoControl;
+    }
+
+    /**
+     * The export to a file: databaseUrl persona|ficha|control file.
+     *
+     * @param args to use.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 3) {
+            throw new IllegalArgumentException("Usage: databaseUrl persona|ficha|control file");
+        }
+
+        try (PooledConnectionSource pool = new PooledConnectionSource(args[0], PoolConfig.DEFAULT)) {
+            new BulkExporter(new RepositoryOrmLite<>(pool, Persona.class), new RepositoryOrmLite<>(pool, Ficha.class),
+                    new RepositoryOrmLite<>(pool, Control.class)).export(args[1], Paths.get(args[2]));
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * The export to a file: persona|ficha|control, the format by the extension (.csv, .jsonl, and .gz).
+     *
+     * @param kind to export.
+     * @param file to write.
+     * @return the number of rows written.
+     */
+    public long export(String kind, Path file) {
+
+        // Nullity test
+        if (kind == null || file == null) {
+            throw new IllegalArgumentException("Can't export without the kind or the file");
+        }
+
+        String fileName = file.getFileName().toString();
+        Format format = Format.fromFileName(fileName);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            return this.export(kind, format, fileName.endsWith(".gz"), out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @param kind   to export: persona, ficha or control.
+     * @param format of the output.
+     * @param gzip   true to compress.
+     * @param out    to write (not closed).
+     * @return the number of rows written.
+     */
+    public long export(String kind, Format format, boolean gzip, OutputStream out) throws IOException {
+
+        // Nullity test
+        if (kind == null) {
+            throw new IllegalArgumentException("Can't export without the kind");
+        }
+
+        switch (kind) {
+            case "persona":
+                return this.exportPersonas(format, gzip, out);
+            case "ficha":
+                return this.exportFichas(format, gzip, out);
+            case "control":
+                return this.exportControles(format, gzip, out, null, null);
+            default:
+                throw new IllegalArgumentException("Can't export " + kind);
+        }
+    }
+
+    /**
+     * @param format of the output.
+     * @param gzip   true to compress.
+     * @param out    to write (not closed).
+     * @return the number of Personas written.
+     */
+    public long exportPersonas(Format format, boolean gzip, OutputStream out) throws IOException {
+
+        long start = System.nanoTime();
+        try (Sink sink = new Sink(format, gzip, out, PERSONA_COLUMNS);
+             Stream<Persona> personas = this.repoPersona.stream(Fetch.DEFAULT, query -> query.orderBy("id", true))) {
+
+            for (Iterator<Persona> it = personas.iterator(); it.hasNext(); ) {
+                sink.row(values(it.next()));
+            }
+            return sink.done("persona", start);
+        }
+    }
+
+    /**
+     * @param format of the output.
+     * @param gzip   true to compress.
+     * @param out    to write (not closed).
+     * @return the number of Fichas written.
+     */
+    public long exportFichas(Format format, boolean gzip, OutputStream out) throws IOException {
+
+        long start = System.nanoTime();
+        try (Sink sink = new Sink(format, gzip, out, FICHA_COLUMNS);
+             Stream<Ficha> fichas = this.repoFicha.stream(Fetch.LAZY, query -> query.orderBy("id", true))) {
+
+            // CSV: only the Ficha
+            if (format == Format.CSV) {
+                for (Iterator<Ficha> it = fichas.iterator(); it.hasNext(); ) {
+                    sink.row(values(it.next()));
+                }
+                return sink.done("ficha", start);
+            }
+
+            // JSON lines: the Controles of the Ficha from the second cursor (same order)
+            try (Stream<Control> controles = this.repoControl.stream(Fetch.LAZY, query -> query
+                    .orderBy("ficha_id", true)
+                    .orderBy("fecha", true)
+                    .where().isNotNull("ficha_id"))) {
+
+                Iterator<Control> pending = controles.iterator();
+                Control next = pending.hasNext() ? pending.next() : null;
+                List<String> nested = CONTROL_COLUMNS.subList(0, CONTROL_COLUMNS.size() - 1);
+
+                for (Iterator<Ficha> it = fichas.iterator(); it.hasNext(); ) {
+                    Ficha ficha = it.next();
+                    JsonWriter json = sink.begin(values(ficha));
+                    json.name(CONTROLES).beginArray();
+
+                    // The Controles of deleted Fichas (lower ids) are skipped
+                    while (next != null && next.getFicha().getId() <= ficha.getId()) {
+                        if (next.getFicha().getId().equals(ficha.getId())) {
+                            sink.object(nested, values(next));
+                        }
+                        next = pending.hasNext() ? pending.next() : null;
+                    }
+
+                    json.endArray();
+                    sink.end();
+                }
+            }
+            return sink.done("ficha", start);
+        }
+    }
+
+    /**
+     * @param format of the output.
+     * @param gzip   true to compress.
+     * @param out    to write (not closed).
+     * @param from   the first fecha (inclusive, null for all).
+     * @param to     the last fecha (exclusive, null for all).
+     * @return the number of Controles written.
+     */
+    public long exportControles(Format format, boolean gzip, OutputStream out, ZonedDateTime from, ZonedDateTime to)
+            throws IOException {
+
+        long start = System.nanoTime();
+        try (Sink sink = new Sink(format, gzip, out, CONTROL_COLUMNS);
+             Stream<Control> controles = this.repoControl.stream(Fetch.LAZY, query -> {
+                 query.orderBy("fecha", true);
+                 if (from != null || to != null) {
+                     // The min offset: the first number of the instant (see ZonedDateTimeEpochType)
+                     Where<Control, Long> where = query.where();
+                     if (from != null) {
+                         where.ge("fecha", from.withZoneSameInstant(ZoneOffset.MIN));
+                     }
+                     if (from != null && to != null) {
+                         where.and();
+                     }
+                     if (to != null) {
+                         where.lt("fecha", to.withZoneSameInstant(ZoneOffset.MIN));
+                     }
+                 }
+             })) {
+
+            for (Iterator<Control> it = controles.iterator(); it.hasNext(); ) {
+                sink.row(values(it.next()));
+            }
+            return sink.done("control", start);
+        }
+    }
+
+    /**
+     * @param persona to use.
+     * @return the values in the order of {@link #PERSONA_COLUMNS}.
+     */
+    private static Object[] values(Persona persona) {
+        return new Object[]{persona.getRut(), persona.getNombre(), persona.getApellido(), persona.getDireccion(),
+                persona.getTelefonoFijo(), persona.getTelefonoMovil(), persona.getEmail()};
+    }
+
+    /**
+     * @param ficha to use.
+     * @return the values in the order of {@link #FICHA_COLUMNS}.
+     */
+    private static Object[] values(Ficha ficha) {
+        return new Object[]{ficha.getNumero(), ficha.getNombrePaciente(), ficha.getEspecie(),
+                ficha.getFechaNacimiento(), ficha.getRaza(), ficha.getSexo(), ficha.getColor(), ficha.getTipo(),
+                ficha.getDuenio() == null ? null : ficha.getDuenio().getRut()};
+    }
+
+    /**
+     * @param control to use.
+     * @return the values in the order of {@link #CONTROL_COLUMNS}.
+     */
+    private static Object[] values(Control control) {
+        return new Object[]{control.getFecha(), control.getFechaProximoControl(), control.getTemperatura(),
+                control.getPeso(), control.getAltura(), control.getDiagnostico(),
+                control.getVeterinario() == null ? null : control.getVeterinario().getRut(),
+                control.getFicha() == null ? null : control.getFicha().getNumero()};
+    }
+
+    /**
+     * The output: the rows in CSV or JSON lines, buffered (and compressed).
+     */
+    private static final class Sink implements AutoCloseable {
+
+        /**
+         * The format.
+         */
+        private final Format format;
+
+        /**
+         * The columns.
+         */
+        private final List<String> columns;
+
+        /**
+         * The gzip (null if not compressed).
+         */
+        private final GZIPOutputStream gzip;
+
+        /**
+         * The output.
+         */
+        private final Writer writer;
+
+        /**
+         * The JSON (JSON lines).
+         */
+        private final JsonWriter json;
+
+        /**
+         * The line (CSV).
+         */
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * The number of rows written.
+         */
+        private long rows;
+
+        /**
+         * The Constructor: the header (CSV).
+         */
+        private Sink(Format format, boolean gzip, OutputStream out, List<String> columns) throws IOException {
+
+            // Nullity test
+            if (format == null || out == null) {
+                throw new IllegalArgumentException("Can't export without the format or the output");
+            }
+
+            this.format = format;
+            this.columns = columns;
+            this.gzip = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+            this.writer = new BufferedWriter(new OutputStreamWriter(gzip ? this.gzip : out, StandardCharsets.UTF_8),
+                    BUFFER_SIZE);
+            this.json = new JsonWriter(this.writer);
+            this.json.setLenient(true);
+
+            if (format == Format.CSV) {
+                this.writer.write(String.join(String.valueOf(Csv.SEPARATOR), columns));
+                this.writer.write('\n');
+            }
+        }
+
+        /**
+         * @param values of the row, in the order of the columns.
+         */
+        private void row(Object[] values) throws IOException {
+
+            if (this.format == Format.JSONL) {
+                this.begin(values);
+                this.end();
+                return;
+            }
+
+            this.line.setLength(0);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    this.line.append(Csv.SEPARATOR);
+                }
+                Csv.append(values[i] == null ? null : String.valueOf(values[i]), this.line);
+            }
+            this.writer.append(this.line).write('\n');
+            this.rows++;
+        }
+
+        /**
+         * Open the object of the row (JSON lines): the caller can add more properties before {@link #end()}.
+         *
+         * @param values of the row, in the order of the columns.
+         * @return the JSON.
+         */
+        private JsonWriter begin(Object[] values) throws IOException {
+            this.json.beginObject();
+            this.properties(this.columns, values);
+            return this.json;
+        }
+
+        /**
+         * Close the object of the row (JSON lines).
+         */
+        private void end() throws IOException {
+            this.json.endObject();
+            this.json.flush();
+            this.writer.write('\n');
+            this.rows++;
+        }
+
+        /**
+         * @param names  of the properties.
+         * @param values of the properties.
+         */
+        private void object(List<String> names, Object[] values) throws IOException {
+            this.json.beginObject();
+            this.properties(names, values);
+            this.json.endObject();
+        }
+
+        /**
+         * @param names  of the properties.
+         * @param values of the properties (the nulls are skipped).
+         */
+        private void properties(List<String> names, Object[] values) throws IOException {
+            for (int i = 0; i < names.size(); i++) {
+                Object value = values[i];
+                if (value == null) {
+                    continue;
+                }
+                this.json.name(names.get(i));
+                if (value instanceof Number) {
+                    this.json.value((Number) value);
+                } else {
+                    this.json.value(String.valueOf(value));
+                }
+            }
+        }
+
+        /**
+         * @param name  of the table (to log).
+         * @param start the {@link System#nanoTime()} at the start.
+         * @return the number of rows written.
+         */
+        private long done(String name, long start) throws IOException {
+            this.close();
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            log.debug("Export of {}: {} rows in {} ms ({} rows/s).", name, this.rows, millis,
+                    this.rows * 1000 / millis);
+            return this.rows;
+        }
+
+        /**
+         * Flush the buffers and finish the gzip (the output is not closed).
+         */
+        @Override
+        public void close() throws IOException {
+            this.writer.flush();
+            if (this.gzip != null) {
+                this.gzip.finish();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,822 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.bulk;
+
+import cl.ucn.disc.pdbp.tdd.ContratosImpl;
+import cl.ucn.disc.pdbp.tdd.dao.PoolConfig;
+import cl.ucn.disc.pdbp.tdd.dao.PooledConnectionSource;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.model.Sexo;
+import cl.ucn.disc.pdbp.tdd.model.Tipo;
+import cl.ucn.disc.pdbp.utils.Validation;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.j256.ormlite.dao.GenericRawResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The import of Personas, Fichas and Controles from CSV or JSON lines, one chunk of rows at a time: the rows of a
+ * chunk are validated in parallel (all the cores) while the previous chunk is written, in one transaction. The
+ * duenios, veterinarios and fichas are resolved by rut / numero from memory (the ones in the database and the ones
+ * imported). The rows with errors go to the rejects (same format + the column error) and the import continue.
+ * <p>
+ * The columns are the names of the attributes; the Ficha use rutDuenio and the Control rutVeterinario and
+ * numeroFicha. The fechas in ISO-8601 (2020-05-25T10:15:30-04:00[America/Santiago]).
+ * <p>
+ * One import at a time.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class BulkImporter {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BulkImporter.class);
+
+    /**
+     * The default number of rows validated together (and written in one transaction).
+     */
+    public static final int DEFAULT_CHUNK_SIZE = RepositoryOrmLite.DEFAULT_BATCH_SIZE;
+
+    /**
+     * The column with the reason of the reject.
+     */
+    public static final String ERROR = "error";
+
+    /**
+     * The repo of Persona.
+     */
+    private final RepositoryOrmLite<Persona, Long> repoPersona;
+
+    /**
+     * The repo of Ficha.
+     */
+    private final RepositoryOrmLite<Ficha, Long> repoFicha;
+
+    /**
+     * The repo of Control.
+     */
+    private final RepositoryOrmLite<Control, Long> repoControl;
+
+    /**
+     * The number of rows validated together.
+     */
+    private final int chunkSize;
+
+    /**
+     * The JSON.
+     */
+    private final Gson gson = new Gson();
+
+    /**
+     * The id of the Personas by rut (loaded from the database the first time).
+     */
+    private Map<String, Long> personaIds;
+
+    /**
+     * The emails in use (unique).
+     */
+    private Set<String> emails;
+
+    /**
+     * The id of the Fichas by numero (loaded from the database the first time).
+     */
+    private Map<Integer, Long> fichaIds;
+
+    /**
+     * The Constructor.
+     *
+     * @param repoPersona the repo of Persona.
+     * @param repoFicha   the repo of Ficha.
+     * @param repoControl the repo of Control.
+     * @param chunkSize   the number of rows validated together (and written in one transaction).
+     */
+    public BulkImporter(RepositoryOrmLite<Persona, Long> repoPersona,
+                        RepositoryOrmLite<Ficha, Long> repoFicha,
+                        RepositoryOrmLite<Control, Long> repoControl,
+                        int chunkSize) {
+
+        // Nullity test and size
+        if (repoPersona == null || repoFicha == null || repoControl == null || chunkSize < 1) {
+            throw new IllegalArgumentException("Can't create the importer without the repos or chunk size");
+        }
+
+        this.repoPersona = repoPersona;
+        this.repoFicha = repoFicha;
+        this.repoControl = repoControl;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param format  of the input.
+     * @param input   the rows (not closed).
+     * @param rejects the rows with errors (not closed, can be null).
+     * @return the report.
+     */
+    public synchronized ImportReport importPersonas(Format format, Reader input, Writer rejects) {
+        this.loadPersonas();
+        return this.run("persona", format, input, rejects, this::parsePersona, this.repoPersona, persona -> {
+            this.personaIds.put(persona.getRut(), persona.getId());
+        }, persona -> {
+            this.personaIds.remove(persona.getRut());
+            this.emails.remove(persona.getEmail());
+        });
+    }
+
+    /**
+     * @param format  of the input.
+     * @param input   the rows (not closed).
+     * @param rejects the rows with errors (not closed, can be null).
+     * @return the report.
+     */
+    public synchronized ImportReport importFichas(Format format, Reader input, Writer rejects) {
+        this.loadPersonas();
+        this.loadFichas();
+        return this.run("ficha", format, input, rejects, this::parseFicha, this.repoFicha, ficha -> {
+            this.fichaIds.put(ficha.getNumero(), ficha.getId());
+        }, ficha -> {
+            this.fichaIds.remove(ficha.getNumero());
+        });
+    }
+
+    /**
+     * @param format  of the input.
+     * @param input   the rows (not closed).
+     * @param rejects the rows with errors (not closed, can be null).
+     * @return the report.
+     */
+    public synchronized ImportReport importControles(Format format, Reader input, Writer rejects) {
+        this.loadPersonas();
+        this.loadFichas();
+        return this.run("control", format, input, rejects, this::parseControl, this.repoControl, control -> {
+        }, control -> {
+        });
+    }
+
+    /**
+     * The import of a file: databaseUrl persona|ficha|control file [rejects]. The format by the extension of the
+     * file (.csv, .jsonl, and .gz).
+     *
+     * @param args to use.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 3) {
+            throw new IllegalArgumentException("Usage: databaseUrl persona|ficha|control file [rejects]");
+        }
+
+        String file = args[2];
+        Format format = Format.fromFileName(file);
+        try (PooledConnectionSource pool = new PooledConnectionSource(args[0], PoolConfig.DEFAULT);
+             Reader input = open(file);
+             Writer rejects = args.length > 3 ? Files.newBufferedWriter(Paths.get(args[3])) : null) {
+
+            ContratosImpl.schema(pool).migrate();
+            BulkImporter importer = new BulkImporter(new RepositoryOrmLite<>(pool, Persona.class),
+                    new RepositoryOrmLite<>(pool, Ficha.class), new RepositoryOrmLite<>(pool, Control.class),
+                    DEFAULT_CHUNK_SIZE);
+
+            switch (args[1]) {
+                case "persona":
+                    importer.importPersonas(format, input, rejects);
+                    break;
+                case "ficha":
+                    importer.importFichas(format, input, rejects);
+                    break;
+                case "control":
+                    importer.importControles(format, input, rejects);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Can't import " + args[1]);
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param file to read (gzip if .gz).
+     * @return the reader in UTF-8.
+     */
+    private static Reader open(String file) throws IOException {
+        InputStream in = Files.newInputStream(Paths.get(file));
+        if (file.endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The pipeline: read a chunk, validate it in parallel while the previous one is written.
+     *
+     * @param name     of the table (to log).
+     * @param format   of the input.
+     * @param input    the rows.
+     * @param rejects  the rows with errors (can be null).
+     * @param parser   the validation of a row (in parallel).
+     * @param repo     to write.
+     * @param imported called after the write of each T (in the writer).
+     * @param failed   called if the write of a T fail (in the writer).
+     * @param <T>      the type to import.
+     * @return the report.
+     */
+    private <T> ImportReport run(String name, Format format, Reader input, Writer rejects, Parser<T> parser,
+                                 RepositoryOrmLite<T, Long> repo, Consumer<T> imported, Consumer<T> failed) {
+
+        // Nullity test
+        if (format == null || input == null) {
+            throw new IllegalArgumentException("Can't import without the format or the input");
+        }
+
+        long start = System.nanoTime();
+        long[] counters = new long[3];
+        try {
+            Source source = new Source(format, new BufferedReader(input), rejects);
+
+            List<Row> chunk = source.next(this.chunkSize);
+            CompletableFuture<List<Validated<T>>> validating = validate(chunk, parser);
+            while (!chunk.isEmpty()) {
+
+                List<Validated<T>> validated = validating.join();
+                counters[0] += chunk.size();
+
+                // The next chunk in the other cores
+                chunk = source.next(this.chunkSize);
+                validating = validate(chunk, parser);
+
+                this.write(validated, source, repo, imported, failed, counters);
+
+                ImportReport progress = new ImportReport(counters[0], counters[1], counters[2],
+                        System.nanoTime() - start);
+                log.debug("Import of {}: {}.", name, progress);
+            }
+            source.flush();
+
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        ImportReport report = new ImportReport(counters[0], counters[1], counters[2], System.nanoTime() - start);
+        log.info("Import of {} finished: {}.", name, report);
+        return report;
+    }
+
+    /**
+     * @param chunk  to validate.
+     * @param parser of each row.
+     * @param <T>    the type to import.
+     * @return the rows validated, in the same order.
+     */
+    private static <T> CompletableFuture<List<Validated<T>>> validate(List<Row> chunk, Parser<T> parser) {
+
+        if (chunk.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        return CompletableFuture.supplyAsync(() -> chunk.parallelStream().map(row -> {
+            if (row.error != null) {
+                return new Validated<T>(row, null, row.error);
+            }
+            try {
+                return new Validated<>(row, parser.parse(row.fields), null);
+            } catch (RuntimeException ex) {
+                return new Validated<T>(row, null, reason(ex));
+            }
+        }).collect(Collectors.toList()));
+    }
+
+    /**
+     * Resolve the references and write the chunk in one transaction (one by one if the transaction fail).
+     */
+    private <T> void write(List<Validated<T>> validated, Source source, RepositoryOrmLite<T, Long> repo,
+                           Consumer<T> imported, Consumer<T> failed, long[] counters) throws IOException {
+
+        // The references: in order (the previous rows can be the duenio of the next ones)
+        List<T> ts = new ArrayList<>(validated.size());
+        List<Row> rows = new ArrayList<>(validated.size());
+        for (Validated<T> row : validated) {
+            if (row.error != null) {
+                source.reject(row.row, row.error);
+                counters[2]++;
+                continue;
+            }
+            try {
+                ts.add(row.resolvable.resolve());
+                rows.add(row.row);
+            } catch (RuntimeException ex) {
+                source.reject(row.row, reason(ex));
+                counters[2]++;
+            }
+        }
+
+        // All in one transaction (rolled back if any fail: never saved twice)
+        try {
+            repo.inTransaction(() -> repo.createAll(ts));
+            ts.forEach(imported);
+            counters[1] += ts.size();
+            return;
+        } catch (RuntimeException ex) {
+            log.warn("Can't write the chunk in one transaction, one by one: {}", reason(ex));
+        }
+
+        // One by one, after the rollback: only the wrong ones are rejected
+        for (int i = 0; i < ts.size(); i++) {
+            T t = ts.get(i);
+            try {
+                repo.create(t);
+                imported.accept(t);
+                counters[1]++;
+            } catch (RuntimeException ex) {
+                failed.accept(t);
+                source.reject(rows.get(i), reason(ex));
+                counters[2]++;
+            }
+        }
+    }
+
+    /**
+     * @param ex to use.
+     * @return the message of the root cause.
+     */
+    private static String reason(Throwable ex) {
+        Throwable root = ex;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() == null ? root.getClass().getSimpleName() : root.getMessage();
+    }
+
+    /**
+     * The Persona: validated in parallel, the rut and the email unique in the writer.
+     */
+    private Resolvable<Persona> parsePersona(Map<String, String> fields) {
+
+        Persona persona = new Persona(
+                required(fields, "rut"),
+                required(fields, "nombre"),
+                required(fields, "apellido"),
+                fields.get("direccion"),
+                toLong(fields.get("telefonoFijo")),
+                toLong(fields.get("telefonoMovil")),
+                required(fields, "email"));
+
+        return () -> {
+            if (this.personaIds.containsKey(persona.getRut())) {
+                throw new IllegalArgumentException("Rut already exists: " + persona.getRut());
+            }
+            if (!this.emails.add(persona.getEmail())) {
+                throw new IllegalArgumentException("Email already exists: " + persona.getEmail());
+            }
+            // Reserved until the write
+            this.personaIds.put(persona.getRut(), null);
+            return persona;
+        };
+    }
+
+    /**
+     * The Ficha: validated in parallel, the duenio by rut in the writer.
+     */
+    private Resolvable<Ficha> parseFicha(Map<String, String> fields) {
+
+        Integer numero = Integer.valueOf(required(fields, "numero"));
+        String nombrePaciente = required(fields, "nombrePaciente");
+        String especie = required(fields, "especie");
+        String fechaNacimiento = fields.get("fechaNacimiento");
+        ZonedDateTime nacimiento = fechaNacimiento == null ? null : ZonedDateTime.parse(fechaNacimiento);
+        Sexo sexo = Sexo.valueOf(required(fields, "sexo").toUpperCase(Locale.ROOT));
+        Tipo tipo = Tipo.valueOf(required(fields, "tipo").toUpperCase(Locale.ROOT));
+        String rutDuenio = rut(required(fields, "rutDuenio"));
+
+        return () -> {
+            if (this.fichaIds.containsKey(numero)) {
+                throw new IllegalArgumentException("Numero already exists: " + numero);
+            }
+            Persona duenio = this.persona(rutDuenio);
+            // Reserved until the write
+            this.fichaIds.put(numero, null);
+            return new Ficha(numero, nombrePaciente, especie, nacimiento, fields.get("raza"), sexo,
+                    fields.get("color"), tipo, duenio);
+        };
+    }
+
+    /**
+     * The Control: validated in parallel, the veterinario and the ficha in the writer.
+     */
+    private Resolvable<Control> parseControl(Map<String, String> fields) {
+
+        ZonedDateTime fecha = ZonedDateTime.parse(required(fields, "fecha"));
+        String proximo = fields.get("fechaProximoControl");
+        ZonedDateTime fechaProximoControl = proximo == null ? null : ZonedDateTime.parse(proximo);
+        float temperatura = Float.parseFloat(required(fields, "temperatura"));
+        float peso = Float.parseFloat(required(fields, "peso"));
+        float altura = Float.parseFloat(required(fields, "altura"));
+        String rutVeterinario = rut(required(fields, "rutVeterinario"));
+        Integer numeroFicha = Integer.valueOf(required(fields, "numeroFicha"));
+
+        return () -> {
+            Long idFicha = this.fichaIds.get(numeroFicha);
+            if (idFicha == null) {
+                throw new IllegalArgumentException("Ficha not found: " + numeroFicha);
+            }
+            return new Control(fecha, fechaProximoControl, temperatura, peso, altura, fields.get("diagnostico"),
+                    this.persona(rutVeterinario), this.repoFicha.reference(idFicha));
+        };
+    }
+
+    /**
+     * @param rut of the Persona.
+     * @return the Persona (only the id).
+     */
+    private Persona persona(String rut) {
+        Long id = this.personaIds.get(rut);
+        if (id == null) {
+            throw new IllegalArgumentException("Persona not found: " + rut);
+        }
+        return this.repoPersona.reference(id);
+    }
+
+    /**
+     * @param fields of the row.
+     * @param name   of the column.
+     * @return the value.
+     */
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing the " + name);
+        }
+        return value;
+    }
+
+    /**
+     * @param value to parse.
+     * @return the number or null.
+     */
+    private static Long toLong(String value) {
+        return value == null || value.isEmpty() ? null : Long.valueOf(value);
+    }
+
+    /**
+     * @param rut to validate.
+     * @return the rut canonical.
+     */
+    private static String rut(String rut) {
+        String canonical = Validation.normalizeRut(rut);
+        if (canonical == null) {
+            throw new IllegalArgumentException("Rut not valid: " + rut);
+        }
+        return canonical;
+    }
+
+    /**
+     * The ruts and emails of the database (id, rut and email: not the whole Persona).
+     */
+    private void loadPersonas() {
+
+        if (this.personaIds != null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<String, Long> ids = new HashMap<>();
+        Set<String> mails = new HashSet<>();
+        try (GenericRawResults<String[]> rows = this.repoPersona.queryRaw(this.repoPersona.getQuery()
+                .selectColumns("id", "rut", "email"))) {
+            for (String[] row : rows) {
+                ids.put(row[1], Long.valueOf(row[0]));
+                mails.add(row[2]);
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        this.personaIds = ids;
+        this.emails = mails;
+        log.debug("Loaded {} ruts in {} ms.", ids.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The numeros of the database (id and numero: not the whole Ficha).
+     */
+    private void loadFichas() {
+
+        if (this.fichaIds != null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<Integer, Long> ids = new HashMap<>();
+        try (GenericRawResults<String[]> rows = this.repoFicha.queryRaw(this.repoFicha.getQuery()
+                .selectColumns("id", "numero"))) {
+            for (String[] row : rows) {
+                if (row[1] != null) {
+                    ids.put(Integer.valueOf(row[1]), Long.valueOf(row[0]));
+                }
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        this.fichaIds = ids;
+        log.debug("Loaded {} numeros in {} ms.", ids.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The validation of a row.
+     *
+     * @param <T> the type to import.
+     */
+    @FunctionalInterface
+    private interface Parser<T> {
+
+        /**
+         * @param fields of the row.
+         * @return the T to resolve in the writer.
+         */
+        Resolvable<T> parse(Map<String, String> fields);
+    }
+
+    /**
+     * The T with the references resolved (in the writer, in order).
+     *
+     * @param <T> the type to import.
+     */
+    @FunctionalInterface
+    private interface Resolvable<T> {
+
+        /**
+         * @return the T.
+         */
+        T resolve();
+    }
+
+    /**
+     * A row of the input.
+     */
+    private static final class Row {
+
+        /**
+         * The number of the line.
+         */
+        private final long line;
+
+        /**
+         * The line.
+         */
+        private final String raw;
+
+        /**
+         * The values by column (null if error).
+         */
+        private final Map<String, String> fields;
+
+        /**
+         * The JSON of the line (JSONL).
+         */
+        private final JsonObject json;
+
+        /**
+         * The error of the format (null if ok).
+         */
+        private final String error;
+
+        /**
+         * The Constructor.
+         */
+        private Row(long line, String raw, Map<String, String> fields, JsonObject json, String error) {
+            this.line = line;
+            this.raw = raw;
+            this.fields = fields;
+            this.json = json;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A row validated.
+     *
+     * @param <T> the type to import.
+     */
+    private static final class Validated<T> {
+
+        /**
+         * The row.
+         */
+        private final Row row;
+
+        /**
+         * The T to resolve (null if error).
+         */
+        private final Resolvable<T> resolvable;
+
+        /**
+         * The error (null if ok).
+         */
+        private final String error;
+
+        /**
+         * The Constructor.
+         */
+        private Validated(Row row, Resolvable<T> resolvable, String error) {
+            this.row = row;
+            this.resolvable = resolvable;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The rows of the input (by chunks) and the output of the rejects.
+     */
+    private final class Source {
+
+        /**
+         * The format.
+         */
+        private final Format format;
+
+        /**
+         * The input.
+         */
+        private final BufferedReader reader;
+
+        /**
+         * The rejects (can be null).
+         */
+        private final Writer rejects;
+
+        /**
+         * The columns (CSV).
+         */
+        private final List<String> header;
+
+        /**
+         * The number of the last line read.
+         */
+        private long line;
+
+        /**
+         * The Constructor: read the header (CSV).
+         */
+        private Source(Format format, BufferedReader reader, Writer rejects) throws IOException {
+            this.format = format;
+            this.reader = reader;
+            this.rejects = rejects;
+
+            if (format == Format.CSV) {
+                String first = reader.readLine();
+                this.line++;
+                this.header = first == null ? Collections.emptyList() : Csv.parse(first);
+                if (rejects != null && first != null) {
+                    rejects.write(first + Csv.SEPARATOR + ERROR + "\n");
+                }
+            } else {
+                this.header = Collections.emptyList();
+            }
+        }
+
+        /**
+         * @param size max number of rows.
+         * @return the next rows (empty at the end).
+         */
+        private List<Row> next(int size) throws IOException {
+            List<Row> rows = new ArrayList<>(size);
+            String raw;
+            while (rows.size() < size && (raw = this.reader.readLine()) != null) {
+                this.line++;
+                if (raw.trim().isEmpty()) {
+                    continue;
+                }
+                rows.add(this.format == Format.CSV ? this.csv(raw) : this.json(raw));
+            }
+            return rows;
+        }
+
+        /**
+         * @param raw the line.
+         * @return the row.
+         */
+        private Row csv(String raw) {
+            try {
+                List<String> values = Csv.parse(raw);
+                if (values.size() != this.header.size()) {
+                    return new Row(this.line, raw, null, null, "Columns: " + values.size() + " != "
+                            + this.header.size());
+                }
+                Map<String, String> fields = new LinkedHashMap<>();
+                for (int i = 0; i < values.size(); i++) {
+                    fields.put(this.header.get(i), values.get(i));
+                }
+                return new Row(this.line, raw, fields, null, null);
+            } catch (IllegalArgumentException ex) {
+                return new Row(this.line, raw, null, null, reason(ex));
+            }
+        }
+
+        /**
+         * @param raw the line.
+         * @return the row.
+         */
+        private Row json(String raw) {
+            try {
+                JsonObject json = JsonParser.parseString(raw).getAsJsonObject();
+                Map<String, String> fields = new LinkedHashMap<>();
+                for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+                    // The nested ones (ej. the controles of an export of fichas) are skipped
+                    JsonElement value = entry.getValue();
+                    if (value.isJsonPrimitive()) {
+                        fields.put(entry.getKey(), value.getAsString());
+                    }
+                }
+                return new Row(this.line, raw, fields, json, null);
+            } catch (RuntimeException ex) {
+                return new Row(this.line, raw, null, null, "Line " + this.line + ": " + reason(ex));
+            }
+        }
+
+        /**
+         * Write the row to the rejects: same format + the error.
+         */
+        private void reject(Row row, String error) throws IOException {
+
+            // Without file, to the log
+            if (this.rejects == null) {
+                log.debug("Line {} rejected: {}", row.line, error);
+                return;
+            }
+
+            if (this.format == Format.CSV) {
+                StringBuilder sb = new StringBuilder(row.raw).append(Csv.SEPARATOR);
+                this.rejects.write(Csv.append(error, sb).append('\n').toString());
+            } else {
+                JsonObject json = row.json != null ? row.json.deepCopy() : new JsonObject();
+                if (row.json == null) {
+                    json.addProperty("line", row.raw);
+                }
+                json.addProperty(ERROR, error);
+                this.rejects.write(gson.toJson(json) + "\n");
+            }
+        }
+
+        /**
+         * Flush the rejects.
+         */
+        private void flush() throws IOException {
+            if (this.rejects != null) {
+                this.rejects.flush();
+            }
+        }
+    }
+
+}
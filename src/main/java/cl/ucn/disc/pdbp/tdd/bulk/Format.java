@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.bulk;
+
+/**
+ * The formats of the bulk files.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public enum Format {
+
+    /**
+     * Comma separated values: the first line with the names of the columns (one line by row).
+     */
+    CSV("text/csv; charset=utf-8"),
+
+    /**
+     * JSON lines: one object by line.
+     */
+    JSONL("application/x-ndjson");
+
+    /**
+     * The content type (http).
+     */
+    private final String contentType;
+
+    /**
+     * The Constructor.
+     *
+     * @param contentType of the format.
+     */
+    Format(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return the content type (http).
+     */
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * @param fileName to use (.csv, .jsonl, .csv.gz, ..).
+     * @return the Format of the file.
+     */
+    public static Format fromFileName(String fileName) {
+
+        // Nullity test
+        if (fileName == null) {
+            throw new IllegalArgumentException("Can't find the format without the file name");
+        }
+
+        String name = fileName.toLowerCase().replaceAll("\\.gz$", "");
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return JSONL;
+        }
+        throw new IllegalArgumentException("Format not supported: " + fileName);
+    }
+
+}
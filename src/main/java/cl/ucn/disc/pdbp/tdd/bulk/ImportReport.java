@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of an import: the rows read, imported and rejected.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class ImportReport {
+
+    /**
+     * The rows read.
+     */
+    private final long read;
+
+    /**
+     * The rows imported.
+     */
+    private final long imported;
+
+    /**
+     * The rows rejected.
+     */
+    private final long rejected;
+
+    /**
+     * The duration.
+     */
+    private final long nanos;
+
+    /**
+     * The Constructor.
+     *
+     * @param read     the rows read.
+     * @param imported the rows imported.
+     * @param rejected the rows rejected.
+     * @param nanos    the duration.
+     */
+    public ImportReport(long read, long imported, long rejected, long nanos) {
+        this.read = read;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.nanos = nanos;
+    }
+
+    /**
+     * @return the rows read.
+     */
+    public long getRead() {
+        return this.read;
+    }
+
+    /**
+     * @return the rows imported.
+     */
+    public long getImported() {
+        return this.imported;
+    }
+
+    /**
+     * @return the rows rejected.
+     */
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * @return the duration in millis.
+     */
+    public long getMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.nanos);
+    }
+
+    /**
+     * @return the rows read by second.
+     */
+    public long getRowsPerSecond() {
+        return this.read * TimeUnit.SECONDS.toNanos(1) / Math.max(1, this.nanos);
+    }
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.read + " rows read, " + this.imported + " imported, " + this.rejected + " rejected in "
+                + this.getMillis() + " ms (" + this.getRowsPerSecond() + " rows/s)";
+    }
+
+}
@@ -0,0 +1,395 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.EagerForeignCollection;
+import com.j256.ormlite.field.DatabaseFieldConfig;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Load the relations of a list of objects with one IN (...) query per relation ({@link Fetch#BATCH} and
+ * {@link Fetch#LAZY}).
+ * <p>
+ * Use a "shallow" dao of each class (without foreignAutoRefresh and eager collections) so the rows are mapped without
+ * extra queries, and then stitch the graph in memory.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+final class BatchFetcher {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BatchFetcher.class);
+
+    /**
+     * Max number of ids inside one IN (...) clause.
+     */
+    static final int MAX_IDS_PER_QUERY = 500;
+
+    /**
+     * Same as the default maxForeignAutoRefreshLevel of ORMLite.
+     */
+    private static final int MAX_LEVEL = 2;
+
+    /**
+     * The connection.
+     */
+    private final ConnectionSource connectionSource;
+
+    /**
+     * The class -> shallow metadata.
+     */
+    private final Map<Class<?>, Shallow<?>> shallows = new ConcurrentHashMap<>();
+
+    /**
+     * The Constructor.
+     *
+     * @param connectionSource to use.
+     */
+    BatchFetcher(ConnectionSource connectionSource) {
+        this.connectionSource = connectionSource;
+    }
+
+    /**
+     * @param clazz to use.
+     * @param <T>   the type.
+     * @return the dao of clazz without foreignAutoRefresh and eager collections.
+     */
+    <T, K> Dao<T, K> shallowDao(Class<T> clazz) {
+        @SuppressWarnings("unchecked")
+        Dao<T, K> dao = (Dao<T, K>) shallow(clazz).dao;
+        return dao;
+    }
+
+    /**
+     * Load the T with the ids (without the relations).
+     *
+     * @param dao      shallow to use.
+     * @param idColumn the name of the column.
+     * @param ids      to load.
+     * @return the T found.
+     */
+    static <T> List<T> queryIn(Dao<T, ?> dao, String idColumn, Collection<?> ids) throws SQLException {
+        return queryIn(dao, idColumn, ids, null, true);
+    }
+
+    /**
+     * Load the T with the ids (without the relations), sorted by orderColumn in each block.
+     *
+     * @param dao         shallow to use.
+     * @param idColumn    the name of the column.
+     * @param ids         to load.
+     * @param orderColumn to sort (can be null).
+     * @param ascending   the order.
+     * @return the T found.
+     */
+    private static <T> List<T> queryIn(Dao<T, ?> dao, String idColumn, Collection<?> ids,
+                                       String orderColumn, boolean ascending) throws SQLException {
+        List<Object> keys = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<T> list = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += MAX_IDS_PER_QUERY) {
+            List<Object> block = keys.subList(from, Math.min(from + MAX_IDS_PER_QUERY, keys.size()));
+            QueryBuilder<T, ?> query = dao.queryBuilder();
+            if (orderColumn != null) {
+                query.orderBy(orderColumn, ascending);
+            }
+            list.addAll(query.where().in(idColumn, block).query());
+        }
+        return list;
+    }
+
+    /**
+     * Load the relations of the objects.
+     *
+     * @param clazz   of the objects.
+     * @param objects to complete.
+     * @param fetch   {@link Fetch#BATCH} (all the relations) or {@link Fetch#LAZY} (without the collections).
+     */
+    <T> void fetch(Class<T> clazz, List<T> objects, Fetch fetch) {
+        try {
+            fetch(clazz, objects, MAX_LEVEL, null, fetch == Fetch.BATCH);
+        } catch (SQLException | IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param clazz       of the objects.
+     * @param objects     to complete.
+     * @param level       remaining.
+     * @param skip        the back reference to the parent (can be null).
+     * @param collections if false, the collections stay lazy.
+     */
+    private void fetch(Class<?> clazz, List<?> objects, int level, FieldType skip, boolean collections)
+            throws SQLException, IllegalAccessException {
+
+        if (level <= 0 || objects.isEmpty()) {
+            return;
+        }
+
+        Shallow<?> shallow = shallow(clazz);
+
+        // Foreign fields: the ids, one query and assign
+        for (FieldType fieldType : shallow.foreigns) {
+            if (skip != null && fieldType.getField().equals(skip.getField())) {
+                continue;
+            }
+
+            Set<Object> ids = new LinkedHashSet<>();
+            for (Object object : objects) {
+                Object id = fieldType.extractJavaFieldValue(object);
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+
+            Shallow<?> foreign = shallow(fieldType.getType());
+            List<?> loaded = queryIn(foreign.dao, foreign.idField.getColumnName(), ids);
+            log.trace("Loaded {} {} for {} {}.", loaded.size(), fieldType.getType().getSimpleName(),
+                    objects.size(), clazz.getSimpleName());
+            fetch(fieldType.getType(), loaded, level - 1, null, collections);
+
+            Map<Object, Object> byId = new HashMap<>(loaded.size());
+            for (Object object : loaded) {
+                byId.put(foreign.idField.extractJavaFieldValue(object), object);
+            }
+            for (Object object : objects) {
+                Object found = byId.get(fieldType.extractJavaFieldValue(object));
+                if (found != null) {
+                    fieldType.getField().set(object, found);
+                }
+            }
+        }
+
+        // The collections are lazy (loaded on first access)
+        if (!collections) {
+            return;
+        }
+
+        // Foreign collections: the children of all the objects, one query and group
+        for (Children children : shallow.collections) {
+
+            FieldType fieldType = children.fieldType;
+            Class<?> childClass = collectionType(fieldType.getField());
+            Shallow<?> child = shallow(childClass);
+            FieldType parentField = child.dao.findForeignFieldType(clazz);
+
+            Map<Object, Object> parents = new HashMap<>(objects.size());
+            for (Object object : objects) {
+                parents.put(shallow.idField.extractJavaFieldValue(object), object);
+            }
+
+            List<?> loaded = queryIn(child.dao, parentField.getColumnName(), parents.keySet(),
+                    children.orderColumn, children.ascending);
+            log.trace("Loaded {} {} for {} {}.", loaded.size(), childClass.getSimpleName(),
+                    objects.size(), clazz.getSimpleName());
+            fetch(childClass, loaded, level - 1, parentField, true);
+
+            Map<Object, List<Object>> grouped = new HashMap<>(objects.size());
+            for (Object object : loaded) {
+                grouped.computeIfAbsent(parentField.extractJavaFieldValue(object), k -> new ArrayList<>()).add(object);
+            }
+            for (Map.Entry<Object, Object> entry : parents.entrySet()) {
+                fieldType.getField().set(entry.getValue(),
+                        inMemory(entry.getValue(), parentField, grouped.get(entry.getKey())));
+            }
+        }
+    }
+
+    /**
+     * @return a read only {@link com.j256.ormlite.dao.ForeignCollection} with the children (no queries).
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object inMemory(Object parent, FieldType parentField, List<Object> children) throws SQLException {
+        // Without dao and parent id: no query to the backend
+        EagerForeignCollection collection = new EagerForeignCollection(null, parent, null, parentField, null, false);
+        if (children != null) {
+            collection.addAll(children);
+        }
+        return collection;
+    }
+
+    /**
+     * @param field the ForeignCollection.
+     * @return the type of the elements.
+     */
+    private static Class<?> collectionType(Field field) {
+        ParameterizedType type = (ParameterizedType) field.getGenericType();
+        return (Class<?>) type.getActualTypeArguments()[0];
+    }
+
+    /**
+     * @param clazz to use.
+     * @return the shallow metadata of clazz.
+     */
+    private <T> Shallow<?> shallow(Class<T> clazz) {
+        Shallow<?> shallow = shallows.get(clazz);
+        if (shallow == null) {
+            try {
+                shallow = new Shallow<>(connectionSource, clazz);
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex);
+            }
+            shallows.putIfAbsent(clazz, shallow);
+        }
+        return shallow;
+    }
+
+    /**
+     * The shallow dao + the relations to fetch.
+     */
+    private static final class Shallow<T> {
+
+        /**
+         * The dao without relations.
+         */
+        private final Dao<T, ?> dao;
+
+        /**
+         * The id.
+         */
+        private final FieldType idField;
+
+        /**
+         * The foreignAutoRefresh fields.
+         */
+        private final List<FieldType> foreigns = new ArrayList<>();
+
+        /**
+         * The collections.
+         */
+        private final List<Children> collections = new ArrayList<>();
+
+        /**
+         * The Constructor.
+         */
+        private Shallow(ConnectionSource connectionSource, Class<T> clazz) throws SQLException {
+
+            String tableName = DatabaseTableConfig.extractTableName(connectionSource.getDatabaseType(), clazz);
+
+            // The configuration of each field (precomputed or from the annotations)
+            List<DatabaseFieldConfig> fieldConfigs = TableConfigs.fieldConfigs(clazz);
+            if (fieldConfigs == null) {
+                fieldConfigs = new ArrayList<>();
+                for (Class<?> walk = clazz; walk != null; walk = walk.getSuperclass()) {
+                    for (Field field : walk.getDeclaredFields()) {
+                        DatabaseFieldConfig fieldConfig = DatabaseFieldConfig.fromField(
+                                connectionSource.getDatabaseType(), tableName, field);
+                        if (fieldConfig != null) {
+                            fieldConfigs.add(fieldConfig);
+                        }
+                    }
+                }
+            }
+
+            // Without the auto refresh and eager collections
+            Set<String> foreignNames = new LinkedHashSet<>();
+            Map<String, DatabaseFieldConfig> collectionConfigs = new HashMap<>();
+            for (DatabaseFieldConfig fieldConfig : fieldConfigs) {
+                if (fieldConfig.isForeignAutoRefresh()) {
+                    foreignNames.add(fieldConfig.getFieldName());
+                    fieldConfig.setForeignAutoRefresh(false);
+                }
+                if (fieldConfig.isForeignCollection()) {
+                    collectionConfigs.put(fieldConfig.getFieldName(), fieldConfig);
+                    fieldConfig.setForeignCollectionEager(false);
+                }
+            }
+
+            // Not registered in the DaoManager: the DEFAULT dao is still used by the rest.
+            this.dao = new BaseDaoImpl<T, Object>(connectionSource,
+                    new DatabaseTableConfig<>(clazz, tableName, fieldConfigs)) {
+            };
+            FieldType id = null;
+            for (FieldType fieldType : ((BaseDaoImpl<T, ?>) this.dao).getTableInfo().getFieldTypes()) {
+                if (fieldType.isId() || fieldType.isGeneratedId()) {
+                    id = fieldType;
+                }
+                if (foreignNames.contains(fieldType.getFieldName())) {
+                    fieldType.getField().setAccessible(true);
+                    foreigns.add(fieldType);
+                }
+                DatabaseFieldConfig collectionConfig = collectionConfigs.get(fieldType.getFieldName());
+                if (collectionConfig != null) {
+                    fieldType.getField().setAccessible(true);
+                    collections.add(new Children(fieldType, collectionConfig.getForeignCollectionOrderColumnName(),
+                            collectionConfig.isForeignCollectionOrderAscending()));
+                }
+            }
+            this.idField = id;
+        }
+    }
+
+    /**
+     * A foreign collection and its order.
+     */
+    private static final class Children {
+
+        /**
+         * The field of the collection.
+         */
+        private final FieldType fieldType;
+
+        /**
+         * The column to sort (can be null).
+         */
+        private final String orderColumn;
+
+        /**
+         * The order.
+         */
+        private final boolean ascending;
+
+        /**
+         * The Constructor.
+         */
+        private Children(FieldType fieldType, String orderColumn, boolean ascending) {
+            this.fieldType = fieldType;
+            this.orderColumn = orderColumn;
+            this.ascending = ascending;
+        }
+    }
+
+}
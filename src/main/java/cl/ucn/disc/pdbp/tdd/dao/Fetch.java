@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+/**
+ * How to load the relations (foreign fields and foreign collections) of the model.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public enum Fetch {
+
+    /**
+     * As declared in the annotations of the model: one query for each foreignAutoRefresh field and each eager
+     * collection, for each row.
+     */
+    DEFAULT,
+
+    /**
+     * The relations declared as foreignAutoRefresh and all the foreign collections (eager or not) are loaded with one
+     * IN (...) query per relation for all the rows, and stitched in memory. The back reference of a collection
+     * (ej. Control.ficha) only has the id.
+     */
+    BATCH,
+
+    /**
+     * The foreignAutoRefresh relations as {@link #BATCH}, the foreign collections are not loaded: the query is
+     * executed on the first access of the collection.
+     */
+    LAZY
+
+}
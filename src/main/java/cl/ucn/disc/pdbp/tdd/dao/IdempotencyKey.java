@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * The key of a write already done (sent by the client): the retries with the same key return the same result.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@DatabaseTable(tableName = "idempotency_key")
+public final class IdempotencyKey {
+
+    /**
+     * The key sent by the client: Primary Key.
+     */
+    @DatabaseField(id = true)
+    private String id;
+
+    /**
+     * The name of the operation (the same key can't be used in other).
+     */
+    @DatabaseField(canBeNull = false)
+    private String operation;
+
+    /**
+     * The id of the result.
+     */
+    @DatabaseField(canBeNull = false)
+    private Long resultId;
+
+    /**
+     * The time of the write (epoch millis).
+     */
+    @DatabaseField(canBeNull = false, index = true)
+    private Long createdAt;
+
+    /**
+     * Empty contructor: Default visibility + empty body.
+     */
+    IdempotencyKey() {
+        // nothing here.
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param key       sent by the client.
+     * @param operation the name of the operation.
+     * @param resultId  the id of the result.
+     */
+    public IdempotencyKey(String key, String operation, Long resultId) {
+        this.id = key;
+        this.operation = operation;
+        this.resultId = resultId;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the key.
+     */
+    public String getKey() {
+        return this.id;
+    }
+
+    /**
+     * @return the name of the operation.
+     */
+    public String getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * @return the id of the result.
+     */
+    public Long getResultId() {
+        return this.resultId;
+    }
+
+    /**
+     * @return the time of the write (epoch millis).
+     */
+    public Long getCreatedAt() {
+        return this.createdAt;
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import java.util.Properties;
+
+/**
+ * The configuration of the {@link PooledConnectionSource}.
+ * <p>
+ * The minSize is opened at the start and the idle timeout never closes below it, but the connections closed by age or
+ * by a failed validation are opened again only on demand.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class PoolConfig {
+
+    /**
+     * The default configuration.
+     */
+    public static final PoolConfig DEFAULT = new PoolConfig(1, 10, 60 * 1000L, 5 * 60 * 1000L, 30 * 1000L,
+            5 * 1000L);
+
+    /**
+     * The connections to open at the start (warm-up) and to keep open by the idle timeout.
+     */
+    private final int minSize;
+
+    /**
+     * The max number of connections in use at the same time.
+     */
+    private final int maxSize;
+
+    /**
+     * The max time that a free connection is kept open without use (0: never closed by idle).
+     */
+    private final long idleTimeoutMillis;
+
+    /**
+     * The max age of a connection: closed when returned to the pool after this (never while in use).
+     */
+    private final long maxAgeMillis;
+
+    /**
+     * The time between the validation of the free connections (0: never).
+     */
+    private final long validationIntervalMillis;
+
+    /**
+     * The max time to wait for a connection.
+     */
+    private final long acquireTimeoutMillis;
+
+    /**
+     * The Constructor.
+     *
+     * @param minSize                  the connections to open at the start (warm-up) and to keep by idle.
+     * @param maxSize                  the max number of connections in use at the same time.
+     * @param idleTimeoutMillis        the max time that a free connection is kept without use (0: never).
+     * @param maxAgeMillis             the max age of a connection (closed when returned after this).
+     * @param validationIntervalMillis the time between the validation of the free connections (0: never).
+     * @param acquireTimeoutMillis     the max time to wait for a connection.
+     */
+    public PoolConfig(int minSize, int maxSize, long idleTimeoutMillis, long maxAgeMillis,
+                      long validationIntervalMillis, long acquireTimeoutMillis) {
+
+        // Sizes and times
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Wrong sizes: min " + minSize + ", max " + maxSize);
+        }
+        if (maxAgeMillis < 1 || idleTimeoutMillis < 0 || validationIntervalMillis < 0 || acquireTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Wrong times: the max age must be positive and the rest not negative");
+        }
+
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * The configuration from properties (ej. System.getProperties()), the missing ones from {@link #DEFAULT}:
+     * prefix + minSize, maxSize, idleTimeoutMillis, maxAgeMillis, validationIntervalMillis and acquireTimeoutMillis.
+     *
+     * @param properties to use.
+     * @param prefix     of the names (ej. "fivet.pool.").
+     * @return the PoolConfig.
+     */
+    public static PoolConfig fromProperties(Properties properties, String prefix) {
+
+        // Nullity test
+        if (properties == null || prefix == null) {
+            throw new IllegalArgumentException("Can't read the PoolConfig without properties or prefix");
+        }
+
+        return new PoolConfig(
+                Integer.parseInt(properties.getProperty(prefix + "minSize", String.valueOf(DEFAULT.minSize))),
+                Integer.parseInt(properties.getProperty(prefix + "maxSize", String.valueOf(DEFAULT.maxSize))),
+                Long.parseLong(properties.getProperty(prefix + "idleTimeoutMillis",
+                        String.valueOf(DEFAULT.idleTimeoutMillis))),
+                Long.parseLong(properties.getProperty(prefix + "maxAgeMillis",
+                        String.valueOf(DEFAULT.maxAgeMillis))),
+                Long.parseLong(properties.getProperty(prefix + "validationIntervalMillis",
+                        String.valueOf(DEFAULT.validationIntervalMillis))),
+                Long.parseLong(properties.getProperty(prefix + "acquireTimeoutMillis",
+                        String.valueOf(DEFAULT.acquireTimeoutMillis)))
+        );
+    }
+
+    /**
+     * @return the connections to open at the start (warm-up) and to keep by idle.
+     */
+    public int getMinSize() {
+        return this.minSize;
+    }
+
+    /**
+     * @return the max number of connections in use at the same time.
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return the max time that a free connection is kept without use (0: never closed by idle).
+     */
+    public long getIdleTimeoutMillis() {
+        return this.idleTimeoutMillis;
+    }
+
+    /**
+     * @return the max age of a connection (closed when returned after this).
+     */
+    public long getMaxAgeMillis() {
+        return this.maxAgeMillis;
+    }
+
+    /**
+     * @return the time between the validation of the free connections (0: never).
+     */
+    public long getValidationIntervalMillis() {
+        return this.validationIntervalMillis;
+    }
+
+    /**
+     * @return the max time to wait for a connection.
+     */
+    public long getAcquireTimeoutMillis() {
+        return this.acquireTimeoutMillis;
+    }
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "PoolConfig{minSize=" + this.minSize + ", maxSize=" + this.maxSize
+                + ", idleTimeoutMillis=" + this.idleTimeoutMillis + ", maxAgeMillis=" + this.maxAgeMillis
+                + ", validationIntervalMillis=" + this.validationIntervalMillis
+                + ", acquireTimeoutMillis=" + this.acquireTimeoutMillis + "}";
+    }
+
+}
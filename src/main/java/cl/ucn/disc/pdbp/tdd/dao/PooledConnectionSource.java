@@ -0,0 +1,282 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import cl.ucn.disc.pdbp.tdd.metrics.Histogram;
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@link JdbcPooledConnectionSource} with max size, timeout to get a connection and metrics.
+ * <p>
+ * The free connections are checked in background (not before each get): validated with
+ * {@link PoolConfig#getValidationIntervalMillis()} and closed after {@link PoolConfig#getIdleTimeoutMillis()} without
+ * use (keeping {@link PoolConfig#getMinSize()} open). The background pass runs every min(validation, idle timeout)
+ * (the ones not zero): with an idle timeout shorter than the validation interval, the free connections are also
+ * validated at that shorter interval. The connection saved in a transaction is counted once (the nested gets are
+ * free).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class PooledConnectionSource extends JdbcPooledConnectionSource {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PooledConnectionSource.class);
+
+    /**
+     * The configuration.
+     */
+    private final PoolConfig config;
+
+    /**
+     * The connections that can be used (maxSize).
+     */
+    private final Semaphore permits;
+
+    /**
+     * The number of connections got.
+     */
+    private final LongAdder checkouts = new LongAdder();
+
+    /**
+     * The number of gets that timed out.
+     */
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * The number of connections closed by idle.
+     */
+    private final LongAdder idleClosed = new LongAdder();
+
+    /**
+     * The wait times.
+     */
+    private final Histogram waits = new Histogram();
+
+    /**
+     * The Constructor.
+     *
+     * @param databaseUrl to use.
+     * @param config      of the pool.
+     * @throws SQLException if any problem.
+     */
+    public PooledConnectionSource(String databaseUrl, PoolConfig config) throws SQLException {
+        super(databaseUrl);
+
+        // Nullity test
+        if (config == null) {
+            throw new IllegalArgumentException("Can't create the pool without config");
+        }
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+
+        super.setMaxConnectionsFree(config.getMaxSize());
+        super.setMaxConnectionAgeMillis(config.getMaxAgeMillis());
+        super.setTestBeforeGet(false);
+
+        // The background check: the validation and the idle timeout (the shorter of both)
+        long validation = config.getValidationIntervalMillis();
+        long idle = config.getIdleTimeoutMillis();
+        long interval = validation == 0 ? idle : idle == 0 ? validation : Math.min(validation, idle);
+        if (interval > 0) {
+            super.setCheckConnectionsEveryMillis(interval);
+        }
+
+        // Warm-up
+        List<DatabaseConnection> connections = new ArrayList<>(config.getMinSize());
+        try {
+            for (int i = 0; i < config.getMinSize(); i++) {
+                connections.add(this.getReadWriteConnection(null));
+            }
+        } finally {
+            for (DatabaseConnection connection : connections) {
+                this.releaseConnection(connection);
+            }
+        }
+
+        log.debug("Pool of <{}> with {}.", databaseUrl, config);
+    }
+
+    /**
+     * Wait (at most {@link PoolConfig#getAcquireTimeoutMillis()}) for a free connection.
+     *
+     * @see JdbcPooledConnectionSource#getReadWriteConnection(String)
+     */
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+
+        // Inside a transaction: the same connection
+        if (this.getSavedConnection() != null) {
+            return super.getReadWriteConnection(tableName);
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!this.permits.tryAcquire(this.config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                this.timeouts.increment();
+                throw new SQLException("Timeout of " + this.config.getAcquireTimeoutMillis()
+                        + " ms waiting for a connection (max size: " + this.config.getMaxSize() + ")");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", ex);
+        }
+        this.waits.recordSince(start);
+
+        try {
+            DatabaseConnection connection = super.getReadWriteConnection(tableName);
+            this.checkouts.increment();
+            return connection;
+        } catch (SQLException | RuntimeException ex) {
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * @see JdbcPooledConnectionSource#releaseConnection(DatabaseConnection)
+     */
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+
+        // Inside a transaction: released at the end
+        if (this.isSavedConnection(connection)) {
+            super.releaseConnection(connection);
+            return;
+        }
+
+        try {
+            super.releaseConnection(connection);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * The check of a free connection (in background): false if idle (over the min size), validated if configured.
+     * The connections that fail are closed by the tester of the pool (with its lock).
+     *
+     * @see JdbcPooledConnectionSource#testConnection(ConnectionMetaData)
+     */
+    @Override
+    protected boolean testConnection(ConnectionMetaData connMetaData) {
+
+        long idle = this.config.getIdleTimeoutMillis();
+        if (idle > 0 && System.currentTimeMillis() - connMetaData.getLastUsed() > idle
+                && this.getCurrentConnectionsManaged() > this.config.getMinSize()) {
+            this.idleClosed.increment();
+            return false;
+        }
+        return this.config.getValidationIntervalMillis() == 0 || super.testConnection(connMetaData);
+    }
+
+    /**
+     * Health check: get a connection and run the ping statement of the database.
+     *
+     * @return true if the database answer.
+     */
+    public boolean ping() {
+        try {
+            DatabaseConnection connection = this.getReadWriteConnection(null);
+            try {
+                connection.queryForLong(this.getDatabaseType().getPingStatement());
+                return true;
+            } finally {
+                this.releaseConnection(connection);
+            }
+        } catch (SQLException ex) {
+            log.warn("Ping failed", ex);
+            return false;
+        }
+    }
+
+    /**
+     * @return the configuration.
+     */
+    public PoolConfig getConfig() {
+        return this.config;
+    }
+
+    /**
+     * @return the number of connections in use.
+     */
+    public int getActiveConnections() {
+        return this.config.getMaxSize() - this.permits.availablePermits();
+    }
+
+    /**
+     * @return the number of connections open and free.
+     */
+    public int getIdleConnections() {
+        return this.getCurrentConnectionsFree();
+    }
+
+    /**
+     * @return the number of threads waiting for a connection.
+     */
+    public int getWaitingThreads() {
+        return this.permits.getQueueLength();
+    }
+
+    /**
+     * @return the number of connections got (the rate: the change over time).
+     */
+    public long getCheckouts() {
+        return this.checkouts.sum();
+    }
+
+    /**
+     * @return the number of gets that timed out.
+     */
+    public long getTimeouts() {
+        return this.timeouts.sum();
+    }
+
+    /**
+     * @return the number of connections closed by idle.
+     */
+    public long getIdleClosed() {
+        return this.idleClosed.sum();
+    }
+
+    /**
+     * @return the wait times to get a connection.
+     */
+    public Histogram getWaits() {
+        return this.waits;
+    }
+
+}
@@ -26,7 +26,10 @@ package cl.ucn.disc.pdbp.tdd.dao;
 
 import com.j256.ormlite.stmt.QueryBuilder;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
 /**
  * Reposity Pattern.
@@ -41,6 +44,39 @@ public interface Repository<T, K> {
      */
     List<T> findAll();
 
+    /**
+     * @param fetch the way to load the relations.
+     * @return a List of T.
+     */
+    List<T> findAll(Fetch fetch);
+
+    /**
+     * Keyset pagination: the T with id greater than after, sorted by id.
+     *
+     * @param after the last id of the previous page (null for the first page).
+     * @param limit the size of the page.
+     * @param fetch the way to load the relations.
+     * @return the page of T.
+     */
+    List<T> findPage(K after, long limit, Fetch fetch);
+
+    /**
+     * All the T, one row at a time. The {@link Stream} need to be closed (try-with-resources).
+     *
+     * @return the Stream of T.
+     */
+    Stream<T> stream();
+
+    /**
+     * The T that match the criteria, one row at a time (the relations loaded in blocks with {@link Fetch#BATCH}).
+     * The {@link Stream} need to be closed (try-with-resources).
+     *
+     * @param fetch    the way to load the relations.
+     * @param criteria the where and order of the query.
+     * @return the Stream of T.
+     */
+    Stream<T> stream(Fetch fetch, Criteria<T, K> criteria);
+
     /**
      * @param key   to search.
      * @param value to search.
@@ -54,11 +90,30 @@ public interface Repository<T, K> {
      */
     T findById(K id);
 
+    /**
+     * @param ids to search.
+     * @return the List of T with the ids, in the same order of the ids (the missing ones are skipped).
+     */
+    List<T> findByIds(Collection<K> ids);
+
+    /**
+     * @param ids   to search.
+     * @param fetch the way to load the relations.
+     * @return the List of T with the ids, in the same order of the ids (the missing ones are skipped).
+     */
+    List<T> findByIds(Collection<K> ids, Fetch fetch);
+
     /**
      * @return the {@link QueryBuilder}.
      */
     QueryBuilder<T, K> getQuery();
 
+    /**
+     * @param t to use.
+     * @return the id of t.
+     */
+    K extractId(T t);
+
     /**
      * @param t to save.
      * @return true.
@@ -71,10 +126,66 @@ public interface Repository<T, K> {
      */
     boolean update(T t);
 
+    /**
+     * Insert or update by an unique key: if there is a T with the same value of key, t takes its id and is updated.
+     *
+     * @param t   to save.
+     * @param key the unique column.
+     * @return true if t was created, false if updated.
+     */
+    boolean upsert(T t, String key);
+
+    /**
+     * If there is a T with the same value of key, t takes its id (nothing is written).
+     *
+     * @param t   to resolve.
+     * @param key the unique column.
+     * @return true if found.
+     */
+    boolean assignId(T t, String key);
+
     /**
      * @param id to delete.
      * @return true.
      */
     boolean delete(K id);
 
+    /**
+     * Save in batches, each batch in one transaction.
+     *
+     * @param ts to save.
+     * @return the number of T saved.
+     */
+    int createAll(Collection<T> ts);
+
+    /**
+     * Update in batches, each batch in one transaction.
+     *
+     * @param ts to update.
+     * @return the number of T updated.
+     */
+    int updateAll(Collection<T> ts);
+
+    /**
+     * Delete in batches, each batch in one transaction.
+     *
+     * @param ids to delete.
+     * @return the number of T deleted.
+     */
+    int deleteAll(Collection<K> ids);
+
+    /**
+     * @param listener to notify on each write (after the commit).
+     */
+    void addListener(RepositoryListener<T, K> listener);
+
+    /**
+     * Execute the task in one transaction (the writes committed or rolled back together).
+     *
+     * @param task to execute.
+     * @param <R>  the type of the result.
+     * @return the result of the task.
+     */
+    <R> R inTransaction(Callable<R> task);
+
 }
@@ -0,0 +1,545 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.stmt.QueryBuilder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache (LRU + time to live) in front of other {@link Repository}.
+ * <p>
+ * - findById and findAll(key, value) of the unique keys are served from memory.
+ * - The writes go to the backend. The entries of the T are invalidated by a listener of the backend: after the commit,
+ * and also for the writes that don't use the cache.
+ * - The other methods go directly to the backend.
+ *
+ * @param <T> the type of model domain to use.
+ * @param <K> the type of id.
+ * @author Diego Urrutia-Astorga.
+ */
+@SuppressWarnings("DesignForExtension")
+public class RepositoryCached<T, K> implements Repository<T, K> {
+
+    /**
+     * The backend.
+     */
+    private final Repository<T, K> repository;
+
+    /**
+     * The max number of T in memory.
+     */
+    private final int maxSize;
+
+    /**
+     * The time to live of each entry (nanos).
+     */
+    private final long ttlNanos;
+
+    /**
+     * The unique keys (ej. rut) to cache in findAll(key, value).
+     */
+    private final Set<String> uniqueKeys;
+
+    /**
+     * The id -> T (in access order).
+     */
+    private final Map<K, CacheEntry<T>> entities;
+
+    /**
+     * The (key, value) -> id (in access order).
+     */
+    private final Map<List<Object>, K> secondary;
+
+    /**
+     * The id -> (key, value) of secondary (to invalidate without a scan).
+     */
+    private final Map<K, Set<List<Object>>> secondaryById = new HashMap<>();
+
+    /**
+     * The number of invalidations: a read of the backend older than one is not cached.
+     */
+    private long generation;
+
+    /**
+     * The hits.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The misses.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The evictions (by size or time).
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * The Constructor.
+     *
+     * @param repository the backend.
+     * @param maxSize    the max number of T in memory.
+     * @param ttl        time to live of each T.
+     * @param unit       of the ttl.
+     * @param uniqueKeys to cache in findAll(key, value).
+     */
+    public RepositoryCached(Repository<T, K> repository, int maxSize, long ttl, TimeUnit unit, String... uniqueKeys) {
+
+        // Nullity and size
+        if (repository == null || unit == null || maxSize < 1 || ttl < 1) {
+            throw new IllegalArgumentException("Can't create the cache without repository, size or ttl");
+        }
+
+        this.repository = repository;
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.uniqueKeys = new HashSet<>(Arrays.asList(uniqueKeys));
+
+        this.entities = new LinkedHashMap<K, CacheEntry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<T>> eldest) {
+                if (size() > RepositoryCached.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.secondary = new LinkedHashMap<List<Object>, K>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, K> eldest) {
+                if (size() > RepositoryCached.this.maxSize) {
+                    unlink(eldest.getValue(), eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        // The invalidation: after the commit of the backend
+        repository.addListener(new RepositoryListener<T, K>() {
+
+            @Override
+            public void onCreate(T t) {
+                // Nothing to invalidate: the not found are not cached
+            }
+
+            @Override
+            public void onUpdate(T t) {
+                invalidate(extractId(t));
+            }
+
+            @Override
+            public void onDelete(K id) {
+                invalidate(id);
+            }
+        });
+    }
+
+    /**
+     * @return a List of T.
+     */
+    @Override
+    public List<T> findAll() {
+        return repository.findAll();
+    }
+
+    /**
+     * @param fetch the way to load the relations.
+     * @return a List of T.
+     */
+    @Override
+    public List<T> findAll(Fetch fetch) {
+        return repository.findAll(fetch);
+    }
+
+    /**
+     * @param after the last id of the previous page (null for the first page).
+     * @param limit the size of the page.
+     * @param fetch the way to load the relations.
+     * @return the page of T.
+     */
+    @Override
+    public List<T> findPage(K after, long limit, Fetch fetch) {
+        return repository.findPage(after, limit, fetch);
+    }
+
+    /**
+     * @return the Stream of T.
+     */
+    @Override
+    public Stream<T> stream() {
+        return repository.stream();
+    }
+
+    /**
+     * @param fetch    the way to load the relations.
+     * @param criteria the where and order of the query.
+     * @return the Stream of T.
+     */
+    @Override
+    public Stream<T> stream(Fetch fetch, Criteria<T, K> criteria) {
+        return repository.stream(fetch, criteria);
+    }
+
+    /**
+     * @param key   to search.
+     * @param value to search.
+     * @return the List of T filtered by key.
+     */
+    @Override
+    public List<T> findAll(String key, Object value) {
+
+        // Not an unique key
+        if (!uniqueKeys.contains(key) || value == null) {
+            return repository.findAll(key, value);
+        }
+
+        List<Object> secondaryKey = Arrays.asList(key, value);
+        long before;
+        synchronized (this) {
+            before = generation;
+            K id = secondary.get(secondaryKey);
+            T t = id == null ? null : get(id);
+            if (t != null) {
+                hits.incrementAndGet();
+                return Collections.singletonList(t);
+            }
+        }
+
+        // Read-through (the not found are not cached)
+        misses.incrementAndGet();
+        List<T> list = repository.findAll(key, value);
+        if (list.size() == 1) {
+            T t = list.get(0);
+            K id = extractId(t);
+            if (id != null) {
+                synchronized (this) {
+                    if (before == generation) {
+                        put(id, t);
+                        K previous = secondary.put(secondaryKey, id);
+                        if (previous != null && !previous.equals(id)) {
+                            unlink(previous, secondaryKey);
+                        }
+                        secondaryById.computeIfAbsent(id, k -> new HashSet<>()).add(secondaryKey);
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @param id to search.
+     * @return the T with id.
+     */
+    @Override
+    public T findById(K id) {
+
+        // Nullity test
+        if (id == null) {
+            throw new IllegalArgumentException("Can't find nulls");
+        }
+
+        long before;
+        synchronized (this) {
+            before = generation;
+            T cached = get(id);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        // Read-through
+        misses.incrementAndGet();
+        T t = repository.findById(id);
+        if (t != null) {
+            synchronized (this) {
+                if (before == generation) {
+                    put(id, t);
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @param ids to search.
+     * @return the List of T with the ids, in the same order of the ids (the missing ones are skipped).
+     */
+    @Override
+    public List<T> findByIds(Collection<K> ids) {
+        return repository.findByIds(ids);
+    }
+
+    /**
+     * @param ids   to search.
+     * @param fetch the way to load the relations.
+     * @return the List of T with the ids, in the same order of the ids (the missing ones are skipped).
+     */
+    @Override
+    public List<T> findByIds(Collection<K> ids, Fetch fetch) {
+        return repository.findByIds(ids, fetch);
+    }
+
+    /**
+     * @return the {@link QueryBuilder}.
+     */
+    @Override
+    public QueryBuilder<T, K> getQuery() {
+        return repository.getQuery();
+    }
+
+    /**
+     * @param t to use.
+     * @return the id of t.
+     */
+    @Override
+    public K extractId(T t) {
+        return repository.extractId(t);
+    }
+
+    /**
+     * @param t to save.
+     * @return true.
+     */
+    @Override
+    public boolean create(T t) {
+        // Nothing to invalidate: the not found are not cached
+        return repository.create(t);
+    }
+
+    /**
+     * @param t to upate.
+     * @return true.
+     */
+    @Override
+    public boolean update(T t) {
+        return repository.update(t);
+    }
+
+    /**
+     * @param t   to save.
+     * @param key the unique column.
+     * @return true if t was created, false if updated.
+     */
+    @Override
+    public boolean upsert(T t, String key) {
+        return repository.upsert(t, key);
+    }
+
+    /**
+     * @param t   to resolve.
+     * @param key the unique column.
+     * @return true if found.
+     */
+    @Override
+    public boolean assignId(T t, String key) {
+        return repository.assignId(t, key);
+    }
+
+    /**
+     * @param id to delete.
+     * @return true.
+     */
+    @Override
+    public boolean delete(K id) {
+        return repository.delete(id);
+    }
+
+    /**
+     * @param ts to save.
+     * @return the number of T saved.
+     */
+    @Override
+    public int createAll(Collection<T> ts) {
+        return repository.createAll(ts);
+    }
+
+    /**
+     * @param ts to update.
+     * @return the number of T updated.
+     */
+    @Override
+    public int updateAll(Collection<T> ts) {
+        return repository.updateAll(ts);
+    }
+
+    /**
+     * @param ids to delete.
+     * @return the number of T deleted.
+     */
+    @Override
+    public int deleteAll(Collection<K> ids) {
+        return repository.deleteAll(ids);
+    }
+
+    /**
+     * @param listener to notify on each write (in the backend).
+     */
+    @Override
+    public void addListener(RepositoryListener<T, K> listener) {
+        repository.addListener(listener);
+    }
+
+    /**
+     * @param task to execute.
+     * @param <R>  the type of the result.
+     * @return the result of the task.
+     */
+    @Override
+    public <R> R inTransaction(Callable<R> task) {
+        return repository.inTransaction(task);
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    public synchronized void clear() {
+        generation++;
+        entities.clear();
+        secondary.clear();
+        secondaryById.clear();
+    }
+
+    /**
+     * @return the number of T in memory.
+     */
+    public synchronized int size() {
+        return entities.size();
+    }
+
+    /**
+     * @return the number of reads served from memory.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of reads served from the backend.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of T removed by size or time.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @param id of the T to remove from memory (and their unique keys).
+     */
+    private synchronized void invalidate(K id) {
+        if (id == null) {
+            return;
+        }
+        generation++;
+        entities.remove(id);
+        Set<List<Object>> keys = secondaryById.remove(id);
+        if (keys != null) {
+            keys.forEach(secondary::remove);
+        }
+    }
+
+    /**
+     * @param id           of the T.
+     * @param secondaryKey of the T evicted (need the lock).
+     */
+    private void unlink(K id, List<Object> secondaryKey) {
+        Set<List<Object>> keys = secondaryById.get(id);
+        if (keys != null && keys.remove(secondaryKey) && keys.isEmpty()) {
+            secondaryById.remove(id);
+        }
+    }
+
+    /**
+     * @param id to get (need the lock).
+     * @return the T not expired or null.
+     */
+    private T get(K id) {
+        CacheEntry<T> entry = entities.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.created > ttlNanos) {
+            entities.remove(id);
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * @param id to put (need the lock).
+     * @param t  to put.
+     */
+    private void put(K id, T t) {
+        entities.put(id, new CacheEntry<>(t, System.nanoTime()));
+    }
+
+    /**
+     * The value + the time of creation.
+     */
+    private static final class CacheEntry<T> {
+
+        /**
+         * The T.
+         */
+        private final T value;
+
+        /**
+         * The time of creation (nanos).
+         */
+        private final long created;
+
+        /**
+         * The Constructor.
+         */
+        private CacheEntry(T value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+}
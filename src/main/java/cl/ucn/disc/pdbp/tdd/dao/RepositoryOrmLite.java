@@ -24,13 +24,48 @@
 
 package cl.ucn.disc.pdbp.tdd.dao;
 
+import cl.ucn.disc.pdbp.tdd.metrics.Histogram;
+import cl.ucn.disc.pdbp.tdd.metrics.MetricsRegistry;
+import cl.ucn.disc.pdbp.tdd.metrics.RequestTiming;
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.CloseableIterator;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.stmt.ArgumentHolder;
+import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.StatementBuilder;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The {@link Repository} implementation with ORMLite.
@@ -41,11 +76,62 @@ import java.util.List;
 @SuppressWarnings("DesignForExtension")
 public class RepositoryOrmLite<T, K> implements Repository<T, K> {
 
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(RepositoryOrmLite.class);
+
+    /**
+     * The default number of T by transaction in createAll, updateAll and deleteAll.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     /**
      * The Generic Dao.
      */
     private final Dao<T, K> theDao;
 
+    /**
+     * The info of the table (columns, id).
+     */
+    private final TableInfo<T, K> tableInfo;
+
+    /**
+     * The loader of relations for {@link Fetch#BATCH}.
+     */
+    private final BatchFetcher fetcher;
+
+    /**
+     * The class of T.
+     */
+    private final Class<T> theClazz;
+
+    /**
+     * The number of T by transaction in createAll, updateAll and deleteAll.
+     */
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * The notifications of the listeners waiting the commit of the transaction of the thread (null outside of
+     * {@link #callInTransaction(ConnectionSource, Callable)}).
+     */
+    private static final ThreadLocal<List<Runnable>> PENDING_NOTIFICATIONS = new ThreadLocal<>();
+
+    /**
+     * The listeners of the writes.
+     */
+    private final List<RepositoryListener<T, K>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The time of each method (repository_call_seconds).
+     */
+    private final ConcurrentMap<String, Histogram> timers = new ConcurrentHashMap<>();
+
+    /**
+     * The precompiled queries, by name.
+     */
+    private final ConcurrentMap<String, NamedQuery> queries = new ConcurrentHashMap<>();
+
     /**
      * The Constructor.
      *
@@ -61,6 +147,9 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
 
         try {
             theDao = DaoManager.createDao(connectionSource, theClazz);
+            tableInfo = ((BaseDaoImpl<T, K>) theDao).getTableInfo();
+            fetcher = new BatchFetcher(connectionSource);
+            this.theClazz = theClazz;
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
         }
@@ -71,8 +160,131 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
      */
     @Override
     public List<T> findAll() {
+        long start = System.nanoTime();
         try {
             return theDao.queryForAll();
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAll", start);
+        }
+    }
+
+    /**
+     * @param fetch the way to load the relations.
+     * @return a List of T.
+     */
+    @Override
+    public List<T> findAll(Fetch fetch) {
+
+        if (fetch == Fetch.DEFAULT) {
+            return this.findAll();
+        }
+
+        long start = System.nanoTime();
+        try {
+            List<T> list = fetcher.<T, K>shallowDao(theClazz).queryForAll();
+            fetcher.fetch(theClazz, list, fetch);
+            return list;
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAll", start);
+        }
+    }
+
+    /**
+     * Keyset pagination: the T with id greater than after, sorted by id.
+     *
+     * @param after the last id of the previous page (null for the first page).
+     * @param limit the size of the page.
+     * @param fetch the way to load the relations.
+     * @return the page of T.
+     */
+    @Override
+    public List<T> findPage(K after, long limit, Fetch fetch) {
+
+        // Nullity and size
+        if (fetch == null || limit < 1) {
+            throw new IllegalArgumentException("Can't find a page without fetch or limit");
+        }
+
+        String idColumn = tableInfo.getIdField().getColumnName();
+
+        long start = System.nanoTime();
+        try {
+            Dao<T, K> dao = fetch == Fetch.DEFAULT ? theDao : fetcher.shallowDao(theClazz);
+            QueryBuilder<T, K> query = dao.queryBuilder()
+                    .orderBy(idColumn, true)
+                    .limit(limit);
+            if (after != null) {
+                query.where().gt(idColumn, after);
+            }
+
+            List<T> list = query.query();
+            if (fetch != Fetch.DEFAULT) {
+                fetcher.fetch(theClazz, list, fetch);
+            }
+            return list;
+
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findPage", start);
+        }
+    }
+
+    /**
+     * All the T, one row at a time. The {@link Stream} need to be closed (try-with-resources).
+     *
+     * @return the Stream of T.
+     */
+    @Override
+    public Stream<T> stream() {
+        long start = System.nanoTime();
+        CloseableIterator<T> iterator = theDao.iterator();
+        TimedIterator rows = new TimedIterator(iterator, System.nanoTime() - start);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    iterator.closeQuietly();
+                    rows.record("stream");
+                });
+    }
+
+    /**
+     * The T that match the criteria, one row at a time (the relations loaded in blocks with {@link Fetch#BATCH}).
+     * The {@link Stream} need to be closed (try-with-resources).
+     *
+     * @param fetch    the way to load the relations.
+     * @param criteria the where and order of the query.
+     * @return the Stream of T.
+     */
+    @Override
+    public Stream<T> stream(Fetch fetch, Criteria<T, K> criteria) {
+
+        // Nullity test
+        if (fetch == null || criteria == null) {
+            throw new IllegalArgumentException("Can't stream without fetch or criteria");
+        }
+
+        long start = System.nanoTime();
+        try {
+            Dao<T, K> dao = fetch == Fetch.DEFAULT ? theDao : fetcher.shallowDao(theClazz);
+            QueryBuilder<T, K> query = dao.queryBuilder();
+            criteria.apply(query);
+            CloseableIterator<T> iterator = dao.iterator(query.prepare());
+
+            // The time in the database: the query and each hasNext / next (not the consumer)
+            TimedIterator rows = new TimedIterator(fetch == Fetch.DEFAULT ? iterator
+                    : new BatchIterator(iterator, fetch), System.nanoTime() - start);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(() -> {
+                        iterator.closeQuietly();
+                        rows.record("stream");
+                    });
+
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
         }
@@ -85,13 +297,127 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
      */
     @Override
     public List<T> findAll(String key, Object value) {
+
+        // Nullity test
+        if (key == null) {
+            throw new IllegalArgumentException("Can't find without the key");
+        }
+
+        // WHERE key = ? (compiled once by key)
+        NamedQuery query = this.queries.get("findAllBy." + key);
+        if (query == null) {
+            query = this.queries.computeIfAbsent("findAllBy." + key,
+                    name -> new NamedQuery(Fetch.DEFAULT, q -> q.where().eq(key, new SelectArg())));
+        }
+
+        long start = System.nanoTime();
+        try {
+            return query.query(value);
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAllBy", start);
+        }
+    }
+
+    /**
+     * Compile a query to execute many times by name (without building the SQL again). The values of the query are
+     * {@link SelectArg} created inside the criteria (ej. {@code where().eq("rut", new SelectArg())}), bound in the
+     * same order by {@link #query(String, Object...)}, {@link #countOf(String, Object...)} and
+     * {@link #queryRaw(String, Object...)}. The limit and offset are part of the SQL (not arguments).
+     *
+     * @param name     of the query.
+     * @param criteria the where and order of the query.
+     */
+    public void prepare(String name, Criteria<T, K> criteria) {
+        this.prepare(name, Fetch.DEFAULT, criteria);
+    }
+
+    /**
+     * Compile a query to execute many times by name, see {@link #prepare(String, Criteria)}.
+     *
+     * @param name     of the query.
+     * @param fetch    the way to load the relations in {@link #query(String, Object...)}.
+     * @param criteria the where and order of the query.
+     */
+    public void prepare(String name, Fetch fetch, Criteria<T, K> criteria) {
+
+        // Nullity test
+        if (name == null || fetch == null || criteria == null) {
+            throw new IllegalArgumentException("Can't prepare without name, fetch or criteria");
+        }
+
+        if (this.queries.putIfAbsent(name, new NamedQuery(fetch, criteria)) != null) {
+            throw new IllegalArgumentException("The query " + name + " was already prepared");
+        }
+        log.debug("Query {} of {} prepared.", name, theClazz.getSimpleName());
+    }
+
+    /**
+     * @param name of the prepared query.
+     * @param args the values of the {@link SelectArg}, in order.
+     * @return the List of T.
+     */
+    public List<T> query(String name, Object... args) {
+        NamedQuery query = this.named(name);
+        long start = System.nanoTime();
+        try {
+            return query.query(args);
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record(name, start);
+        }
+    }
+
+    /**
+     * @param name of the prepared query (with {@link QueryBuilder#setCountOf(boolean)}).
+     * @param args the values of the {@link SelectArg}, in order.
+     * @return the count.
+     */
+    public long countOf(String name, Object... args) {
+        NamedQuery query = this.named(name);
+        long start = System.nanoTime();
         try {
-            return theDao.queryForEq(key, value);
+            return query.countOf(args);
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
+        } finally {
+            this.record(name, start);
         }
     }
 
+    /**
+     * Execute the prepared query returning the columns as String (ej. only the ids).
+     *
+     * @param name of the prepared query.
+     * @param args the values of the {@link SelectArg}, in order.
+     * @return the rows, need to be closed.
+     */
+    public GenericRawResults<String[]> queryRaw(String name, Object... args) {
+        NamedQuery query = this.named(name);
+        long start = System.nanoTime();
+        try {
+            return theDao.queryRaw(query.sql, query.rawArgs(args));
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record(name, start);
+        }
+    }
+
+    /**
+     * @param name of the query.
+     * @return the prepared query.
+     */
+    private NamedQuery named(String name) {
+        NamedQuery query = name == null ? null : this.queries.get(name);
+        if (query == null) {
+            throw new IllegalArgumentException("The query " + name + " wasn't prepared");
+        }
+        return query;
+    }
+
     /**
      * @return the {@link QueryBuilder}.
      */
@@ -99,6 +425,76 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
         return theDao.queryBuilder();
     }
 
+    /**
+     * @param t to use.
+     * @return the id of t.
+     */
+    @Override
+    public K extractId(T t) {
+
+        // Nullity test
+        if (t == null) {
+            throw new IllegalArgumentException("Can't extract the id of null");
+        }
+
+        try {
+            return theDao.extractId(t);
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        }
+    }
+
+    /**
+     * A T with only the id (without a query), to use as the foreign of other T.
+     *
+     * @param id of the T.
+     * @return the T.
+     */
+    public T reference(K id) {
+
+        // Nullity test
+        if (id == null) {
+            throw new IllegalArgumentException("Can't reference a null id");
+        }
+
+        try {
+            T t = tableInfo.createObject();
+            tableInfo.getIdField().assignField(t, id, false, null);
+            return t;
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        }
+    }
+
+    /**
+     * Execute the query returning the columns as String (binding the {@link com.j256.ormlite.stmt.SelectArg}).
+     *
+     * @param query to execute.
+     * @return the rows, need to be closed.
+     */
+    public GenericRawResults<String[]> queryRaw(QueryBuilder<T, K> query) {
+        try {
+            StatementBuilder.StatementInfo info = query.prepareStatementInfo();
+            return theDao.queryRaw(info.getStatement(), toStrings(info.getArgList()));
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        }
+    }
+
+    /**
+     * @param holders the arguments of a statement.
+     * @return the values as String.
+     * @throws SQLException if any problem.
+     */
+    private static String[] toStrings(List<ArgumentHolder> holders) throws SQLException {
+        String[] values = new String[holders.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object value = holders.get(i).getSqlArgValue();
+            values[i] = value == null ? null : value.toString();
+        }
+        return values;
+    }
+
     /**
      * @param id to search.
      * @return the T with id.
@@ -111,13 +507,83 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
             throw new IllegalArgumentException("Can't find nulls");
         }
 
+        long start = System.nanoTime();
         try {
             return theDao.queryForId(id);
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
+        } finally {
+            this.record("findById", start);
+        }
+    }
+
+    /**
+     * @param ids to search.
+     * @return the List of T with the ids, in the same order of the ids (the missing ones are skipped).
+     */
+    @Override
+    public List<T> findByIds(Collection<K> ids) {
+        return this.findByIds(ids, Fetch.DEFAULT);
+    }
+
+    /**
+     * @param ids   to search.
+     * @param fetch the way to load the relations.
+     * @return the List of T with the ids, in the same order of the ids (the missing ones are skipped).
+     */
+    @Override
+    public List<T> findByIds(Collection<K> ids, Fetch fetch) {
+
+        // Nullity test
+        if (ids == null || fetch == null) {
+            throw new IllegalArgumentException("Can't find nulls");
+        }
+
+        long start = System.nanoTime();
+        try {
+
+            // The rows (with or without relations)
+            Dao<T, K> dao = fetch == Fetch.DEFAULT ? theDao : fetcher.shallowDao(theClazz);
+            List<T> rows = BatchFetcher.queryIn(dao, tableInfo.getIdField().getColumnName(), ids);
+            if (fetch != Fetch.DEFAULT) {
+                fetcher.fetch(theClazz, rows, fetch);
+            }
+
+            // Same order of the ids
+            Map<K, T> found = new HashMap<>(rows.size());
+            for (T t : rows) {
+                found.put(theDao.extractId(t), t);
+            }
+            List<T> list = new ArrayList<>(found.size());
+            for (K key : new LinkedHashSet<>(ids)) {
+                T t = found.get(key);
+                if (t != null) {
+                    list.add(t);
+                }
+            }
+            return list;
+
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findByIds", start);
         }
     }
 
+    /**
+     * @param listener to notify on each write.
+     */
+    @Override
+    public void addListener(RepositoryListener<T, K> listener) {
+
+        // Nullity
+        if (listener == null) {
+            throw new IllegalArgumentException("Can't add a null listener");
+        }
+
+        listeners.add(listener);
+    }
+
     /**
      * @param t to save.
      * @return true.
@@ -130,10 +596,17 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
             throw new IllegalArgumentException("Can't create a null");
         }
 
+        long start = System.nanoTime();
         try {
-            return theDao.create(t) == 1;
+            if (theDao.create(t) != 1) {
+                return false;
+            }
+            notify(() -> listeners.forEach(listener -> listener.onCreate(t)));
+            return true;
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
+        } finally {
+            this.record("create", start);
         }
     }
 
@@ -149,8 +622,84 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
             throw new IllegalArgumentException("Can't create a null");
         }
 
+        long start = System.nanoTime();
         try {
-            return theDao.update(t) == 1;
+            if (theDao.update(t) != 1) {
+                return false;
+            }
+            notify(() -> listeners.forEach(listener -> listener.onUpdate(t)));
+            return true;
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("update", start);
+        }
+    }
+
+    /**
+     * @param t   to save.
+     * @param key the unique column.
+     * @return true if t was created, false if updated.
+     */
+    @Override
+    public boolean upsert(T t, String key) {
+
+        // Nullity
+        if (t == null || key == null) {
+            throw new IllegalArgumentException("Can't upsert a null or without the key");
+        }
+
+        if (!this.assignId(t, key, "upsert")) {
+            return this.create(t);
+        }
+        this.update(t);
+        return false;
+    }
+
+    /**
+     * @param t   to resolve.
+     * @param key the unique column.
+     * @return true if found.
+     */
+    @Override
+    public boolean assignId(T t, String key) {
+
+        // Nullity
+        if (t == null || key == null) {
+            throw new IllegalArgumentException("Can't resolve a null or without the key");
+        }
+
+        return this.assignId(t, key, "assignId");
+    }
+
+    /**
+     * @param t         to resolve.
+     * @param key       the unique column.
+     * @param operation to record.
+     * @return true if there is a T with the same key (t takes its id).
+     */
+    private boolean assignId(T t, String key, String operation) {
+
+        try {
+            // The id of the T with the same key (only the id)
+            Object value = tableInfo.getFieldTypeByColumnName(key).extractJavaFieldValue(t);
+            long start = System.nanoTime();
+            T found;
+            try {
+                found = theDao.queryBuilder()
+                        .selectColumns(tableInfo.getIdField().getColumnName())
+                        .where().eq(key, new SelectArg(value))
+                        .queryForFirst();
+            } finally {
+                this.record(operation, start);
+            }
+
+            if (found == null) {
+                return false;
+            }
+            tableInfo.getIdField().assignField(t, this.extractId(found), false, null);
+            return true;
+
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
         }
@@ -168,10 +717,481 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
             throw new IllegalArgumentException("Can't create a null");
         }
 
+        long start = System.nanoTime();
         try {
-            return theDao.deleteById(id) == 1;
+            if (theDao.deleteById(id) != 1) {
+                return false;
+            }
+            notify(() -> listeners.forEach(listener -> listener.onDelete(id)));
+            return true;
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
+        } finally {
+            this.record("delete", start);
+        }
+    }
+
+    /**
+     * Execute the task in one transaction: all the writes of the repositories of the connectionSource in the thread
+     * are committed or rolled back together. The listeners are notified after the commit (never on rollback). A
+     * task inside of other is part of the same transaction.
+     *
+     * @param connectionSource to use.
+     * @param task             to execute.
+     * @param <R>              the type of the result.
+     * @return the result of the task.
+     */
+    public static <R> R callInTransaction(ConnectionSource connectionSource, Callable<R> task) {
+
+        // Nullity test
+        if (connectionSource == null || task == null) {
+            throw new IllegalArgumentException("Can't execute a transaction without the connectionSource or task");
+        }
+
+        // Nested: the same transaction
+        if (PENDING_NOTIFICATIONS.get() != null) {
+            try {
+                return task.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        List<Runnable> pending = new ArrayList<>();
+        PENDING_NOTIFICATIONS.set(pending);
+        R result;
+        try {
+            result = TransactionManager.callInTransaction(connectionSource, task);
+        } catch (SQLException ex) {
+            // The exceptions of the task, as they were
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex);
+        } finally {
+            PENDING_NOTIFICATIONS.remove();
+        }
+
+        // After the commit
+        pending.forEach(Runnable::run);
+        return result;
+    }
+
+    /**
+     * @param task to execute.
+     * @param <R>  the type of the result.
+     * @return the result of the task.
+     * @see #callInTransaction(ConnectionSource, Callable)
+     */
+    @Override
+    public <R> R inTransaction(Callable<R> task) {
+        return callInTransaction(theDao.getConnectionSource(), task);
+    }
+
+    /**
+     * @param notification of the listeners: now, or after the commit of the transaction of the thread.
+     */
+    private static void notify(Runnable notification) {
+        List<Runnable> pending = PENDING_NOTIFICATIONS.get();
+        if (pending == null) {
+            notification.run();
+        } else {
+            pending.add(notification);
+        }
+    }
+
+    /**
+     * @param batchSize the number of T by transaction in createAll, updateAll and deleteAll.
+     */
+    public void setBatchSize(int batchSize) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size need to be greater than zero");
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param ts to save.
+     * @return the number of T saved.
+     */
+    @Override
+    public int createAll(Collection<T> ts) {
+        return this.inBatches("create", ts, t -> theDao.create(t), t -> listeners.forEach(l -> l.onCreate(t)));
+    }
+
+    /**
+     * @param ts to update.
+     * @return the number of T updated.
+     */
+    @Override
+    public int updateAll(Collection<T> ts) {
+        return this.inBatches("update", ts, t -> theDao.update(t), t -> listeners.forEach(l -> l.onUpdate(t)));
+    }
+
+    /**
+     * @param ids to delete.
+     * @return the number of T deleted.
+     */
+    @Override
+    public int deleteAll(Collection<K> ids) {
+        return this.inBatches("delete", ids, id -> theDao.deleteById(id), id -> listeners.forEach(l -> l.onDelete(id)));
+    }
+
+    /**
+     * Execute the task for each element, batchSize elements by transaction. The listeners are notified after the
+     * commit of each batch.
+     *
+     * @param name     of the task (to log).
+     * @param elements to use.
+     * @param task     to execute, return the number of rows changed.
+     * @param notify   the listeners.
+     * @param <E>      the type of element.
+     * @return the number of rows changed.
+     */
+    private <E> int inBatches(String name, Collection<E> elements, BatchTask<E> task, Consumer<E> notify) {
+
+        // Nullity
+        if (elements == null || elements.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Can't " + name + " a null");
+        }
+
+        List<E> list = new ArrayList<>(elements);
+        int total = 0;
+        for (int from = 0; from < list.size(); from += batchSize) {
+
+            List<E> batch = list.subList(from, Math.min(from + batchSize, list.size()));
+            long start = System.nanoTime();
+
+            // One transaction (all or nothing), the listeners after the commit
+            List<E> changed = new ArrayList<>(batch.size());
+            try {
+                callInTransaction(theDao.getConnectionSource(), () -> {
+                    for (E element : batch) {
+                        if (task.execute(element) == 1) {
+                            changed.add(element);
+                        }
+                    }
+                    notify(() -> changed.forEach(notify));
+                    return null;
+                });
+            } finally {
+                this.record(name + "All", start);
+            }
+            total += changed.size();
+
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            log.debug("Batch {} of {} {}: {} rows in {} ms ({} rows/s).", name, batch.size(),
+                    theClazz.getSimpleName(), changed.size(), millis, changed.size() * 1000L / millis);
+        }
+        return total;
+    }
+
+    /**
+     * Record the time of the method (metric repository_call_seconds and the db time of the request).
+     *
+     * @param method of the repository.
+     * @param start  the {@link System#nanoTime()} at the start.
+     */
+    private void record(String method, long start) {
+        long nanos = System.nanoTime() - start;
+        this.timer(method).record(nanos);
+        RequestTiming.addDb(nanos);
+    }
+
+    /**
+     * @param method of the repository.
+     * @return the Histogram of the method.
+     */
+    private Histogram timer(String method) {
+        Histogram timer = this.timers.get(method);
+        if (timer == null) {
+            timer = this.timers.computeIfAbsent(method, key -> MetricsRegistry.getDefault().histogram(
+                    "repository_call_seconds", "The time of the calls to the repositories.",
+                    "repository", theClazz.getSimpleName(), "method", key));
+        }
+        return timer;
+    }
+
+    /**
+     * A write over the dao.
+     *
+     * @param <E> the type of element.
+     */
+    @FunctionalInterface
+    private interface BatchTask<E> {
+
+        /**
+         * @param element to write.
+         * @return the number of rows changed.
+         * @throws SQLException if any problem.
+         */
+        int execute(E element) throws SQLException;
+    }
+
+    /**
+     * A query compiled once: the SQL and the {@link PreparedQuery} (one by thread at a time, the values of the
+     * {@link SelectArg} are in the PreparedQuery).
+     */
+    private final class NamedQuery {
+
+        /**
+         * The way to load the relations.
+         */
+        private final Fetch fetch;
+
+        /**
+         * The where and order of the query.
+         */
+        private final Criteria<T, K> criteria;
+
+        /**
+         * The SQL.
+         */
+        private final String sql;
+
+        /**
+         * The number of arguments.
+         */
+        private final int argCount;
+
+        /**
+         * The compiled queries not in use.
+         */
+        private final Queue<PreparedQuery<T>> idle = new ConcurrentLinkedQueue<>();
+
+        /**
+         * @param fetch    the way to load the relations.
+         * @param criteria the where and order of the query.
+         */
+        private NamedQuery(Fetch fetch, Criteria<T, K> criteria) {
+            this.fetch = fetch;
+            this.criteria = criteria;
+            try {
+                QueryBuilder<T, K> query = this.builder();
+                StatementBuilder.StatementInfo info = query.prepareStatementInfo();
+                this.sql = info.getStatement();
+                this.argCount = info.getArgList().size();
+                this.idle.offer(query.prepare());
+            } catch (SQLException throwables) {
+                throw new RuntimeException(throwables);
+            }
+        }
+
+        /**
+         * @return the dao of the query.
+         */
+        private Dao<T, K> dao() {
+            return fetch == Fetch.DEFAULT ? theDao : fetcher.shallowDao(theClazz);
+        }
+
+        /**
+         * @return a new QueryBuilder with the criteria.
+         * @throws SQLException if any problem.
+         */
+        private QueryBuilder<T, K> builder() throws SQLException {
+            QueryBuilder<T, K> query = this.dao().queryBuilder();
+            this.criteria.apply(query);
+            return query;
+        }
+
+        /**
+         * @param args the values of the arguments.
+         * @return the List of T.
+         * @throws SQLException if any problem.
+         */
+        private List<T> query(Object... args) throws SQLException {
+            PreparedQuery<T> query = this.borrow(args);
+            List<T> list;
+            try {
+                list = this.dao().query(query);
+            } finally {
+                this.idle.offer(query);
+            }
+            if (fetch != Fetch.DEFAULT) {
+                fetcher.fetch(theClazz, list, fetch);
+            }
+            return list;
+        }
+
+        /**
+         * @param args the values of the arguments.
+         * @return the count.
+         * @throws SQLException if any problem.
+         */
+        private long countOf(Object... args) throws SQLException {
+            PreparedQuery<T> query = this.borrow(args);
+            try {
+                return this.dao().countOf(query);
+            } finally {
+                this.idle.offer(query);
+            }
+        }
+
+        /**
+         * @param args the values of the arguments.
+         * @return a PreparedQuery not in use (compiled if there is no one) with the values.
+         * @throws SQLException if any problem.
+         */
+        private PreparedQuery<T> borrow(Object... args) throws SQLException {
+            this.check(args);
+            PreparedQuery<T> query = this.idle.poll();
+            if (query == null) {
+                query = this.builder().prepare();
+            }
+            for (int i = 0; i < args.length; i++) {
+                query.setArgumentHolderValue(i, args[i]);
+            }
+            return query;
+        }
+
+        /**
+         * @param args the values of the arguments.
+         * @return the values as String.
+         */
+        private String[] rawArgs(Object... args) {
+            this.check(args);
+            String[] values = new String[args.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = args[i] == null ? null : args[i].toString();
+            }
+            return values;
+        }
+
+        /**
+         * @param args the values of the arguments.
+         */
+        private void check(Object... args) {
+            if (args == null || args.length != this.argCount) {
+                throw new IllegalArgumentException("The query need " + this.argCount + " arguments");
+            }
+        }
+    }
+
+    /**
+     * The rows of the iterator in blocks, with the relations of each block loaded by the {@link BatchFetcher}.
+     */
+    private final class BatchIterator implements Iterator<T> {
+
+        /**
+         * The rows without relations.
+         */
+        private final Iterator<T> rows;
+
+        /**
+         * The current block.
+         */
+        private Iterator<T> block = Collections.emptyIterator();
+
+        /**
+         * The way to load the relations.
+         */
+        private final Fetch fetch;
+
+        /**
+         * @param rows  the rows without relations.
+         * @param fetch the way to load the relations.
+         */
+        private BatchIterator(Iterator<T> rows, Fetch fetch) {
+            this.rows = rows;
+            this.fetch = fetch;
+        }
+
+        /**
+         * @see Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            if (!block.hasNext() && rows.hasNext()) {
+                List<T> list = new ArrayList<>(BatchFetcher.MAX_IDS_PER_QUERY);
+                while (rows.hasNext() && list.size() < BatchFetcher.MAX_IDS_PER_QUERY) {
+                    list.add(rows.next());
+                }
+                fetcher.fetch(theClazz, list, fetch);
+                block = list.iterator();
+            }
+            return block.hasNext();
+        }
+
+        /**
+         * @see Iterator#next()
+         */
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return block.next();
+        }
+    }
+
+    /**
+     * The {@link Iterator} that count the time in hasNext and next (the time in the database of a stream).
+     */
+    private final class TimedIterator implements Iterator<T> {
+
+        /**
+         * The rows.
+         */
+        private final Iterator<T> rows;
+
+        /**
+         * The time in the database.
+         */
+        private long nanos;
+
+        /**
+         * @param rows  to iterate.
+         * @param nanos the time of the query.
+         */
+        private TimedIterator(Iterator<T> rows, long nanos) {
+            this.rows = rows;
+            this.nanos = nanos;
+            RequestTiming.addDb(nanos);
+        }
+
+        /**
+         * @see Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            try {
+                return rows.hasNext();
+            } finally {
+                this.add(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * @see Iterator#next()
+         */
+        @Override
+        public T next() {
+            long start = System.nanoTime();
+            try {
+                return rows.next();
+            } finally {
+                this.add(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * @param elapsed in the database.
+         */
+        private void add(long elapsed) {
+            nanos += elapsed;
+            RequestTiming.addDb(elapsed);
+        }
+
+        /**
+         * @param method of the repository.
+         */
+        private void record(String method) {
+            timer(method).record(nanos);
         }
     }
 
@@ -0,0 +1,373 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@link ConnectionSource} that send the reads (the read-only connections of ORMLite: queries, iterators, counts)
+ * to the replicas, round-robin, and the writes and transactions to the primary.
+ * <p>
+ * Read-your-writes: after a write, the reads of the same {@link Session} go to the primary during the sticky time (the
+ * time that the replicas need to receive the write). The Session is the one of the thread, or the one of the caller
+ * bound to the thread that run its task (ej. the async executor). The server binds a new Session to each request.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class RoutingConnectionSource implements ConnectionSource {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(RoutingConnectionSource.class);
+
+    /**
+     * The primary: writes, transactions and the reads after a write.
+     */
+    private final ConnectionSource primary;
+
+    /**
+     * The replicas: the reads.
+     */
+    private final List<ConnectionSource> replicas;
+
+    /**
+     * The time that the reads go to the primary after a write.
+     */
+    private final long stickyNanos;
+
+    /**
+     * The clock of the sticky time, in nanos.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The next replica.
+     */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * The connections of the replicas: to release in the right source (the missing ones are of the primary).
+     */
+    private final Map<DatabaseConnection, ConnectionSource> owners = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * The number of reads in the primary.
+     */
+    private final LongAdder primaryReads = new LongAdder();
+
+    /**
+     * The number of reads in the replicas.
+     */
+    private final LongAdder replicaReads = new LongAdder();
+
+    /**
+     * The Constructor.
+     *
+     * @param primary      to write.
+     * @param replicas     to read (can be empty: all to the primary).
+     * @param stickyMillis the time that the reads go to the primary after a write.
+     */
+    public RoutingConnectionSource(ConnectionSource primary, List<? extends ConnectionSource> replicas,
+                                   long stickyMillis) {
+        this(primary, replicas, stickyMillis, System::nanoTime);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param primary      to write.
+     * @param replicas     to read (can be empty: all to the primary).
+     * @param stickyMillis the time that the reads go to the primary after a write.
+     * @param clock        of the sticky time, in nanos (ej. {@link System#nanoTime()}).
+     */
+    public RoutingConnectionSource(ConnectionSource primary, List<? extends ConnectionSource> replicas,
+                                   long stickyMillis, LongSupplier clock) {
+
+        // Nullity test
+        if (primary == null || replicas == null || replicas.contains(null) || clock == null) {
+            throw new IllegalArgumentException("Can't route without the primary or the replicas");
+        }
+        if (stickyMillis < 0) {
+            throw new IllegalArgumentException("The sticky time can't be negative");
+        }
+
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+        this.clock = clock;
+
+        log.debug("Routing the reads to {} replicas, {} ms sticky after write.", this.replicas.size(), stickyMillis);
+    }
+
+    /**
+     * @return true if the current thread must read from the primary.
+     */
+    private boolean isSticky(String tableName) {
+
+        // Inside a transaction: the same connection
+        if (this.primary.getSpecialConnection(tableName) != null) {
+            return true;
+        }
+        return Session.current().isSticky(this.clock.getAsLong());
+    }
+
+    /**
+     * The reads of the current {@link Session} to the primary during the sticky time: for the writes made by other
+     * thread (ej. the write behind) on behalf of this one.
+     */
+    public void markWrite() {
+        Session.current().stick(this.clock.getAsLong() + this.stickyNanos);
+    }
+
+    /**
+     * @see ConnectionSource#getReadOnlyConnection(String)
+     */
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+
+        if (this.replicas.isEmpty() || this.isSticky(tableName)) {
+            this.primaryReads.increment();
+            return this.primary.getReadOnlyConnection(tableName);
+        }
+
+        ConnectionSource replica = this.replicas.get(Math.floorMod(this.next.getAndIncrement(), this.replicas.size()));
+        DatabaseConnection connection = replica.getReadOnlyConnection(tableName);
+        this.owners.put(connection, replica);
+        this.replicaReads.increment();
+        return connection;
+    }
+
+    /**
+     * @see ConnectionSource#getReadWriteConnection(String)
+     */
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+
+        // Read-your-writes
+        Session.current().stick(this.clock.getAsLong() + this.stickyNanos);
+        return this.primary.getReadWriteConnection(tableName);
+    }
+
+    /**
+     * @see ConnectionSource#releaseConnection(DatabaseConnection)
+     */
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        ConnectionSource owner = this.owners.get(connection);
+        (owner != null ? owner : this.primary).releaseConnection(connection);
+    }
+
+    /**
+     * @see ConnectionSource#saveSpecialConnection(DatabaseConnection)
+     */
+    @Override
+    public boolean saveSpecialConnection(DatabaseConnection connection) throws SQLException {
+        return this.primary.saveSpecialConnection(connection);
+    }
+
+    /**
+     * @see ConnectionSource#clearSpecialConnection(DatabaseConnection)
+     */
+    @Override
+    public void clearSpecialConnection(DatabaseConnection connection) {
+        this.primary.clearSpecialConnection(connection);
+    }
+
+    /**
+     * @see ConnectionSource#getSpecialConnection(String)
+     */
+    @Override
+    public DatabaseConnection getSpecialConnection(String tableName) {
+        return this.primary.getSpecialConnection(tableName);
+    }
+
+    /**
+     * @see ConnectionSource#close()
+     */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (ConnectionSource replica : this.replicas) {
+            try {
+                replica.close();
+            } catch (IOException ex) {
+                exception = ex;
+            }
+        }
+        this.primary.close();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * @see ConnectionSource#closeQuietly()
+     */
+    @Override
+    public void closeQuietly() {
+        this.replicas.forEach(ConnectionSource::closeQuietly);
+        this.primary.closeQuietly();
+    }
+
+    /**
+     * @see ConnectionSource#getDatabaseType()
+     */
+    @Override
+    public DatabaseType getDatabaseType() {
+        return this.primary.getDatabaseType();
+    }
+
+    /**
+     * @see ConnectionSource#isOpen(String)
+     */
+    @Override
+    public boolean isOpen(String tableName) {
+        return this.primary.isOpen(tableName);
+    }
+
+    /**
+     * @see ConnectionSource#isSingleConnection(String)
+     */
+    @Override
+    public boolean isSingleConnection(String tableName) {
+        return this.replicas.isEmpty() && this.primary.isSingleConnection(tableName);
+    }
+
+    /**
+     * @return the primary.
+     */
+    public ConnectionSource getPrimary() {
+        return this.primary;
+    }
+
+    /**
+     * @return the number of replicas.
+     */
+    public int getReplicaCount() {
+        return this.replicas.size();
+    }
+
+    /**
+     * @return the number of reads in the primary.
+     */
+    public long getPrimaryReads() {
+        return this.primaryReads.sum();
+    }
+
+    /**
+     * @return the number of reads in the replicas.
+     */
+    public long getReplicaReads() {
+        return this.replicaReads.sum();
+    }
+
+    /**
+     * The context of the read-your-writes: the end of the sticky time of a caller (a thread, or a request served by
+     * many threads).
+     */
+    public static final class Session {
+
+        /**
+         * The Session of each thread.
+         */
+        private static final ThreadLocal<Session> CURRENT = ThreadLocal.withInitial(Session::new);
+
+        /**
+         * True if there was a write.
+         */
+        private volatile boolean sticky;
+
+        /**
+         * The end of the sticky time (in the clock of the router).
+         */
+        private volatile long stickyUntil;
+
+        /**
+         * A new Session: without writes.
+         */
+        public Session() {
+            // Nothing here
+        }
+
+        /**
+         * @return the Session of the current thread.
+         */
+        public static Session current() {
+            return CURRENT.get();
+        }
+
+        /**
+         * @param session to bind to the current thread (null to unbind: a new one).
+         */
+        public static void bind(Session session) {
+            if (session == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(session);
+            }
+        }
+
+        /**
+         * @param until the end of the sticky time.
+         */
+        private void stick(long until) {
+            this.stickyUntil = until;
+            this.sticky = true;
+        }
+
+        /**
+         * @param now the time in the clock of the router.
+         * @return true if the sticky time of the last write is not over.
+         */
+        private boolean isSticky(long now) {
+            if (!this.sticky) {
+                return false;
+            }
+            if (now - this.stickyUntil < 0) {
+                return true;
+            }
+            this.sticky = false;
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.TableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The versions of the schema: each {@link Migration} is applied once, in order, and recorded in the table
+ * schema_version (in the same transaction). At startup only the versions greater than the last one recorded are
+ * applied. The migrations need to be idempotent (ej. IF NOT EXISTS): some databases commit the DDL by themselves.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class SchemaMigrator {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    /**
+     * The connection.
+     */
+    private final ConnectionSource connectionSource;
+
+    /**
+     * The migrations, by version.
+     */
+    private final SortedMap<Integer, Step> migrations = new TreeMap<>();
+
+    /**
+     * The Constructor.
+     *
+     * @param connectionSource to migrate (the primary).
+     */
+    public SchemaMigrator(ConnectionSource connectionSource) {
+
+        // Nullity test
+        if (connectionSource == null) {
+            throw new IllegalArgumentException("Can't migrate without the connection");
+        }
+
+        this.connectionSource = connectionSource;
+    }
+
+    /**
+     * @param version     of the schema (greater than zero, unique).
+     * @param description of the changes.
+     * @param migration   to apply.
+     * @return the SchemaMigrator.
+     */
+    public SchemaMigrator add(int version, String description, Migration migration) {
+
+        // Nullity test and version
+        if (version < 1 || description == null || migration == null) {
+            throw new IllegalArgumentException("Can't add a migration without version, description or migration");
+        }
+        if (this.migrations.containsKey(version)) {
+            throw new IllegalArgumentException("The version " + version + " was already added");
+        }
+
+        this.migrations.put(version, new Step(description, migration));
+        return this;
+    }
+
+    /**
+     * Apply the migrations with version greater than the current one.
+     *
+     * @return the number of migrations applied.
+     */
+    public int migrate() {
+
+        try {
+            TableUtils.createTableIfNotExists(this.connectionSource, SchemaVersion.class);
+            Dao<SchemaVersion, Integer> dao = DaoManager.createDao(this.connectionSource, SchemaVersion.class);
+            int current = version(dao);
+
+            int applied = 0;
+            for (Map.Entry<Integer, Step> entry : this.migrations.tailMap(current + 1).entrySet()) {
+
+                int version = entry.getKey();
+                Step step = entry.getValue();
+                long start = System.currentTimeMillis();
+
+                // The changes and the version: all or nothing
+                TransactionManager.callInTransaction(this.connectionSource, () -> {
+                    step.migration.migrate(this.connectionSource);
+                    dao.create(new SchemaVersion(version, step.description, System.currentTimeMillis(),
+                            System.currentTimeMillis() - start));
+                    return null;
+                });
+
+                log.debug("Schema version {} ({}) applied in {} ms.", version, step.description,
+                        System.currentTimeMillis() - start);
+                applied++;
+            }
+
+            if (applied == 0) {
+                log.debug("Schema at version {}, nothing to migrate.", current);
+            }
+            return applied;
+
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return the current version of the schema (0 if there is no one).
+     */
+    public int getVersion() {
+        try {
+            Dao<SchemaVersion, Integer> dao = DaoManager.createDao(this.connectionSource, SchemaVersion.class);
+            return dao.isTableExists() ? version(dao) : 0;
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return the versions applied.
+     */
+    public List<SchemaVersion> getApplied() {
+        try {
+            Dao<SchemaVersion, Integer> dao = DaoManager.createDao(this.connectionSource, SchemaVersion.class);
+            return dao.queryBuilder().orderBy("version", true).query();
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param dao of the versions.
+     * @return the last version applied (0 if there is no one).
+     * @throws SQLException if any problem.
+     */
+    private static int version(Dao<SchemaVersion, Integer> dao) throws SQLException {
+        SchemaVersion last = dao.queryBuilder().orderBy("version", false).limit(1L).queryForFirst();
+        return last == null ? 0 : last.getVersion();
+    }
+
+    /**
+     * @param classes the tables to create (with their indexes), if not exists.
+     * @return the Migration.
+     */
+    public static Migration createTables(Class<?>... classes) {
+        return connectionSource -> {
+            for (Class<?> clazz : classes) {
+                TableUtils.createTableIfNotExists(connectionSource, clazz);
+            }
+        };
+    }
+
+    /**
+     * @param indexName the name of the index.
+     * @param tableName the table.
+     * @param columns   the columns of the index (in order).
+     * @return the Migration that create the index, if not exists.
+     */
+    public static Migration createIndex(String indexName, String tableName, String... columns) {
+
+        // Nullity test
+        if (indexName == null || tableName == null || columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("Can't create an index without name, table or columns");
+        }
+
+        return connectionSource -> {
+            DatabaseType databaseType = connectionSource.getDatabaseType();
+            StringBuilder sql = new StringBuilder("CREATE INDEX IF NOT EXISTS ");
+            databaseType.appendEscapedEntityName(sql, indexName);
+            sql.append(" ON ");
+            databaseType.appendEscapedEntityName(sql, tableName);
+            sql.append(" (");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                databaseType.appendEscapedEntityName(sql, columns[i]);
+            }
+            sql.append(')');
+            execute(connectionSource, sql.toString());
+        };
+    }
+
+    /**
+     * @param tableName  the table.
+     * @param columnName the column.
+     * @param definition the type of the column (ej. INTEGER DEFAULT 0).
+     * @return the Migration that add the column, if not exists.
+     */
+    public static Migration addColumn(String tableName, String columnName, String definition) {
+
+        // Nullity test
+        if (tableName == null || columnName == null || definition == null) {
+            throw new IllegalArgumentException("Can't add a column without table, name or definition");
+        }
+
+        return connectionSource -> {
+            if (hasColumn(connectionSource, tableName, columnName)) {
+                return;
+            }
+            DatabaseType databaseType = connectionSource.getDatabaseType();
+            StringBuilder sql = new StringBuilder("ALTER TABLE ");
+            databaseType.appendEscapedEntityName(sql, tableName);
+            sql.append(" ADD COLUMN ");
+            databaseType.appendEscapedEntityName(sql, columnName);
+            sql.append(' ').append(definition);
+            execute(connectionSource, sql.toString());
+        };
+    }
+
+    /**
+     * @param indexName the name of the index.
+     * @return the Migration that drop the index, if exists.
+     */
+    public static Migration dropIndex(String indexName) {
+
+        // Nullity test
+        if (indexName == null) {
+            throw new IllegalArgumentException("Can't drop an index without name");
+        }
+
+        return connectionSource -> {
+            StringBuilder sql = new StringBuilder("DROP INDEX IF EXISTS ");
+            connectionSource.getDatabaseType().appendEscapedEntityName(sql, indexName);
+            execute(connectionSource, sql.toString());
+        };
+    }
+
+    /**
+     * @param migrations to apply, in order.
+     * @return the Migration that apply all the migrations.
+     */
+    public static Migration all(Migration... migrations) {
+        return connectionSource -> {
+            for (Migration migration : migrations) {
+                migration.migrate(connectionSource);
+            }
+        };
+    }
+
+    /**
+     * @param connectionSource to use.
+     * @param sql              the statement to execute.
+     * @throws SQLException if any problem.
+     */
+    private static void execute(ConnectionSource connectionSource, String sql) throws SQLException {
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(null);
+        try {
+            log.debug("Executing: {}", sql);
+            connection.executeStatement(sql, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * @param connectionSource to use.
+     * @param tableName        the table.
+     * @param columnName       the column.
+     * @return true if the table has the column.
+     * @throws SQLException if any problem.
+     */
+    private static boolean hasColumn(ConnectionSource connectionSource, String tableName, String columnName)
+            throws SQLException {
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM ");
+        connectionSource.getDatabaseType().appendEscapedEntityName(sql, tableName);
+        sql.append(" WHERE 1 = 0");
+
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(tableName);
+        try (Statement statement = ((JdbcDatabaseConnection) connection).getInternalConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery(sql.toString())) {
+
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                if (columnName.equalsIgnoreCase(metaData.getColumnName(i))) {
+                    return true;
+                }
+            }
+            return false;
+
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * A migration with its description.
+     */
+    private static final class Step {
+
+        /**
+         * The description.
+         */
+        private final String description;
+
+        /**
+         * The migration.
+         */
+        private final Migration migration;
+
+        /**
+         * @param description of the changes.
+         * @param migration   to apply.
+         */
+        private Step(String description, Migration migration) {
+            this.description = description;
+            this.migration = migration;
+        }
+    }
+
+}
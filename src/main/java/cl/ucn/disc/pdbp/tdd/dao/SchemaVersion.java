@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * A version of the schema applied by the {@link SchemaMigrator}.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@DatabaseTable(tableName = "schema_version")
+public final class SchemaVersion {
+
+    /**
+     * The version: Primary Key.
+     */
+    @DatabaseField(id = true)
+    private Integer version;
+
+    /**
+     * The description.
+     */
+    @DatabaseField(canBeNull = false)
+    private String description;
+
+    /**
+     * The time of the migration (epoch millis).
+     */
+    @DatabaseField(canBeNull = false)
+    private Long appliedAt;
+
+    /**
+     * The duration of the migration.
+     */
+    @DatabaseField(canBeNull = false)
+    private Long millis;
+
+    /**
+     * Empty contructor: Default visibility + empty body.
+     */
+    SchemaVersion() {
+        // nothing here.
+    }
+
+    /**
+     * The Constructor.
+     */
+    SchemaVersion(Integer version, String description, Long appliedAt, Long millis) {
+        this.version = version;
+        this.description = description;
+        this.appliedAt = appliedAt;
+        this.millis = millis;
+    }
+
+    /**
+     * @return the version.
+     */
+    public Integer getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the description.
+     */
+    public String getDescription() {
+        return this.description;
+    }
+
+    /**
+     * @return the time of the migration (epoch millis).
+     */
+    public Long getAppliedAt() {
+        return this.appliedAt;
+    }
+
+    /**
+     * @return the duration of the migration.
+     */
+    public Long getMillis() {
+        return this.millis;
+    }
+
+}
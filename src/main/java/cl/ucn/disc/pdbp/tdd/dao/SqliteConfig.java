@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import java.util.Properties;
+
+/**
+ * The performance profile of a SQLite database (a file): the pragmas of the connections, the single writer and the
+ * read-only readers. With WAL the readers don't wait the writer (and the writer don't wait the readers), and only one
+ * connection writes, so the writes wait in the pool and not in the lock of the file (SQLITE_BUSY).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class SqliteConfig {
+
+    /**
+     * The default configuration: WAL, synchronous NORMAL (durable in WAL except the last commits in a power loss),
+     * 16 MB of cache and 256 MB of mmap by connection, temporal tables in memory.
+     */
+    public static final SqliteConfig DEFAULT = new SqliteConfig("WAL", "NORMAL", 16 * 1024, 256 * 1024 * 1024L,
+            "MEMORY", 5 * 1000L);
+
+    /**
+     * The prefix of the urls of SQLite.
+     */
+    private static final String PREFIX = "jdbc:sqlite:";
+
+    /**
+     * The open mode of the readers: SQLITE_OPEN_READONLY.
+     */
+    private static final int OPEN_READONLY = 1;
+
+    /**
+     * The journal_mode (ej. WAL, DELETE).
+     */
+    private final String journalMode;
+
+    /**
+     * The synchronous (ej. NORMAL, FULL).
+     */
+    private final String synchronous;
+
+    /**
+     * The cache of pages of each connection, in KB.
+     */
+    private final int cacheSizeKb;
+
+    /**
+     * The max bytes of the file read by memory-mapped I/O (0: disabled).
+     */
+    private final long mmapSizeBytes;
+
+    /**
+     * The temp_store (ej. MEMORY, FILE).
+     */
+    private final String tempStore;
+
+    /**
+     * The max time to wait the lock of the database.
+     */
+    private final long busyTimeoutMillis;
+
+    /**
+     * The Constructor.
+     *
+     * @param journalMode       the journal_mode (ej. WAL).
+     * @param synchronous       the synchronous (ej. NORMAL).
+     * @param cacheSizeKb       the cache of pages of each connection, in KB.
+     * @param mmapSizeBytes     the max bytes of memory-mapped I/O (0: disabled).
+     * @param tempStore         the temp_store (ej. MEMORY).
+     * @param busyTimeoutMillis the max time to wait the lock of the database.
+     */
+    public SqliteConfig(String journalMode, String synchronous, int cacheSizeKb, long mmapSizeBytes,
+                        String tempStore, long busyTimeoutMillis) {
+
+        // Nullity test
+        if (journalMode == null || synchronous == null || tempStore == null) {
+            throw new IllegalArgumentException("Can't create the SqliteConfig without the modes");
+        }
+        if (cacheSizeKb < 0 || mmapSizeBytes < 0 || busyTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Wrong sizes or times: can't be negative");
+        }
+
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSizeKb = cacheSizeKb;
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.tempStore = tempStore;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+    }
+
+    /**
+     * The configuration from properties (ej. System.getProperties()), the missing ones from {@link #DEFAULT}:
+     * prefix + journalMode, synchronous, cacheSizeKb, mmapSizeBytes, tempStore and busyTimeoutMillis.
+     *
+     * @param properties to use.
+     * @param prefix     of the names (ej. "fivet.sqlite.").
+     * @return the SqliteConfig.
+     */
+    public static SqliteConfig fromProperties(Properties properties, String prefix) {
+
+        // Nullity test
+        if (properties == null || prefix == null) {
+            throw new IllegalArgumentException("Can't read the SqliteConfig without properties or prefix");
+        }
+
+        return new SqliteConfig(
+                properties.getProperty(prefix + "journalMode", DEFAULT.journalMode),
+                properties.getProperty(prefix + "synchronous", DEFAULT.synchronous),
+                Integer.parseInt(properties.getProperty(prefix + "cacheSizeKb", String.valueOf(DEFAULT.cacheSizeKb))),
+                Long.parseLong(properties.getProperty(prefix + "mmapSizeBytes",
+                        String.valueOf(DEFAULT.mmapSizeBytes))),
+                properties.getProperty(prefix + "tempStore", DEFAULT.tempStore),
+                Long.parseLong(properties.getProperty(prefix + "busyTimeoutMillis",
+                        String.valueOf(DEFAULT.busyTimeoutMillis)))
+        );
+    }
+
+    /**
+     * @param databaseUrl of the file (ej. jdbc:sqlite:fivet.db).
+     * @return the url of the writer: the journal_mode (saved in the file), synchronous and the rest of pragmas.
+     */
+    public String writerUrl(String databaseUrl) {
+        return with(databaseUrl, "journal_mode=" + this.journalMode + "&synchronous=" + this.synchronous);
+    }
+
+    /**
+     * @param databaseUrl of the file (ej. jdbc:sqlite:fivet.db).
+     * @return the url of the readers: read-only and the pragmas of the cache.
+     */
+    public String readerUrl(String databaseUrl) {
+        return with(databaseUrl, "open_mode=" + OPEN_READONLY);
+    }
+
+    /**
+     * @param databaseUrl of the file.
+     * @param pragmas     of the connection (name=value&..).
+     * @return the url with the pragmas (sqlite-jdbc read them from the url).
+     */
+    private String with(String databaseUrl, String pragmas) {
+
+        // Nullity test
+        if (databaseUrl == null || !databaseUrl.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("The SqliteConfig need a SQLite url: " + databaseUrl);
+        }
+
+        // The memory databases: one for each connection
+        String file = databaseUrl.substring(PREFIX.length());
+        if (file.isEmpty() || file.startsWith(":memory:") || file.contains("mode=memory")) {
+            throw new IllegalArgumentException("The SqliteConfig need a file, not a memory database: " + databaseUrl);
+        }
+
+        return databaseUrl + (file.contains("?") ? "&" : "?") + pragmas
+                + "&cache_size=-" + this.cacheSizeKb
+                + "&mmap_size=" + this.mmapSizeBytes
+                + "&temp_store=" + this.tempStore
+                + "&busy_timeout=" + this.busyTimeoutMillis;
+    }
+
+    /**
+     * @param readers the configuration of the pool of the readers.
+     * @return the configuration of the pool of the writer: the same times, one connection.
+     */
+    public PoolConfig writerPool(PoolConfig readers) {
+
+        // Nullity test
+        if (readers == null) {
+            throw new IllegalArgumentException("Can't create the writer pool without PoolConfig");
+        }
+
+        return new PoolConfig(1, 1, readers.getIdleTimeoutMillis(), readers.getMaxAgeMillis(),
+                readers.getValidationIntervalMillis(), readers.getAcquireTimeoutMillis());
+    }
+
+    /**
+     * @return the journal_mode.
+     */
+    public String getJournalMode() {
+        return this.journalMode;
+    }
+
+    /**
+     * @return the synchronous.
+     */
+    public String getSynchronous() {
+        return this.synchronous;
+    }
+
+    /**
+     * @return the cache of pages of each connection, in KB.
+     */
+    public int getCacheSizeKb() {
+        return this.cacheSizeKb;
+    }
+
+    /**
+     * @return the max bytes of memory-mapped I/O.
+     */
+    public long getMmapSizeBytes() {
+        return this.mmapSizeBytes;
+    }
+
+    /**
+     * @return the temp_store.
+     */
+    public String getTempStore() {
+        return this.tempStore;
+    }
+
+    /**
+     * @return the max time to wait the lock of the database.
+     */
+    public long getBusyTimeoutMillis() {
+        return this.busyTimeoutMillis;
+    }
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "SqliteConfig{journalMode=" + this.journalMode + ", synchronous=" + this.synchronous
+                + ", cacheSizeKb=" + this.cacheSizeKb + ", mmapSizeBytes=" + this.mmapSizeBytes
+                + ", tempStore=" + this.tempStore + ", busyTimeoutMillis=" + this.busyTimeoutMillis + "}";
+    }
+
+}
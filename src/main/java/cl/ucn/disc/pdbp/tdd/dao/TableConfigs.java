@@ -0,0 +1,218 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.db.SqliteDatabaseType;
+import com.j256.ormlite.field.DatabaseFieldConfig;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import com.j256.ormlite.table.DatabaseTableConfigLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The configuration of the tables precomputed at build time (./gradlew ormliteConfig), in the resource
+ * {@value #RESOURCE}. With {@link #install()} the DaoManager create the daos from it, without reading the annotations
+ * of each class (the startup of the batch jobs and the tools).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@SuppressWarnings("UtilityClass")
+public final class TableConfigs {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(TableConfigs.class);
+
+    /**
+     * The resource with the configuration.
+     */
+    public static final String RESOURCE = "/ormlite_config.txt";
+
+    /**
+     * True if the configuration was installed.
+     */
+    private static final AtomicBoolean installed = new AtomicBoolean();
+
+    /**
+     * Not for construction.
+     */
+    private TableConfigs() {
+        // Empty
+    }
+
+    /**
+     * Generate the configuration file from the annotations.
+     *
+     * @param args the file to write and the name of the classes.
+     * @throws Exception if any problem.
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: TableConfigs <file> <class>...");
+        }
+
+        List<Class<?>> classes = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            classes.add(Class.forName(args[i]));
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            write(writer, generate(classes));
+        }
+        log.debug("Configuration of {} tables written to {}.", classes.size(), args[0]);
+    }
+
+    /**
+     * @param classes to read.
+     * @return the configuration of the tables, from the annotations.
+     */
+    public static List<DatabaseTableConfig<?>> generate(List<Class<?>> classes) {
+
+        // Nullity test
+        if (classes == null) {
+            throw new IllegalArgumentException("Can't generate without the classes");
+        }
+
+        // The names don't depend of the database (the same configuration for h2 and sqlite)
+        DatabaseType databaseType = new SqliteDatabaseType();
+        List<DatabaseTableConfig<?>> configs = new ArrayList<>(classes.size());
+        try {
+            for (Class<?> clazz : classes) {
+                configs.add(generate(databaseType, clazz));
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+        return configs;
+    }
+
+    /**
+     * @return the configuration of the table.
+     */
+    private static <T> DatabaseTableConfig<T> generate(DatabaseType databaseType, Class<T> clazz)
+            throws SQLException {
+
+        String tableName = DatabaseTableConfig.extractTableName(databaseType, clazz);
+        List<DatabaseFieldConfig> fieldConfigs = new ArrayList<>();
+        for (Class<?> walk = clazz; walk != null; walk = walk.getSuperclass()) {
+            for (Field field : walk.getDeclaredFields()) {
+                DatabaseFieldConfig fieldConfig = DatabaseFieldConfig.fromField(databaseType, tableName, field);
+                if (fieldConfig != null) {
+                    fieldConfigs.add(fieldConfig);
+                }
+            }
+        }
+        return new DatabaseTableConfig<>(clazz, tableName, fieldConfigs);
+    }
+
+    /**
+     * @param writer  to use.
+     * @param configs to write.
+     */
+    public static void write(Writer writer, List<DatabaseTableConfig<?>> configs) {
+        try {
+            BufferedWriter buffered = new BufferedWriter(writer);
+            buffered.append("# The configuration of the tables: generated by ./gradlew ormliteConfig, don't edit.");
+            buffered.newLine();
+            for (DatabaseTableConfig<?> config : configs) {
+                DatabaseTableConfigLoader.write(buffered, config);
+            }
+            buffered.flush();
+        } catch (IOException | SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return the configuration of the tables in {@value #RESOURCE} (new instances on each call).
+     */
+    public static List<DatabaseTableConfig<?>> load() {
+        try (InputStream in = TableConfigs.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Can't find the resource " + RESOURCE);
+            }
+            return DatabaseTableConfigLoader.loadDatabaseConfigFromReader(
+                    new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        } catch (IOException | SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * The DaoManager will use the configuration of {@value #RESOURCE} (once, the next calls do nothing).
+     */
+    public static void install() {
+        if (installed.compareAndSet(false, true)) {
+            long start = System.nanoTime();
+            List<DatabaseTableConfig<?>> configs = load();
+            DaoManager.addCachedDatabaseConfigs(configs);
+            log.debug("Installed the configuration of {} tables in {} us.", configs.size(),
+                    (System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /**
+     * @return true if the configuration was installed.
+     */
+    public static boolean isInstalled() {
+        return installed.get();
+    }
+
+    /**
+     * @param clazz of the table.
+     * @return the configuration of the fields of clazz (new instances) or null if not installed or not found.
+     */
+    public static List<DatabaseFieldConfig> fieldConfigs(Class<?> clazz) {
+        if (!installed.get()) {
+            return null;
+        }
+        for (DatabaseTableConfig<?> config : load()) {
+            if (config.getDataClass() == clazz) {
+                return config.getFieldConfigs();
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,376 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import cl.ucn.disc.pdbp.tdd.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * The inserts of T in the background, with group commit: the writes are accepted at once (in a bounded queue) and
+ * one thread saves them in one transaction each maxBatch T or maxDelay since the first one waiting. The future of
+ * each T is completed after the commit of its transaction (durable), or with the error if it can't be saved (the
+ * batch is saved one by one if the transaction fail: only the wrong T fail). If the queue is full the future fails
+ * with {@link RejectedExecutionException} (back-pressure).
+ * <p>
+ * The futures are completed in the writer thread: the slow stages need to be async.
+ *
+ * @param <T> the type to save.
+ * @param <K> the type of the id.
+ * @author Diego Urrutia-Astorga.
+ */
+public final class WriteBehindQueue<T, K> implements AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    /**
+     * The time to check if closed while the queue is empty.
+     */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * The repository.
+     */
+    private final Repository<T, K> repository;
+
+    /**
+     * The max number of T by transaction.
+     */
+    private final int maxBatch;
+
+    /**
+     * The max time of a T waiting for its transaction.
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * The T waiting.
+     */
+    private final BlockingQueue<Pending<T>> queue;
+
+    /**
+     * The writer.
+     */
+    private final Thread writer;
+
+    /**
+     * True after {@link #close()}: no more T accepted.
+     */
+    private boolean closed;
+
+    /**
+     * The time from the submit to the commit.
+     */
+    private final Histogram latencies = new Histogram();
+
+    /**
+     * The time of the transactions.
+     */
+    private final Histogram commits = new Histogram();
+
+    /**
+     * The T saved.
+     */
+    private final LongAdder committed = new LongAdder();
+
+    /**
+     * The T that can't be saved.
+     */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * The T not accepted (full or closed).
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * The number of transactions.
+     */
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * The Constructor.
+     *
+     * @param repository     to save.
+     * @param maxBatch       the max number of T by transaction (not more than the batch size of the repository).
+     * @param maxDelayMillis the max time of a T waiting for its transaction.
+     * @param capacity       the max number of T waiting.
+     */
+    public WriteBehindQueue(Repository<T, K> repository, int maxBatch, long maxDelayMillis, int capacity) {
+
+        // Nullity test and sizes
+        if (repository == null || maxBatch < 1 || maxDelayMillis < 0 || capacity < maxBatch) {
+            throw new IllegalArgumentException("Can't create the queue without the repository or sizes");
+        }
+
+        this.repository = repository;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        this.writer = new Thread(this::run, "write-behind-" + System.identityHashCode(this));
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        log.debug("Write behind of {} by transaction, max {} ms, capacity {}.", maxBatch, maxDelayMillis, capacity);
+    }
+
+    /**
+     * @param t to save.
+     * @return the future of t, completed after the commit.
+     */
+    public CompletableFuture<T> submit(T t) {
+
+        // Nullity test
+        if (t == null) {
+            throw new IllegalArgumentException("Can't save a null");
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean accepted;
+        synchronized (this) {
+            accepted = !this.closed && this.queue.offer(new Pending<>(t, future));
+        }
+        if (!accepted) {
+            this.rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException(this.isClosed() ? "The queue is closed"
+                    : "Too many writes waiting"));
+        }
+        return future;
+    }
+
+    /**
+     * The writer: wait the first T, then the next ones until maxBatch or maxDelay, and save them.
+     */
+    private void run() {
+
+        List<Pending<T>> batch = new ArrayList<>(this.maxBatch);
+        while (true) {
+            try {
+                Pending<T> first = this.queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (this.isClosed() && this.queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+
+                // The group: the ones that came while waiting (or during the previous commit)
+                batch.add(first);
+                long deadline = first.submitted + this.maxDelayNanos;
+                while (batch.size() < this.maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    Pending<T> next = wait > 0 ? this.queue.poll(wait, TimeUnit.NANOSECONDS) : this.queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                this.save(batch);
+                batch.clear();
+
+            } catch (InterruptedException ex) {
+                // Only from close(): the rest is saved
+                Thread.currentThread().interrupt();
+                this.queue.drainTo(batch);
+                this.save(batch);
+                return;
+            } catch (RuntimeException ex) {
+                // Never stop the writer
+                log.error("Write behind failed", ex);
+                batch.forEach(pending -> pending.future.completeExceptionally(ex));
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Save the batch in one transaction (one by one if the transaction fail).
+     *
+     * @param batch to save.
+     */
+    private void save(List<Pending<T>> batch) {
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // All or nothing: the rows before the wrong one rolled back too (never saved twice)
+        long start = System.nanoTime();
+        try {
+            List<T> ts = batch.stream().map(pending -> pending.t).collect(Collectors.toList());
+            this.repository.inTransaction(() -> this.repository.createAll(ts));
+            this.commits.recordSince(start);
+            this.batches.increment();
+            batch.forEach(this::done);
+            return;
+        } catch (RuntimeException ex) {
+            log.warn("Can't save the batch of {} in one transaction, one by one: {}", batch.size(), ex.getMessage());
+        }
+
+        // One by one, after the rollback: only the wrong T fail
+        for (Pending<T> pending : batch) {
+            try {
+                this.repository.create(pending.t);
+                this.done(pending);
+            } catch (RuntimeException ex) {
+                this.failed.increment();
+                pending.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * @param pending saved.
+     */
+    private void done(Pending<T> pending) {
+        this.committed.increment();
+        this.latencies.recordSince(pending.submitted);
+        pending.future.complete(pending.t);
+    }
+
+    /**
+     * @return the number of T waiting.
+     */
+    public int getDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * @return the time from the submit to the commit.
+     */
+    public Histogram getLatencies() {
+        return this.latencies;
+    }
+
+    /**
+     * @return the time of the transactions.
+     */
+    public Histogram getCommits() {
+        return this.commits;
+    }
+
+    /**
+     * @return the number of T saved.
+     */
+    public long getCommitted() {
+        return this.committed.sum();
+    }
+
+    /**
+     * @return the number of T that can't be saved.
+     */
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    /**
+     * @return the number of T not accepted (full or closed).
+     */
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * @return the number of transactions.
+     */
+    public long getBatches() {
+        return this.batches.sum();
+    }
+
+    /**
+     * @return true if closed.
+     */
+    private synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * No more T accepted, wait the save of the T waiting.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        try {
+            this.writer.join();
+        } catch (InterruptedException ex) {
+            this.writer.interrupt();
+            Thread.currentThread().interrupt();
+        }
+        log.debug("Write behind closed: {} saved in {} transactions, {} failed, {} rejected.", this.getCommitted(),
+                this.getBatches(), this.getFailed(), this.getRejected());
+    }
+
+    /**
+     * A T waiting.
+     *
+     * @param <T> the type to save.
+     */
+    private static final class Pending<T> {
+
+        /**
+         * The T.
+         */
+        private final T t;
+
+        /**
+         * The future of the T.
+         */
+        private final CompletableFuture<T> future;
+
+        /**
+         * The {@link System#nanoTime()} of the submit.
+         */
+        private final long submitted = System.nanoTime();
+
+        /**
+         * The Constructor.
+         */
+        private Pending(T t, CompletableFuture<T> future) {
+            this.t = t;
+            this.future = future;
+        }
+    }
+
+}
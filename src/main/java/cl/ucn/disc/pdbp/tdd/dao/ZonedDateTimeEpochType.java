@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.field.SqlType;
+import com.j256.ormlite.field.types.BaseDataType;
+import com.j256.ormlite.support.DatabaseResults;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * ZonedDateTime to Long: the microseconds since epoch (high 56 bits) and the offset in quarters of hour (low 8 bits).
+ * The order of the numbers is the order of the instants, so the column can be indexed and used in ranges.
+ * Range: the years 1400 to 2540. The nanoseconds under the microsecond don't fit in the number: the model keeps them
+ * in a second column, named as the first one plus {@link #NANOS_SUFFIX} (see {@link #nanosOf(ZonedDateTime)} and
+ * {@link #withNanos(ZonedDateTime, int)}), so the value is read back exactly.
+ * The zone is stored as the offset: a region (ej. America/Santiago) is read back as a fixed offset (ej. -04:00), and
+ * an offset that is not a whole quarter of hour (ej. +00:19:32) is read back as UTC (the instant is kept).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@SuppressWarnings({"StaticVariableOfConcreteClass", "Singleton"})
+public final class ZonedDateTimeEpochType extends BaseDataType {
+
+    /**
+     * The bits of the offset.
+     */
+    private static final int OFFSET_BITS = 8;
+
+    /**
+     * The mask of the offset.
+     */
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    /**
+     * The offset (in quarters) of zero: -18:00 -> 56, +18:00 -> 200.
+     */
+    private static final int OFFSET_ZERO = 128;
+
+    /**
+     * The seconds in a quarter of hour.
+     */
+    private static final int QUARTER = 15 * 60;
+
+    /**
+     * The max value (absolute) of the microseconds (56 bits with sign).
+     */
+    private static final long MAX_MICROS = (1L << (Long.SIZE - OFFSET_BITS - 1)) - 1;
+
+    /**
+     * The suffix of the column with the nanoseconds under the microsecond.
+     */
+    public static final String NANOS_SUFFIX = "Nanos";
+
+    /**
+     * The nanoseconds in a microsecond.
+     */
+    private static final int NANOS_PER_MICRO = 1_000;
+
+    /**
+     * The Singleton.
+     */
+    public static final ZonedDateTimeEpochType SINGLETON = new ZonedDateTimeEpochType();
+
+    /**
+     * @return the singleton.
+     */
+    public static ZonedDateTimeEpochType getSingleton() {
+        return SINGLETON;
+    }
+
+    /**
+     * The Constructor.
+     */
+    private ZonedDateTimeEpochType() {
+        // ZonedDateTime <-> Long
+        super(SqlType.LONG, new Class<?>[]{ZonedDateTime.class});
+    }
+
+    /**
+     * @param zonedDateTime to convert.
+     * @return the number (microseconds and offset).
+     */
+    public static long toEpoch(ZonedDateTime zonedDateTime) {
+
+        long micros = toMicros(zonedDateTime.toInstant());
+
+        // Only the offsets in quarters of hour, the rest in UTC
+        int offset = zonedDateTime.getOffset().getTotalSeconds();
+        int quarters = offset % QUARTER == 0 ? offset / QUARTER : 0;
+
+        return micros << OFFSET_BITS | (quarters + OFFSET_ZERO);
+    }
+
+    /**
+     * @param epoch the number (microseconds and offset).
+     * @return the ZonedDateTime.
+     */
+    public static ZonedDateTime fromEpoch(long epoch) {
+
+        long micros = epoch >> OFFSET_BITS;
+        int quarters = (int) (epoch & OFFSET_MASK) - OFFSET_ZERO;
+
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                Math.floorMod(micros, 1_000_000L) * NANOS_PER_MICRO);
+        return ZonedDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds(quarters * QUARTER));
+    }
+
+    /**
+     * @param zonedDateTime to use (can be null).
+     * @return the nanoseconds under the microsecond (0 to 999), not stored in the number.
+     */
+    public static int nanosOf(ZonedDateTime zonedDateTime) {
+        return zonedDateTime == null ? 0 : zonedDateTime.getNano() % NANOS_PER_MICRO;
+    }
+
+    /**
+     * @param zonedDateTime to complete (can be null).
+     * @param nanos         the nanoseconds under the microsecond (0 to 999, see {@link #nanosOf(ZonedDateTime)}).
+     * @return the zonedDateTime with the nanos.
+     */
+    public static ZonedDateTime withNanos(ZonedDateTime zonedDateTime, int nanos) {
+
+        // Nullity test
+        if (zonedDateTime == null) {
+            return null;
+        }
+
+        if (nanos < 0 || nanos >= NANOS_PER_MICRO) {
+            throw new IllegalArgumentException("Nanos out of range: " + nanos);
+        }
+        return zonedDateTime.withNano(zonedDateTime.getNano() - nanosOf(zonedDateTime) + nanos);
+    }
+
+    /**
+     * The first number of the instant (the bound of a range: column >= lowerBound).
+     *
+     * @param instant to use.
+     * @return the min number of the instant.
+     */
+    public static long lowerBound(Instant instant) {
+        return toMicros(instant) << OFFSET_BITS;
+    }
+
+    /**
+     * The last number of the instant (the bound of a range: column <= upperBound).
+     *
+     * @param instant to use.
+     * @return the max number of the instant.
+     */
+    public static long upperBound(Instant instant) {
+        return toMicros(instant) << OFFSET_BITS | OFFSET_MASK;
+    }
+
+    /**
+     * @param instant to convert.
+     * @return the microseconds since epoch.
+     */
+    private static long toMicros(Instant instant) {
+        long micros = instant.getEpochSecond() * 1_000_000L + instant.getNano() / NANOS_PER_MICRO;
+        if (micros > MAX_MICROS || micros < -MAX_MICROS) {
+            throw new IllegalArgumentException("Instant out of range: " + instant);
+        }
+        return micros;
+    }
+
+    /**
+     * @see BaseDataType#sqlArgToJava(FieldType, Object, int)
+     */
+    @Override
+    public Object sqlArgToJava(FieldType fieldType, Object sqlArg, int columnPos) {
+
+        // Nullity test
+        if (sqlArg == null) {
+            return null;
+        }
+
+        // Long to ZonedDateTime
+        return fromEpoch((Long) sqlArg);
+    }
+
+    /**
+     * @see BaseDataType#parseDefaultString(FieldType, String)
+     */
+    @Override
+    public Object parseDefaultString(FieldType fieldType, String defaultStr) {
+        return Long.parseLong(defaultStr);
+    }
+
+    /**
+     * @see BaseDataType#javaToSqlArg(FieldType, Object)
+     */
+    @Override
+    public Object javaToSqlArg(FieldType fieldType, Object javaObject) {
+
+        // Nullity test
+        if (javaObject == null) {
+            return null;
+        }
+
+        // ZonedDateTime to Long
+        return toEpoch((ZonedDateTime) javaObject);
+    }
+
+    /**
+     * @see BaseDataType#resultToSqlArg(FieldType, DatabaseResults, int)
+     */
+    @Override
+    public Object resultToSqlArg(FieldType fieldType, DatabaseResults results, int columnPos) throws SQLException {
+        long epoch = results.getLong(columnPos);
+        // The null is 0 in the results
+        return results.wasNull(columnPos) ? null : epoch;
+    }
+
+    /**
+     * @see BaseDataType#isEscapedValue()
+     */
+    @Override
+    public boolean isEscapedValue() {
+        return false;
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migration of the columns stored with {@link ZonedDateTimeType} (VARCHAR, ISO-8601) to
+ * {@link ZonedDateTimeEpochType} (BIGINT). Idempotent: the columns already numeric are skipped. Need to run before
+ * {@link com.j256.ormlite.table.TableUtils#createTableIfNotExists(ConnectionSource, Class)} (to build the indexes).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+@SuppressWarnings("UtilityClass")
+public final class ZonedDateTimeMigration {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ZonedDateTimeMigration.class);
+
+    /**
+     * The suffix of the temporal column.
+     */
+    private static final String TEMPORAL = "_epoch";
+
+    /**
+     * The suffix of the old column (if the database can't drop it).
+     */
+    private static final String LEGACY = "_iso";
+
+    /**
+     * Not for construction.
+     */
+    private ZonedDateTimeMigration() {
+        // Empty
+    }
+
+    /**
+     * Migrate all the fields of clazz with {@link ZonedDateTimeEpochType} that still are strings in the database.
+     *
+     * @param connectionSource to use.
+     * @param clazz            the table to migrate.
+     * @param <T>              type of the table.
+     * @return the number of columns migrated.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> int migrate(ConnectionSource connectionSource, Class<T> clazz) {
+
+        // Nullity test
+        if (connectionSource == null || clazz == null) {
+            throw new IllegalArgumentException("Can't migrate without the connection or the class");
+        }
+
+        try {
+            BaseDaoImpl<T, Object> dao = DaoManager.createDao(connectionSource, clazz);
+
+            // Nothing to migrate
+            if (!dao.isTableExists()) {
+                return 0;
+            }
+            String tableName = dao.getTableInfo().getTableName();
+            FieldType idField = dao.getTableInfo().getIdField();
+
+            int columns = 0;
+            for (FieldType fieldType : dao.getTableInfo().getFieldTypes()) {
+                if (fieldType.getDataPersister() instanceof ZonedDateTimeEpochType
+                        && isString(connectionSource, tableName, fieldType.getColumnName())) {
+                    migrateColumn(connectionSource, dao, tableName, idField, fieldType);
+                    columns++;
+                }
+            }
+            return columns;
+
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return true if the column is stored as string.
+     */
+    private static boolean isString(ConnectionSource connectionSource, String tableName, String columnName)
+            throws SQLException {
+
+        DatabaseConnection connection = connectionSource.getReadOnlyConnection(tableName);
+        try (Statement statement = ((JdbcDatabaseConnection) connection).getInternalConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT " + escape(connectionSource, columnName)
+                     + " FROM " + escape(connectionSource, tableName) + " WHERE 1 = 0")) {
+
+            int type = resultSet.getMetaData().getColumnType(1);
+            return type == Types.VARCHAR || type == Types.CHAR || type == Types.LONGVARCHAR
+                    || type == Types.NVARCHAR || type == Types.CLOB;
+
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Add the numeric column, copy the values, drop the old column and rename the new one.
+     */
+    private static <T> void migrateColumn(ConnectionSource connectionSource,
+                                          BaseDaoImpl<T, Object> dao,
+                                          String tableName,
+                                          FieldType idField,
+                                          FieldType fieldType) throws SQLException {
+
+        long start = System.currentTimeMillis();
+        String columnName = fieldType.getColumnName();
+        String table = escape(connectionSource, tableName);
+        String id = escape(connectionSource, idField.getColumnName());
+        String column = escape(connectionSource, columnName);
+        String temporal = escape(connectionSource, columnName + TEMPORAL);
+
+        // The index of the string column (created again over the new column by TableUtils)
+        if (fieldType.getIndexName() != null) {
+            dao.executeRawNoArgs("DROP INDEX IF EXISTS " + escape(connectionSource, fieldType.getIndexName()));
+        }
+
+        // The new column
+        dao.executeRawNoArgs("ALTER TABLE " + table + " ADD COLUMN " + temporal + " BIGINT");
+
+        // The column of the nanoseconds under the microsecond (if the class has it)
+        String nanosName = columnName + ZonedDateTimeEpochType.NANOS_SUFFIX;
+        boolean withNanos = dao.getTableInfo().hasColumnName(nanosName);
+        if (withNanos) {
+            SchemaMigrator.addColumn(tableName, nanosName, "INTEGER DEFAULT 0").migrate(connectionSource);
+        }
+
+        // The values: id + iso
+        List<String[]> rows = new ArrayList<>();
+        try (GenericRawResults<String[]> results = dao.queryRaw("SELECT " + id + ", " + column + " FROM " + table
+                + " WHERE " + column + " IS NOT NULL")) {
+            for (String[] row : results) {
+                rows.add(row);
+            }
+        } catch (IOException ex) {
+            throw new SQLException(ex);
+        }
+
+        // ISO -> epoch + nanos (in one transaction)
+        String update = "UPDATE " + table + " SET " + temporal + " = ?"
+                + (withNanos ? ", " + escape(connectionSource, nanosName) + " = ?" : "") + " WHERE " + id + " = ?";
+        dao.callBatchTasks(() -> {
+            for (String[] row : rows) {
+                ZonedDateTime zonedDateTime = (ZonedDateTime) ZonedDateTimeType.getSingleton()
+                        .sqlArgToJava(null, row[1], 0);
+                String epoch = String.valueOf(ZonedDateTimeEpochType.toEpoch(zonedDateTime));
+                if (withNanos) {
+                    dao.updateRaw(update, epoch, String.valueOf(ZonedDateTimeEpochType.nanosOf(zonedDateTime)),
+                            row[0]);
+                } else {
+                    dao.updateRaw(update, epoch, row[0]);
+                }
+            }
+            return null;
+        });
+
+        // Drop the old column (SQLite < 3.35 can't: rename it)
+        try {
+            dao.executeRawNoArgs("ALTER TABLE " + table + " DROP COLUMN " + column);
+        } catch (SQLException ex) {
+            log.warn("Can't drop the column {}.{}, renaming to {}{}: {}", tableName, columnName, columnName, LEGACY,
+                    ex.getMessage());
+            dao.executeRawNoArgs("ALTER TABLE " + table + " RENAME COLUMN " + column + " TO "
+                    + escape(connectionSource, columnName + LEGACY));
+        }
+        dao.executeRawNoArgs("ALTER TABLE " + table + " RENAME COLUMN " + temporal + " TO " + column);
+
+        log.debug("Migrated {}.{} to epoch: {} rows in {} ms.", tableName, columnName, rows.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return the name escaped for the database.
+     */
+    private static String escape(ConnectionSource connectionSource, String name) {
+        DatabaseType databaseType = connectionSource.getDatabaseType();
+        StringBuilder sb = new StringBuilder();
+        databaseType.appendEscapedEntityName(sb, name);
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of times (in nanoseconds) with log-linear buckets, like HdrHistogram: each power of two split in
+ * {@link #SUB_BUCKETS} linear buckets (max error: 1/8 of the value). Lock-free and fixed size.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class Histogram {
+
+    /**
+     * The buckets in each power of two (2^3).
+     */
+    private static final int SUB_BUCKETS = 8;
+
+    /**
+     * The bits of the sub bucket.
+     */
+    private static final int SUB_BITS = 3;
+
+    /**
+     * The first power of two (1024 ns ~ 1 us): the smaller ones in the first bucket.
+     */
+    private static final int MIN_EXPONENT = 10;
+
+    /**
+     * The last power of two (2^40 ns ~ 18 minutes): the bigger ones in the last bucket.
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * The number of buckets: the small ones, the log-linear and the big ones.
+     */
+    private static final int BUCKETS = (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS + 2;
+
+    /**
+     * The count by bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of the values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The max value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos to record (the negatives as zero).
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(index(value));
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @param startNanos the {@link System#nanoTime()} at the start.
+     * @return the nanoseconds recorded.
+     */
+    public long recordSince(long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        this.record(nanos);
+        return nanos;
+    }
+
+    /**
+     * @param value in nanoseconds.
+     * @return the bucket of the value.
+     */
+    private static int index(long value) {
+        if (value < 1L << MIN_EXPONENT) {
+            return 0;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub + 1;
+    }
+
+    /**
+     * @param index of the bucket.
+     * @return the max value of the bucket.
+     */
+    private static long upperBound(int index) {
+        if (index == 0) {
+            return (1L << MIN_EXPONENT) - 1;
+        }
+        if (index == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = (index - 1) / SUB_BUCKETS + MIN_EXPONENT;
+        int sub = (index - 1) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1L) << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * @param quantile between 0 and 1 (ej. 0.99).
+     * @return the value (upper bound of the bucket, at most the max) in nanoseconds, 0 if empty.
+     */
+    public long getValueAtQuantile(double quantile) {
+
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("The quantile must be between 0 and 1: " + quantile);
+        }
+
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * @return the number of values.
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the sum of the values, in nanoseconds.
+     */
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * @return the max value, in nanoseconds.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @param nanos to convert.
+     * @return the seconds.
+     */
+    static double toSeconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+}
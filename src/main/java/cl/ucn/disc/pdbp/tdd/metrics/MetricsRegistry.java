@@ -0,0 +1,292 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The metrics of the application, written in the text format of Prometheus (/metrics).
+ * <p>
+ * - The {@link Histogram} as summary (quantiles 0.5, 0.9, 0.99 and 0.999, in seconds).
+ * - The counters ({@link LongAdder} or function) and the gauges (function).
+ * - The labels as pairs: "name", "value", ...
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class MetricsRegistry {
+
+    /**
+     * The registry of the application.
+     */
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    /**
+     * The quantiles of the summaries.
+     */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * The metrics by name (sorted).
+     */
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * @return the registry of the application.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param name   of the metric (ej. http_request_seconds).
+     * @param help   of the metric.
+     * @param labels the pairs name, value.
+     * @return the Histogram (the same for the same name and labels).
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) this.family(name, help, Type.SUMMARY).metrics
+                .computeIfAbsent(labels(labels), key -> new Histogram());
+    }
+
+    /**
+     * @param name      of the metric.
+     * @param help      of the metric.
+     * @param histogram to register (created by other).
+     * @param labels    the pairs name, value.
+     */
+    public void register(String name, String help, Histogram histogram, String... labels) {
+        this.family(name, help, Type.SUMMARY).metrics.put(labels(labels), histogram);
+    }
+
+    /**
+     * @param name   of the metric (ej. http_requests_total).
+     * @param help   of the metric.
+     * @param labels the pairs name, value.
+     * @return the counter (the same for the same name and labels).
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) this.family(name, help, Type.COUNTER).metrics
+                .computeIfAbsent(labels(labels), key -> new LongAdder());
+    }
+
+    /**
+     * @param name   of the metric.
+     * @param help   of the metric.
+     * @param value  the function that count (ej. the checkouts of the pool).
+     * @param labels the pairs name, value.
+     */
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        this.family(name, help, Type.COUNTER).metrics.put(labels(labels), value);
+    }
+
+    /**
+     * @param name   of the metric.
+     * @param help   of the metric.
+     * @param value  the function of the current value.
+     * @param labels the pairs name, value.
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        this.family(name, help, Type.GAUGE).metrics.put(labels(labels), value);
+    }
+
+    /**
+     * @param name of the metric.
+     * @param help of the metric.
+     * @param type of the metric.
+     * @return the family of the metric.
+     */
+    private Family family(String name, String help, Type type) {
+
+        // Nullity test
+        if (name == null || help == null) {
+            throw new IllegalArgumentException("Can't register a metric without name or help");
+        }
+
+        Family family = this.families.computeIfAbsent(name, key -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("The metric " + name + " is a " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * @param pairs name, value, ...
+     * @return the labels in the format of Prometheus: name="value",...
+     */
+    private static String labels(String... pairs) {
+
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("The labels must be pairs of name and value");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(pairs[i]).append("=\"");
+            String value = String.valueOf(pairs[i + 1]);
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write all the metrics in the text format of Prometheus (version 0.0.4).
+     *
+     * @param out to write.
+     * @throws IOException if any problem.
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+
+        for (Map.Entry<String, Family> entry : this.families.entrySet()) {
+
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type.text).append('\n');
+
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                String labels = metric.getKey();
+                Object value = metric.getValue();
+
+                if (value instanceof Histogram) {
+                    Histogram histogram = (Histogram) value;
+                    String prefix = labels.isEmpty() ? "" : labels + ",";
+                    for (double quantile : QUANTILES) {
+                        sample(out, name, prefix + "quantile=\"" + quantile + "\"",
+                                Histogram.toSeconds(histogram.getValueAtQuantile(quantile)));
+                    }
+                    sample(out, name + "_sum", labels, Histogram.toSeconds(histogram.getSum()));
+                    sample(out, name + "_count", labels, histogram.getCount());
+                } else if (value instanceof LongAdder) {
+                    sample(out, name, labels, ((LongAdder) value).sum());
+                } else {
+                    sample(out, name, labels, ((DoubleSupplier) value).getAsDouble());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param out    to write.
+     * @param name   of the sample.
+     * @param labels of the sample.
+     * @param value  of the sample.
+     * @throws IOException if any problem.
+     */
+    private static void sample(Appendable out, String name, String labels, double value) throws IOException {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append(Long.toString((long) value));
+        } else {
+            out.append(Double.toString(value));
+        }
+        out.append('\n');
+    }
+
+    /**
+     * The type of metric.
+     */
+    private enum Type {
+
+        /**
+         * The Histogram (quantiles, sum and count).
+         */
+        SUMMARY("summary"),
+
+        /**
+         * Only up.
+         */
+        COUNTER("counter"),
+
+        /**
+         * Up and down.
+         */
+        GAUGE("gauge");
+
+        /**
+         * The name in Prometheus.
+         */
+        private final String text;
+
+        /**
+         * @param text the name in Prometheus.
+         */
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * The metrics with the same name.
+     */
+    private static final class Family {
+
+        /**
+         * The help.
+         */
+        private final String help;
+
+        /**
+         * The type.
+         */
+        private final Type type;
+
+        /**
+         * The labels -> Histogram, LongAdder or DoubleSupplier.
+         */
+        private final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+        /**
+         * @param help of the metric.
+         * @param type of the metric.
+         */
+        private Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+}
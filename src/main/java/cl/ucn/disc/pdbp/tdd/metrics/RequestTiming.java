@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The phases of one request: the time in the database and the time writing the response (serialize). The
+ * repositories add the database time to the RequestTiming of the current thread (bound by the http layer and by the
+ * executor of the async Contratos).
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class RequestTiming {
+
+    /**
+     * The RequestTiming of each thread.
+     */
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The start of the request.
+     */
+    private final long start = System.nanoTime();
+
+    /**
+     * The time in the database.
+     */
+    private final LongAdder dbNanos = new LongAdder();
+
+    /**
+     * The time writing the response.
+     */
+    private final LongAdder serializeNanos = new LongAdder();
+
+    /**
+     * @return the new RequestTiming, bound to the current thread.
+     */
+    public static RequestTiming begin() {
+        RequestTiming timing = new RequestTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /**
+     * @return the RequestTiming of the current thread (can be null).
+     */
+    public static RequestTiming current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param timing to bind to the current thread (null to unbind).
+     */
+    public static void bind(RequestTiming timing) {
+        if (timing == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timing);
+        }
+    }
+
+    /**
+     * @param nanos in the database, added to the RequestTiming of the current thread (if any).
+     */
+    public static void addDb(long nanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.dbNanos.add(nanos);
+        }
+    }
+
+    /**
+     * @param nanos writing the response.
+     */
+    public void addSerialize(long nanos) {
+        this.serializeNanos.add(nanos);
+    }
+
+    /**
+     * @return the time in the database.
+     */
+    public long getDbNanos() {
+        return this.dbNanos.sum();
+    }
+
+    /**
+     * @return the time writing the response.
+     */
+    public long getSerializeNanos() {
+        return this.serializeNanos.sum();
+    }
+
+    /**
+     * @return the time since the start of the request.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - this.start;
+    }
+
+    /**
+     * @return the value of the Server-Timing header: db, serialize and total, in milliseconds.
+     */
+    public String toServerTiming() {
+        return "db;dur=" + millis(this.getDbNanos())
+                + ", serialize;dur=" + millis(this.getSerializeNanos())
+                + ", total;dur=" + millis(this.getElapsedNanos());
+    }
+
+    /**
+     * @param nanos to convert.
+     * @return the milliseconds with 3 decimals.
+     */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+}
@@ -24,7 +24,7 @@
 
 package cl.ucn.disc.pdbp.tdd.model;
 
-import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeType;
+import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeEpochType;
 import com.j256.ormlite.field.DatabaseField;
 
 import java.time.ZonedDateTime;
@@ -43,17 +43,30 @@ public final class Control {
     private Long id;
 
     /**
-     * The fecha of Control.
+     * The fecha of Control (indexed: the ranges of history).
      */
-    @DatabaseField(persisterClass = ZonedDateTimeType.class)
+    @DatabaseField(persisterClass = ZonedDateTimeEpochType.class, index = true)
     private ZonedDateTime fecha;
 
     /**
-     * The fecha of next Control.
+     * The column with the nanoseconds of fecha under the microsecond (mapped with the get and set of fecha).
      */
-    @DatabaseField(persisterClass = ZonedDateTimeType.class)
+    @DatabaseField(useGetSet = true, defaultValue = "0")
+    private transient int fechaNanos;
+
+    /**
+     * The fecha of next Control (indexed: the reminders).
+     */
+    @DatabaseField(persisterClass = ZonedDateTimeEpochType.class, index = true)
     private ZonedDateTime fechaProximoControl;
 
+    /**
+     * The column with the nanoseconds of fechaProximoControl under the microsecond (mapped with the get and set of
+     * fechaProximoControl).
+     */
+    @DatabaseField(useGetSet = true, defaultValue = "0")
+    private transient int fechaProximoControlNanos;
+
     /**
      * The temperatura (Celsius).
      * Min: 20.
@@ -88,7 +101,7 @@ public final class Control {
      * The Veterinario.
      * Nota: Enlace many to one con veterinario.
      */
-    @DatabaseField(foreign = true, canBeNull = false, foreignAutoRefresh = true)
+    @DatabaseField(foreign = true, canBeNull = false, foreignAutoRefresh = true, index = true)
     private Persona veterinario;
 
     /**
@@ -155,6 +168,36 @@ public final class Control {
         return fechaProximoControl;
     }
 
+    /**
+     * @return the nanoseconds of fecha under the microsecond (the database).
+     */
+    public int getFechaNanos() {
+        return ZonedDateTimeEpochType.nanosOf(this.fecha);
+    }
+
+    /**
+     * @param fechaNanos the nanoseconds of fecha under the microsecond (the database, after fecha).
+     */
+    public void setFechaNanos(int fechaNanos) {
+        this.fecha = ZonedDateTimeEpochType.withNanos(this.fecha, fechaNanos);
+    }
+
+    /**
+     * @return the nanoseconds of fechaProximoControl under the microsecond (the database).
+     */
+    public int getFechaProximoControlNanos() {
+        return ZonedDateTimeEpochType.nanosOf(this.fechaProximoControl);
+    }
+
+    /**
+     * @param fechaProximoControlNanos the nanoseconds of fechaProximoControl under the microsecond (the database,
+     *                                 after fechaProximoControl).
+     */
+    public void setFechaProximoControlNanos(int fechaProximoControlNanos) {
+        this.fechaProximoControl = ZonedDateTimeEpochType.withNanos(this.fechaProximoControl,
+                fechaProximoControlNanos);
+    }
+
     /**
      * @return the temperatura.
      */
@@ -105,11 +105,16 @@ public final class Ficha {
     private Persona duenio;
 
     /**
-     * The List of Control.
+     * The List of Control: the most recent first, lazy (loaded on first access or with Fetch.BATCH).
      */
-    @ForeignCollectionField(eager = true)
+    @ForeignCollectionField(eager = false, orderColumnName = "fecha", orderAscending = false)
     private ForeignCollection<Control> controles;
 
+    /**
+     * The controles loaded (on first access of {@link #getControles()}, until {@link #reloadControles()}).
+     */
+    private transient List<Control> controlesLoaded;
+
     /**
      * Empty constructor.
      */
@@ -222,10 +227,23 @@ public final class Ficha {
     }
 
     /**
-     * @return the List of Controles.
+     * @return the List of Controles, the most recent first (loaded on first access).
      */
     public List<Control> getControles() {
-        return Collections.unmodifiableList(new ArrayList<>(controles));
+        if (this.controlesLoaded == null) {
+            this.controlesLoaded = this.controles == null
+                    ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(this.controles));
+        }
+        return this.controlesLoaded;
+    }
+
+    /**
+     * The Controles loaded again on the next access of {@link #getControles()}, with the ones added after the first
+     * access (the lazy ones are read again, the ones loaded with Fetch.BATCH are the ones read with the ficha).
+     */
+    public void reloadControles() {
+        this.controlesLoaded = null;
     }
 
 }
@@ -52,7 +52,7 @@ public final class Persona {
     /**
      * The Rut.
      */
-    @DatabaseField(canBeNull = false, unique = true, index = true)
+    @DatabaseField(canBeNull = false, unique = true)
     private String rut;
 
     /**
@@ -123,11 +123,12 @@ public final class Persona {
             throw new NullPointerException("Nombre, apellido and rut cannot be null");
         }
 
-        // RUT valid.
-        if (!Validation.isRutValid(rut)) {
+        // RUT valid (and canonical: 15.253.287-3 -> 152532873).
+        String canonical = Validation.normalizeRut(rut);
+        if (canonical == null) {
             throw new RuntimeException("RUT should be valid");
         }
-        this.rut = rut;
+        this.rut = canonical;
 
         // Size of nombre
         if (nombre.length() < 2) {
@@ -0,0 +1,275 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.search;
+
+import cl.ucn.disc.pdbp.tdd.dao.Repository;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryListener;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.j256.ormlite.dao.GenericRawResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The search index of {@link Ficha}: numero, nombrePaciente, rut and nombre of the duenio.
+ * <p>
+ * Kept in sync listening the writes of the {@link Repository} of Ficha and Persona.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class FichaSearchIndex {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FichaSearchIndex.class);
+
+    /**
+     * The fields: numero (exact), rut, nombrePaciente, nombre duenio.
+     */
+    private static final int[] WEIGHTS = {8, 4, 2, 1};
+
+    /**
+     * Only the numero need to be equals.
+     */
+    private static final boolean[] EXACTS = {true, false, false, false};
+
+    /**
+     * The index of n-grams.
+     */
+    private final NGramIndex<Long> index = new NGramIndex<>(WEIGHTS, EXACTS);
+
+    /**
+     * The id of Ficha -> numero, nombrePaciente.
+     */
+    private final Map<Long, String[]> fichas = new HashMap<>();
+
+    /**
+     * The id of Ficha -> id of the duenio.
+     */
+    private final Map<Long, Long> duenios = new HashMap<>();
+
+    /**
+     * The id of Persona -> rut, nombre.
+     */
+    private final Map<Long, String[]> personas = new HashMap<>();
+
+    /**
+     * The id of Persona -> ids of the Fichas.
+     */
+    private final Map<Long, Set<Long>> fichasByDuenio = new HashMap<>();
+
+    /**
+     * The Constructor.
+     */
+    public FichaSearchIndex() {
+        // Nothing here
+    }
+
+    /**
+     * Build the index from the backend (without hydrate the Fichas) and listen the writes of the repositories.
+     *
+     * @param repoFicha   to index.
+     * @param repoPersona to index.
+     * @return the index.
+     */
+    public static FichaSearchIndex build(Repository<Ficha, Long> repoFicha, Repository<Persona, Long> repoPersona) {
+
+        FichaSearchIndex searchIndex = new FichaSearchIndex();
+
+        // The Personas: id, rut, nombre
+        try (GenericRawResults<String[]> rows = repoPersona.getQuery()
+                .selectColumns("id", "rut", "nombre")
+                .queryRaw()) {
+            for (String[] row : rows) {
+                searchIndex.putPersona(Long.valueOf(row[0]), row[1], row[2]);
+            }
+        } catch (SQLException | IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        // The Fichas: id, numero, nombrePaciente, duenio
+        try (GenericRawResults<String[]> rows = repoFicha.getQuery()
+                .selectColumns("id", "numero", "nombrePaciente", "duenio_id")
+                .queryRaw()) {
+            for (String[] row : rows) {
+                searchIndex.putFicha(Long.valueOf(row[0]), row[1], row[2], row[3] == null ? null : Long.valueOf(row[3]));
+            }
+        } catch (SQLException | IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        log.debug("Indexed {} fichas.", searchIndex.size());
+        return searchIndex;
+    }
+
+    /**
+     * @param query to search.
+     * @return the ids of the Fichas, the most relevant first.
+     */
+    public List<Long> search(String query) {
+        return index.search(query);
+    }
+
+    /**
+     * @return the number of Fichas indexed.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the listener to keep the index in sync with the writes of Ficha.
+     */
+    public RepositoryListener<Ficha, Long> fichaListener() {
+        return new RepositoryListener<Ficha, Long>() {
+
+            @Override
+            public void onCreate(Ficha ficha) {
+                this.onUpdate(ficha);
+            }
+
+            @Override
+            public void onUpdate(Ficha ficha) {
+                Persona duenio = ficha.getDuenio();
+                if (duenio != null && duenio.getRut() != null) {
+                    putPersona(duenio.getId(), duenio.getRut(), duenio.getNombre());
+                }
+                putFicha(ficha.getId(),
+                        ficha.getNumero() == null ? null : String.valueOf(ficha.getNumero()),
+                        ficha.getNombrePaciente(),
+                        duenio == null ? null : duenio.getId());
+            }
+
+            @Override
+            public void onDelete(Long id) {
+                removeFicha(id);
+            }
+        };
+    }
+
+    /**
+     * @return the listener to keep the index in sync with the writes of Persona.
+     */
+    public RepositoryListener<Persona, Long> personaListener() {
+        return new RepositoryListener<Persona, Long>() {
+
+            @Override
+            public void onCreate(Persona persona) {
+                this.onUpdate(persona);
+            }
+
+            @Override
+            public void onUpdate(Persona persona) {
+                putPersona(persona.getId(), persona.getRut(), persona.getNombre());
+            }
+
+            @Override
+            public void onDelete(Long id) {
+                removePersona(id);
+            }
+        };
+    }
+
+    /**
+     * Insert or replace a Ficha.
+     */
+    synchronized void putFicha(Long id, String numero, String nombrePaciente, Long idDuenio) {
+
+        // Unlink the previous duenio
+        Long previous = duenios.remove(id);
+        if (previous != null) {
+            Set<Long> ids = fichasByDuenio.get(previous);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+
+        fichas.put(id, new String[]{numero, nombrePaciente});
+        if (idDuenio != null) {
+            duenios.put(id, idDuenio);
+            fichasByDuenio.computeIfAbsent(idDuenio, k -> new HashSet<>()).add(id);
+        }
+        reindex(id);
+    }
+
+    /**
+     * Remove a Ficha.
+     */
+    synchronized void removeFicha(Long id) {
+        fichas.remove(id);
+        Long idDuenio = duenios.remove(id);
+        if (idDuenio != null) {
+            Set<Long> ids = fichasByDuenio.get(idDuenio);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+        index.remove(id);
+    }
+
+    /**
+     * Insert or replace a Persona, updating the Fichas of the duenio.
+     */
+    synchronized void putPersona(Long id, String rut, String nombre) {
+        personas.put(id, new String[]{rut, nombre});
+        for (Long idFicha : fichasByDuenio.getOrDefault(id, new HashSet<>())) {
+            reindex(idFicha);
+        }
+    }
+
+    /**
+     * Remove a Persona, updating the Fichas of the duenio.
+     */
+    synchronized void removePersona(Long id) {
+        personas.remove(id);
+        for (Long idFicha : fichasByDuenio.getOrDefault(id, new HashSet<>())) {
+            reindex(idFicha);
+        }
+    }
+
+    /**
+     * @param idFicha to put in the index of n-grams.
+     */
+    private void reindex(Long idFicha) {
+        String[] ficha = fichas.get(idFicha);
+        Long idDuenio = duenios.get(idFicha);
+        String[] persona = idDuenio == null ? null : personas.get(idDuenio);
+        index.put(idFicha,
+                ficha[0],
+                persona == null ? null : persona[0],
+                ficha[1],
+                persona == null ? null : persona[1]);
+    }
+
+}
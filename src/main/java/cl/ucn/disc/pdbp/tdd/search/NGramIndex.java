@@ -0,0 +1,293 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In memory inverted index of n-grams (trigrams).
+ * <p>
+ * - Each document has a fixed number of fields, each field with a weight.
+ * - A field matches if contains the query (or is equals to the query, if the field is exact).
+ * - The score of a document is the sum of the weights of the matched fields.
+ *
+ * @param <K> the type of id of the documents.
+ * @author Diego Urrutia-Astorga.
+ */
+public final class NGramIndex<K extends Comparable<K>> {
+
+    /**
+     * Size of the n-gram.
+     */
+    private static final int N = 3;
+
+    /**
+     * The diacritical marks (á -> a).
+     */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /**
+     * The weights of each field.
+     */
+    private final int[] weights;
+
+    /**
+     * True if the field need to be equals to the query.
+     */
+    private final boolean[] exacts;
+
+    /**
+     * The n-gram -> ids of the documents.
+     */
+    private final Map<String, Set<K>> postings = new HashMap<>();
+
+    /**
+     * The id -> normalized fields of the document.
+     */
+    private final Map<K, String[]> documents = new HashMap<>();
+
+    /**
+     * Many readers, one writer.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The Constructor.
+     *
+     * @param weights of each field (greater than zero).
+     * @param exacts  true if the field must be equals to the query.
+     */
+    public NGramIndex(int[] weights, boolean[] exacts) {
+
+        // Nullity test
+        if (weights == null || exacts == null || weights.length != exacts.length) {
+            throw new IllegalArgumentException("Weights and exacts need to have the same size");
+        }
+
+        this.weights = weights.clone();
+        this.exacts = exacts.clone();
+    }
+
+    /**
+     * @param text to normalize.
+     * @return the text in lower case, without accents and trimmed ("" if null).
+     */
+    public static String normalize(String text) {
+
+        if (text == null) {
+            return "";
+        }
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT).trim();
+    }
+
+    /**
+     * Insert or replace a document.
+     *
+     * @param id     of the document.
+     * @param fields of the document (one value for each weight).
+     */
+    public void put(K id, String... fields) {
+
+        // Nullity test
+        if (id == null || fields == null || fields.length != weights.length) {
+            throw new IllegalArgumentException("Can't index without id or with wrong number of fields");
+        }
+
+        String[] normalized = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            normalized[i] = normalize(fields[i]);
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+            documents.put(id, normalized);
+            for (String gram : grams(normalized)) {
+                postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id of the document to remove.
+     */
+    public void remove(K id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all the documents.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of documents.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query to search.
+     * @return the ids of the documents, sorted by score (greater first) and then by id.
+     */
+    public List<K> search(String query) {
+
+        String q = normalize(query);
+
+        lock.readLock().lock();
+        try {
+
+            // The candidates: intersection of the postings of each n-gram of the query
+            Set<K> candidates = q.length() < N ? documents.keySet() : candidates(q);
+
+            // Score and verify each candidate
+            Map<K, Integer> scores = new HashMap<>();
+            for (K id : candidates) {
+                int score = score(documents.get(id), q);
+                if (score > 0) {
+                    scores.put(id, score);
+                }
+            }
+
+            List<K> ids = new ArrayList<>(scores.keySet());
+            ids.sort((a, b) -> {
+                int cmp = Integer.compare(scores.get(b), scores.get(a));
+                return cmp != 0 ? cmp : a.compareTo(b);
+            });
+            return ids;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param q the normalized query (length >= N).
+     * @return the ids of the documents with all the n-grams of q.
+     */
+    private Set<K> candidates(String q) {
+
+        // The postings of each gram, the smallest first
+        List<Set<K>> sets = new ArrayList<>();
+        for (int i = 0; i + N <= q.length(); i++) {
+            Set<K> ids = postings.get(q.substring(i, i + N));
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            sets.add(ids);
+        }
+        sets.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        Set<K> candidates = new HashSet<>(sets.get(0));
+        for (int i = 1; i < sets.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(sets.get(i));
+        }
+        return candidates;
+    }
+
+    /**
+     * @param fields of the document.
+     * @param q      the normalized query.
+     * @return the sum of the weights of the fields matched.
+     */
+    private int score(String[] fields, String q) {
+        int score = 0;
+        for (int i = 0; i < fields.length; i++) {
+            boolean match = exacts[i] ? fields[i].equals(q) : fields[i].contains(q);
+            if (match) {
+                score += weights[i];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @param id of the document to remove (the write lock must be taken).
+     */
+    private void removeUnlocked(K id) {
+        String[] fields = documents.remove(id);
+        if (fields == null) {
+            return;
+        }
+        for (String gram : grams(fields)) {
+            Set<K> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param fields normalized.
+     * @return the n-grams of all the fields.
+     */
+    private static Set<String> grams(String[] fields) {
+        Set<String> grams = new HashSet<>();
+        for (String field : fields) {
+            for (int i = 0; i + N <= field.length(); i++) {
+                grams.add(field.substring(i, i + N));
+            }
+        }
+        return grams;
+    }
+
+}
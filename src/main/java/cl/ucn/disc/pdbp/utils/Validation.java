@@ -24,6 +24,7 @@
 
 package cl.ucn.disc.pdbp.utils;
 
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -66,48 +67,126 @@ public final class Validation {
     }
 
     /**
-     * @param rut to validate.
+     * The value of an invalid rut.
+     */
+    public static final long RUT_INVALID = -1L;
+
+    /**
+     * The max number of digits of the body of a rut (fits in a long).
+     */
+    private static final int RUT_MAX_DIGITS = 18;
+
+    /**
+     * @param rut to validate (152532873, 15253287-3 or 15.253.287-3).
      * @return true is rut is valid.
      */
-    @SuppressWarnings("MethodWithMultipleReturnPoints")
-    public static boolean isRutValid(String rut) {
+    public static boolean isRutValid(CharSequence rut) {
+        return parseRut(rut) != RUT_INVALID;
+    }
+
+    /**
+     * Single pass and without allocations: the digits with optional dots between them, an optional hyphen and
+     * the check digit (0-9, k or K).
+     *
+     * @param rut to parse.
+     * @return the body of the rut (without the check digit) or {@link #RUT_INVALID}.
+     */
+    @SuppressWarnings({"MethodWithMultipleReturnPoints", "OverlyComplexMethod"})
+    public static long parseRut(CharSequence rut) {
 
         // Not null
         if (rut == null) {
-            return false;
+            return RUT_INVALID;
         }
 
         // Wrong size
-        if (rut.length() < 2) {
-            return false;
+        int length = rut.length();
+        if (length < 2) {
+            return RUT_INVALID;
         }
 
-        // Last char
-        char dv = rut.charAt(rut.length() - 1);
+        // Last char: the check digit
+        char dv = rut.charAt(length - 1);
+        if (dv == 'k') {
+            dv = 'K';
+        }
+        if ((dv < '0' || dv > '9') && dv != 'K') {
+            return RUT_INVALID;
+        }
 
-        // Only numbers
-        String numbers = rut.substring(0, rut.length() - 1);
-        if (!Pattern.matches("[0-9]+", numbers)) {
-            return false;
+        // The optional hyphen
+        int end = length - 1;
+        if (rut.charAt(end - 1) == '-') {
+            end--;
+        }
+
+        // Only numbers (and dots between them)
+        long body = 0;
+        int digits = 0;
+        for (int i = 0; i < end; i++) {
+            char c = rut.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > RUT_MAX_DIGITS) {
+                    return RUT_INVALID;
+                }
+                body = body * 10 + (c - '0');
+            } else if (c != '.' || i == 0 || i == end - 1 || rut.charAt(i - 1) == '.') {
+                return RUT_INVALID;
+            }
+        }
+        if (digits == 0) {
+            return RUT_INVALID;
         }
 
         // The validation
-        return validarRut(Integer.parseInt(numbers), dv);
+        return rutCheckDigit(body) == dv ? body : RUT_INVALID;
 
     }
 
     /**
      * http://www.creations.cl/2009/01/generador-de-rut-y-validador/
      *
-     * @return true is rut is valid.
+     * @param body of the rut.
+     * @return the check digit (0-9 or K).
      */
-    @SuppressWarnings({"ValueOfIncrementOrDecrementUsed", "BooleanMethodNameMustStartWithQuestion", "OverlyComplexArithmeticExpression", "AssignmentToMethodParameter", "ForLoopWithMissingComponent", "StandardVariableNames"})
-    private static boolean validarRut(int rut, char dv) {
+    @SuppressWarnings({"ValueOfIncrementOrDecrementUsed", "AssignmentToMethodParameter", "ForLoopWithMissingComponent", "StandardVariableNames"})
+    public static char rutCheckDigit(long body) {
         int m = 0, s = 1;
-        for (; rut != 0; rut /= 10) {
-            s = (s + rut % 10 * (9 - m++ % 6)) % 11;
+        for (; body != 0; body /= 10) {
+            s = (int) ((s + body % 10 * (9 - m++ % 6)) % 11);
+        }
+        return (char) (s != 0 ? s + 47 : 75);
+    }
+
+    /**
+     * @param rut to normalize (15.253.287-3 or 15253287-3).
+     * @return the canonical rut (152532873) or null if the rut is not valid.
+     */
+    public static String normalizeRut(CharSequence rut) {
+        long body = parseRut(rut);
+        if (body == RUT_INVALID) {
+            return null;
+        }
+        return String.valueOf(body) + rutCheckDigit(body);
+    }
+
+    /**
+     * Validation in bulk (the import files): one allocation, the array of results.
+     *
+     * @param ruts to parse.
+     * @return the bodies of the ruts, in the same order ({@link #RUT_INVALID} if the rut is not valid).
+     */
+    public static long[] parseRuts(List<? extends CharSequence> ruts) {
+        // Nullity test
+        if (ruts == null) {
+            throw new IllegalArgumentException("Ruts was null");
+        }
+        long[] bodies = new long[ruts.size()];
+        int i = 0;
+        for (CharSequence rut : ruts) {
+            bodies[i++] = parseRut(rut);
         }
-        return dv == (char) (s != 0 ? s + 47 : 75);
+        return bodies;
     }
 
 }
@@ -24,15 +24,45 @@
 
 package cl.ucn.disc.pdbp.tdd;
 
+import cl.ucn.disc.pdbp.tdd.dao.Repository;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.model.Control;
 import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.model.Sexo;
+import cl.ucn.disc.pdbp.tdd.model.Tipo;
+import cl.ucn.disc.pdbp.tdd.search.SearchMode;
 import cl.ucn.disc.pdbp.utils.Entity;
+import cl.ucn.disc.pdbp.utils.Validation;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  *
@@ -61,4 +91,411 @@ public class TestContratos {
 
     }
 
+    /**
+     * The index and the sql search need to return the same fichas.
+     */
+    @Test
+    public void testBuscarFichasSearchMode() throws SQLException, IOException {
+
+        // The database (shared between connections)
+        String databaseUrl = "jdbc:h2:mem:buscarFichas;DB_CLOSE_DELAY=-1";
+
+        // The data
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            TableUtils.createTableIfNotExists(connectionSource, Control.class);
+
+            Repository<Persona, Long> repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            Repository<Ficha, Long> repoFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+
+            Persona diego = new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl");
+            Persona andrea = new Persona("Andrea", "Contreras", "152532873", "acontreras@ucn.cl");
+            repoPersona.create(diego);
+            repoPersona.create(andrea);
+
+            repoFicha.create(new Ficha(123, "Firulais", "Canino", ZonedDateTime.now(), "Rottweiler",
+                    Sexo.MACHO, "Negro", Tipo.INTERNO, diego));
+            repoFicha.create(new Ficha(130, "Andrea Jr", "Felino", ZonedDateTime.now(), "Angora",
+                    Sexo.HEMBRA, "Blanco", Tipo.EXTERNO, andrea));
+            repoFicha.create(new Ficha(456, "Michi", "Felino", ZonedDateTime.now(), "Angora",
+                    Sexo.HEMBRA, "Gris", Tipo.INTERNO, andrea));
+        }
+
+        ContratosImpl contratos = new ContratosImpl(databaseUrl);
+        for (String query : new String[]{"123", "130", "Andrea", "Firu", "2532", "456", "zzz"}) {
+
+            List<Long> index = ids(contratos.buscarFicha(query, SearchMode.INDEX));
+            List<Long> sql = ids(contratos.buscarFicha(query, SearchMode.SQL));
+            log.debug("Query: <{}>, index: {}, sql: {}.", query, index, sql);
+
+            // Same fichas, without duplicates
+            Assertions.assertEquals(new HashSet<>(sql), new HashSet<>(index), "Index != SQL with " + query);
+            Assertions.assertEquals(sql.size(), new HashSet<>(sql).size(), "Duplicated with " + query);
+        }
+
+        // "Andrea" matches the nombre of the paciente and the nombre of the duenio
+        Assertions.assertEquals(2, contratos.buscarFicha("Andrea", SearchMode.SQL).size(), "Size != 2");
+
+    }
+
+    /**
+     * The controles by range of fechas.
+     */
+    @Test
+    public void testControles() throws SQLException, IOException {
+
+        // The database (shared between connections)
+        String databaseUrl = "jdbc:h2:mem:controles;DB_CLOSE_DELAY=-1";
+
+        // The first day: 10 controles (one per day, the next control in a week)
+        ZonedDateTime start = ZonedDateTime.of(2020, 6, 1, 10, 0, 0, 0, ZoneId.of("America/Santiago"));
+        Ficha firulais;
+        Persona diego;
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            TableUtils.createTableIfNotExists(connectionSource, Control.class);
+
+            Repository<Persona, Long> repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            Repository<Ficha, Long> repoFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+            Repository<Control, Long> repoControl = new RepositoryOrmLite<>(connectionSource, Control.class);
+
+            diego = new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl");
+            Persona andrea = new Persona("Andrea", "Contreras", "152532873", "acontreras@ucn.cl");
+            repoPersona.create(diego);
+            repoPersona.create(andrea);
+
+            firulais = new Ficha(123, "Firulais", "Canino", start, "Rottweiler",
+                    Sexo.MACHO, "Negro", Tipo.INTERNO, diego);
+            Ficha michi = new Ficha(456, "Michi", "Felino", start, "Angora",
+                    Sexo.HEMBRA, "Gris", Tipo.INTERNO, andrea);
+            repoFicha.create(firulais);
+            repoFicha.create(michi);
+
+            for (int i = 0; i < 10; i++) {
+                repoControl.create(new Control(start.plusDays(i), start.plusDays(i + 7), 38.5f, 10, 50,
+                        "Control " + i, i % 2 == 0 ? diego : andrea, i < 6 ? firulais : michi));
+            }
+        }
+
+        Contratos contratos = new ContratosImpl(databaseUrl);
+
+        // Without range
+        Assertions.assertThrows(IllegalArgumentException.class, () -> contratos.getControles(null, start));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> contratos.getControlesFicha(null, start, start));
+
+        // [day 2, day 5): 3 controles, sorted, with the relations (the same instant in other zone)
+        try (Stream<Control> controles = contratos.getControles(
+                start.plusDays(2).withZoneSameInstant(ZoneOffset.UTC), start.plusDays(5))) {
+            List<Control> list = controles.collect(Collectors.toList());
+            Assertions.assertEquals(3, list.size(), "Size != 3");
+            Assertions.assertEquals("Control 2", list.get(0).getDiagnostico(), "First != Control 2");
+            Assertions.assertEquals("Control 4", list.get(2).getDiagnostico(), "Last != Control 4");
+            Assertions.assertNotNull(list.get(0).getVeterinario().getNombre(), "Veterinario not loaded");
+            Assertions.assertNotNull(list.get(0).getFicha().getNombrePaciente(), "Ficha not loaded");
+        }
+
+        // The ficha: Firulais has 0..5, in the range 4..5
+        try (Stream<Control> controles = contratos.getControlesFicha(firulais.getId(), start.plusDays(4),
+                start.plusDays(30))) {
+            Assertions.assertEquals(2, controles.count(), "Controles of Firulais != 2");
+        }
+
+        // The veterinario: diego has 0, 2, 4, 6, 8
+        try (Stream<Control> controles = contratos.getControlesVeterinario(diego.getId(), start, start.plusDays(10))) {
+            Assertions.assertEquals(5, controles.count(), "Controles of Diego != 5");
+        }
+
+        // The reminders of the next week (day 10 to 17): controles 3..9
+        try (Stream<Control> controles = contratos.getProximosControles(start.plusDays(10), start.plusDays(17))) {
+            Assertions.assertEquals(7, controles.count(), "Proximos != 7");
+        }
+
+        // The pages of Firulais: the most recent first
+        List<Control> page = contratos.getControlesFicha(firulais.getId(), 0, 4);
+        Assertions.assertEquals(4, page.size(), "Page size != 4");
+        Assertions.assertEquals("Control 5", page.get(0).getDiagnostico(), "First != Control 5");
+        page = contratos.getControlesFicha(firulais.getId(), 4, 4);
+        Assertions.assertEquals(2, page.size(), "Last page size != 2");
+        Assertions.assertEquals("Control 0", page.get(1).getDiagnostico(), "Last != Control 0");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> contratos.getControlesFicha(firulais.getId(), 0, 0));
+
+        // The aggregates
+        Assertions.assertEquals(6, contratos.controlCount(firulais.getId()), "Count != 6");
+        Assertions.assertEquals("Control 5", contratos.latestControl(firulais.getId()).getDiagnostico(),
+                "Latest != Control 5");
+        Assertions.assertEquals(0, contratos.controlCount(-1L), "Count != 0");
+        Assertions.assertNull(contratos.latestControl(-1L), "Latest not null");
+
+    }
+
+    /**
+     * The ruts saved before the canonical form: normalized by the schema, found by any form.
+     */
+    @Test
+    public void testNormalizeRuts() throws SQLException, IOException {
+
+        // The database (shared between connections)
+        String databaseUrl = "jdbc:h2:mem:ruts;DB_CLOSE_DELAY=-1";
+
+        // The legacy ruts: dots, lowercase k, leading zeros, twice the same persona and not valid
+        String insert = "INSERT INTO persona (rut, nombre, apellido, email) VALUES (?, ?, ?, ?)";
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            Dao<Persona, Long> dao = DaoManager.createDao(connectionSource, Persona.class);
+            dao.updateRaw(insert, "15.253.287-3", "Andrea", "Contreras", "acontreras@ucn.cl");
+            dao.updateRaw(insert, "20000003-k", "Rene", "Rojas", "rrojas@ucn.cl");
+            dao.updateRaw(insert, "013014491-8", "Diego", "Urrutia", "durrutia@ucn.cl");
+            dao.updateRaw(insert, "15253287-3", "Andrea", "Contreras", "andrea@ucn.cl");
+            dao.updateRaw(insert, "not a rut", "Nadie", "Nadie", "nadie@ucn.cl");
+        }
+
+        ContratosImpl contratos = new ContratosImpl(databaseUrl);
+
+        // Found by any form
+        Assertions.assertEquals("Andrea", contratos.findByRut("15253287-3").getNombre(), "Dots not normalized");
+        Assertions.assertEquals("Rene", contratos.findByRut("20.000.003-K").getNombre(), "k not normalized");
+        Assertions.assertEquals("Diego", contratos.findByRut("13.014.491-8").getNombre(), "Zeros not normalized");
+
+        // The first one keep the canonical rut, the other ones: as is
+        Assertions.assertEquals("acontreras@ucn.cl", contratos.findByRut("152532873").getEmail(), "Not the first");
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+            Repository<Persona, Long> repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            Assertions.assertEquals(1, repoPersona.findAll("rut", "15253287-3").size(), "Duplicated lost");
+            Assertions.assertEquals(1, repoPersona.findAll("rut", "not a rut").size(), "Not valid lost");
+            Assertions.assertEquals(5, repoPersona.findAll().size(), "Size != 5");
+        }
+
+    }
+
+    /**
+     * The async Contratos: the same results, the rejections when full.
+     */
+    @Test
+    public void testAsync() throws Exception {
+
+        ContratosImpl contratos = new ContratosImpl("jdbc:h2:mem:async;DB_CLOSE_DELAY=-1");
+
+        try (AsyncContratosImpl async = new AsyncContratosImpl(contratos, 1, 1)) {
+
+            // The same results
+            Persona persona = async.registrarPersona(new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl"))
+                    .get(10, TimeUnit.SECONDS);
+            Assertions.assertNotNull(persona.getId(), "Id was null");
+            Assertions.assertEquals(persona.getId(), async.findByRut("13.014.491-8").get(10, TimeUnit.SECONDS).getId(),
+                    "Persona != registered");
+            Assertions.assertEquals(0L, async.controlCount(-1L).get(10, TimeUnit.SECONDS), "Count != 0");
+
+            // The errors in the future
+            ExecutionException error = Assertions.assertThrows(ExecutionException.class,
+                    () -> async.getControlesFicha(1L, 0, 0).get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(error.getCause() instanceof IllegalArgumentException, "Cause != IAE");
+
+            // Full: one running + one queued, the third rejected
+            CountDownLatch latch = new CountDownLatch(1);
+            CompletableFuture<Boolean> running = async.submit(c -> await(latch));
+            CompletableFuture<Boolean> queued = async.submit(c -> await(latch));
+            CompletableFuture<Boolean> rejected = async.submit(c -> await(latch));
+            error = Assertions.assertThrows(ExecutionException.class, () -> rejected.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(error.getCause() instanceof RejectedExecutionException, "Cause != REE");
+            Assertions.assertEquals(1, async.getRejected(), "Rejected != 1");
+
+            // Empty again
+            latch.countDown();
+            Assertions.assertTrue(running.get(10, TimeUnit.SECONDS) && queued.get(10, TimeUnit.SECONDS), "Not done");
+            Assertions.assertEquals(1, async.latestControl(-1L).thenApply(c -> 1).exceptionally(ex -> 0)
+                    .get(10, TimeUnit.SECONDS), "Not accepted");
+        }
+
+    }
+
+    /**
+     * The registration of a paciente: one transaction, the duenio by rut, the retries with the same key.
+     */
+    @Test
+    public void testRegistrarPaciente() throws Exception {
+
+        ContratosImpl contratos = new ContratosImpl("jdbc:h2:mem:registrar;DB_CLOSE_DELAY=-1");
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+
+        // The veterinario registered: the same rut again returns it, not updated
+        Persona andrea = contratos.registrarPersona(new Persona("Andrea", "Contreras", "152532873",
+                "acontreras@ucn.cl"));
+        Persona again = contratos.registrarPersona(new Persona("Andrea Paz", "Contreras", "15.253.287-3",
+                "otra@ucn.cl"));
+        Assertions.assertEquals(andrea.getId(), again.getId(), "Veterinario inserted again");
+        Assertions.assertEquals("Andrea", again.getNombre(), "Veterinario updated");
+
+        // The duenio new, the veterinario (other instance, other data) found by rut, with the first control
+        Persona diego = new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl");
+        Persona veterinario = new Persona("Otra", "Persona", "152532873", "otra@ucn.cl");
+        Ficha firulais = new Ficha(123, "Firulais", "Canino", now, "Rottweiler", Sexo.MACHO, "Negro", Tipo.INTERNO,
+                diego);
+        Control control = new Control(now, now.plusDays(7), 38.5f, 10, 50, "Sano", veterinario, firulais);
+        Ficha registered = contratos.registrarPaciente(firulais, Collections.singletonList(control), "key-1");
+        Assertions.assertNotNull(registered.getId(), "Id was null");
+        Assertions.assertEquals(andrea.getId(), veterinario.getId(), "Veterinario not found by rut");
+        Assertions.assertEquals("Andrea", contratos.findByRut("15.253.287-3").getNombre(), "Veterinario updated");
+        Assertions.assertEquals("acontreras@ucn.cl", contratos.findByRut("15.253.287-3").getEmail(),
+                "Veterinario updated");
+        Assertions.assertEquals(1, contratos.controlCount(registered.getId()), "Controles != 1");
+
+        // The retry: the same ficha, nothing new
+        Ficha retry = new Ficha(123, "Firulais", "Canino", now, "Rottweiler", Sexo.MACHO, "Negro", Tipo.INTERNO,
+                new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl"));
+        Assertions.assertEquals(registered.getId(), contratos.registrarPaciente(retry, Collections.emptyList(),
+                "key-1").getId(), "Retry != first");
+        Assertions.assertNull(retry.getId(), "Retry inserted");
+        Assertions.assertEquals(1, contratos.getAllFichas().size(), "Fichas != 1");
+
+        // Other paciente of the same duenio: updated, not inserted
+        Persona other = new Persona("Diego Alfonso", "Urrutia", "13.014.491-8", "durrutia@ucn.cl");
+        Ficha michi = contratos.registrarPaciente(new Ficha(456, "Michi", "Felino", now, "Angora", Sexo.HEMBRA,
+                "Gris", Tipo.INTERNO, other));
+        Assertions.assertEquals(diego.getId(), other.getId(), "Duenio inserted again");
+        Assertions.assertEquals("Diego Alfonso", contratos.findByRut("130144918").getNombre(), "Not updated");
+        Assertions.assertEquals(1, contratos.buscarFicha("Michi").size(), "Not in the index");
+
+        // The controles of the Ficha loaded, again after a Control registered
+        Ficha loaded = contratos.getControlesFicha(registered.getId(), 0, 1).get(0).getFicha();
+        Assertions.assertEquals(1, loaded.getControles().size(), "Controles of Firulais != 1");
+        contratos.registrarControl(new Control(now.plusDays(1), now.plusDays(8), 38.0f, 11, 50, "Sano", andrea,
+                loaded));
+        Assertions.assertEquals(2, loaded.getControles().size(), "Control registered not loaded");
+
+        // The veterinario not registered: nothing is saved (not in the index)
+        Ficha rex = new Ficha(789, "Rex", "Canino", now, "Quiltro", Sexo.MACHO, "Cafe", Tipo.EXTERNO,
+                new Persona("Juan", "Gonzalez", "71234567-5", "juan@ucn.cl"));
+        Control wrong = new Control(now, null, 38.5f, 10, 50, "Sano",
+                new Persona("Pedro", "Gonzalez", "99999999-9", "pedro@ucn.cl"), rex);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> contratos.registrarPaciente(rex, Collections.singletonList(wrong), "key-2"));
+        Assertions.assertNull(contratos.findByRut("71234567-5"), "Duenio not rolled back");
+        Assertions.assertNull(contratos.findByRut("99999999-9"), "Veterinario registered");
+        Assertions.assertEquals(2, contratos.getAllFichas().size(), "Ficha not rolled back");
+        Assertions.assertEquals(0, contratos.buscarFicha("Rex").size(), "Ficha in the index");
+
+        // The controles of other ficha
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> contratos.registrarPaciente(rex, Collections.singletonList(control), null));
+
+        // The same key at the same time: only one ficha
+        List<CompletableFuture<Long>> futures = IntStream.range(0, 8).mapToObj(i -> CompletableFuture.supplyAsync(
+                () -> contratos.registrarPaciente(new Ficha(1000, "Cachupin", "Canino", now, "Poodle", Sexo.MACHO,
+                        "Blanco", Tipo.INTERNO, new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl")),
+                        Collections.emptyList(), "key-3").getId())).collect(Collectors.toList());
+        Set<Long> ids = new HashSet<>();
+        for (CompletableFuture<Long> future : futures) {
+            ids.add(future.get(10, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, ids.size(), "Ids != 1");
+        Assertions.assertEquals(3, contratos.getAllFichas().size(), "Fichas != 3");
+
+        // The same rut from two threads at the same time: one persona, both registered
+        for (int i = 0; i < 20; i++) {
+            String rut = (20000000 + i) + String.valueOf(Validation.rutCheckDigit(20000000 + i));
+            String email = "same" + i + "@ucn.cl";
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<Long>> same = IntStream.range(0, 2).mapToObj(t -> CompletableFuture.supplyAsync(
+                    () -> {
+                        try {
+                            start.await();
+                        } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                        return contratos.registrarPersona(new Persona("Same " + t, "Rut", rut, email)).getId();
+                    })).collect(Collectors.toList());
+            start.countDown();
+            Assertions.assertEquals(same.get(0).get(10, TimeUnit.SECONDS), same.get(1).get(10, TimeUnit.SECONDS),
+                    "Two personas with the same rut");
+        }
+
+        // The wrong arguments are not retried
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> contratos.registrarPaciente(rex, Collections.singletonList(control), "key-4"));
+
+    }
+
+    /**
+     * The cache of responses: hit, stale after a write, ETag.
+     */
+    @Test
+    public void testResponseCache() throws IOException {
+
+        ResponseCache cache = new ResponseCache(2, 16);
+        ContratosImpl contratos = new ContratosImpl("jdbc:h2:mem:cache;DB_CLOSE_DELAY=-1");
+        contratos.addWriteListener(cache::invalidate);
+
+        // Miss, then hit
+        Assertions.assertNull(cache.get("/a"), "Not a miss");
+        long version = cache.getVersion();
+        ResponseCache.Entry entry = new ResponseCache.Entry("[1]".getBytes(StandardCharsets.UTF_8),
+                Collections.singletonMap("X-Next-After", "1"));
+        cache.put("/a", version, entry);
+        Assertions.assertSame(entry, cache.get("/a"), "Not a hit");
+
+        // The same body, the same ETag
+        ResponseCache.Entry same = new ResponseCache.Entry("[1]".getBytes(StandardCharsets.UTF_8),
+                Collections.emptyMap());
+        Assertions.assertEquals(entry.getEtag(), same.getEtag(), "ETag !=");
+        Assertions.assertTrue(ResponseCache.matches("W/\"x\", " + entry.getEtag(), entry.getEtag()), "Not match");
+        Assertions.assertTrue(ResponseCache.matches("*", entry.getEtag()), "Not match *");
+        Assertions.assertFalse(ResponseCache.matches(null, entry.getEtag()), "Match null");
+        Assertions.assertFalse(ResponseCache.matches("\"x\"", entry.getEtag()), "Match other");
+
+        // A write: stale, and the render started before the write is not cached
+        long before = cache.getVersion();
+        contratos.registrarPersona(new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl"));
+        Assertions.assertNull(cache.get("/a"), "Not stale");
+        cache.put("/a", before, entry);
+        Assertions.assertNull(cache.get("/a"), "Cached with old version");
+
+        // Too big
+        cache.put("/big", cache.getVersion(), new ResponseCache.Entry(new byte[17], Collections.emptyMap()));
+        Assertions.assertNull(cache.get("/big"), "Too big cached");
+
+        // The body streamed: all to the client, the copy only while it fits
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        ResponseCache.Capture small = cache.capture(client);
+        small.write("[1,".getBytes(StandardCharsets.UTF_8));
+        small.write(']');
+        Assertions.assertEquals("[1,]", new String(small.toEntry(Collections.emptyMap()).getBody(),
+                StandardCharsets.UTF_8), "Copy !=");
+        ResponseCache.Capture big = cache.capture(client);
+        big.write(new byte[10]);
+        big.write(new byte[10]);
+        big.write(']');
+        Assertions.assertNull(big.toEntry(Collections.emptyMap()), "Too big copied");
+        Assertions.assertEquals(25, client.size(), "Not all written");
+
+        Assertions.assertEquals(1, cache.getHits(), "Hits != 1");
+
+    }
+
+    /**
+     * @param latch to wait.
+     * @return true if the latch was released.
+     */
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @param fichas to use.
+     * @return the ids of the fichas.
+     */
+    private static List<Long> ids(List<Ficha> fichas) {
+        return fichas.stream().map(Ficha::getId).collect(Collectors.toList());
+    }
+
 }
@@ -0,0 +1,320 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.bulk;
+
+import cl.ucn.disc.pdbp.tdd.ContratosImpl;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.utils.Validation;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The Test of the import.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class BulkTest {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BulkTest.class);
+
+    /**
+     * @param body of the rut.
+     * @return the rut with the check digit.
+     */
+    private static String rut(long body) {
+        return body + "-" + Validation.rutCheckDigit(body);
+    }
+
+    /**
+     * The values of the CSV: parse and escape.
+     */
+    @Test
+    public void testCsv() {
+
+        Assertions.assertEquals(Arrays.asList("a", null, "c"), Csv.parse("a,,c"), "Empty != null");
+        Assertions.assertEquals(Arrays.asList("a,b", "say \"hi\"", ""), Csv.parse("\"a,b\",\"say \"\"hi\"\"\",\"\""),
+                "Quoted");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Csv.parse("\"open,b"), "Quote without close");
+
+        // Round trip
+        List<String> values = Arrays.asList("plain", "with,comma", "with \"quotes\"", " spaces ");
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append(Csv.SEPARATOR);
+            }
+            Csv.append(value, sb);
+        }
+        log.debug("Line: {}", sb);
+        Assertions.assertEquals(values, Csv.parse(sb.toString()), "Round trip");
+
+        // The formats
+        Assertions.assertEquals(Format.CSV, Format.fromFileName("personas.csv"));
+        Assertions.assertEquals(Format.JSONL, Format.fromFileName("fichas.jsonl.gz"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Format.fromFileName("fichas.xml"));
+    }
+
+    /**
+     * The import of Personas (CSV), Fichas (JSONL) and Controles (CSV): the valid rows in the database, the rest in
+     * the rejects.
+     */
+    @Test
+    public void testImport() throws IOException, SQLException {
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            ContratosImpl.schema(connectionSource).migrate();
+            RepositoryOrmLite<Persona, Long> repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            RepositoryOrmLite<Ficha, Long> repoFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+            RepositoryOrmLite<Control, Long> repoControl = new RepositoryOrmLite<>(connectionSource, Control.class);
+
+            // One already in the database
+            repoPersona.create(new Persona("Andrea", "Contreras", rut(10000001), "andrea@ucn.cl"));
+
+            // Chunks of 2 rows: the rows of a chunk are the duenios of the next one
+            BulkImporter importer = new BulkImporter(repoPersona, repoFicha, repoControl, 2);
+
+            String personas = "rut,nombre,apellido,direccion,telefonoFijo,telefonoMovil,email\n"
+                    + rut(10000002) + ",Diego,Urrutia,\"Angamos 0610, Antofagasta\",552355000,,durrutia@ucn.cl\n"
+                    + rut(10000003) + ",Kira,Perez,,,,kira@ucn.cl\n"
+                    + "10000004-X,Nope,Nopez,,,,nope@ucn.cl\n"
+                    + rut(10000005) + ",Other,Urrutia,,,,durrutia@ucn.cl\n"
+                    + rut(10000001) + ",Andrea,Contreras,,,,other@ucn.cl\n"
+                    + rut(10000006) + ",Columns,Missing\n"
+                    + "\n"
+                    + rut(10000007) + ",Juan,Gonzalez,,,987654321,juan@ucn.cl\n";
+            StringWriter rejects = new StringWriter();
+            ImportReport report = importer.importPersonas(Format.CSV, new StringReader(personas), rejects);
+            log.debug("Personas: {}, rejects:\n{}", report, rejects);
+
+            Assertions.assertEquals(7, report.getRead(), "Read != 7");
+            Assertions.assertEquals(3, report.getImported(), "Imported != 3");
+            Assertions.assertEquals(4, report.getRejected(), "Rejected != 4");
+            Assertions.assertEquals(4, repoPersona.findAll().size(), "Personas != 4");
+            Assertions.assertEquals("Angamos 0610, Antofagasta",
+                    repoPersona.findAll("rut", Validation.normalizeRut(rut(10000002))).get(0).getDireccion());
+
+            String[] lines = rejects.toString().split("\n");
+            Assertions.assertEquals(5, lines.length, "Header + 4 rejects");
+            Assertions.assertTrue(lines[0].endsWith(",error"), "Header");
+            Assertions.assertTrue(lines[2].contains("Email already exists"), "Email");
+            Assertions.assertTrue(lines[3].contains("Rut already exists"), "Rut");
+
+            String fichas = "{\"numero\":1,\"nombrePaciente\":\"Firulais\",\"especie\":\"Perro\","
+                    + "\"fechaNacimiento\":\"2015-03-01T10:00:00-03:00\",\"raza\":\"Quiltro\",\"sexo\":\"macho\","
+                    + "\"color\":\"Negro\",\"tipo\":\"INTERNO\",\"rutDuenio\":\"" + rut(10000002) + "\"}\n"
+                    + "{\"numero\":2,\"nombrePaciente\":\"Michi\",\"especie\":\"Gato\",\"sexo\":\"HEMBRA\","
+                    + "\"tipo\":\"EXTERNO\",\"rutDuenio\":\"" + rut(10000001) + "\"}\n"
+                    + "{\"numero\":3,\"nombrePaciente\":\"Nadie\",\"especie\":\"Gato\",\"sexo\":\"HEMBRA\","
+                    + "\"tipo\":\"EXTERNO\",\"rutDuenio\":\"" + rut(10000099) + "\"}\n"
+                    + "{\"numero\":1,\"nombrePaciente\":\"Twice\",\"especie\":\"Perro\",\"sexo\":\"MACHO\","
+                    + "\"tipo\":\"INTERNO\",\"rutDuenio\":\"" + rut(10000002) + "\"}\n"
+                    + "{\"numero\":4,\"nombrePaciente\":\"Broken\"\n";
+            rejects = new StringWriter();
+            report = importer.importFichas(Format.JSONL, new StringReader(fichas), rejects);
+            log.debug("Fichas: {}, rejects:\n{}", report, rejects);
+
+            Assertions.assertEquals(5, report.getRead(), "Read != 5");
+            Assertions.assertEquals(2, report.getImported(), "Imported != 2");
+            Assertions.assertEquals(3, report.getRejected(), "Rejected != 3");
+            Assertions.assertTrue(rejects.toString().contains("\"error\":\"Persona not found"), "Duenio");
+            Assertions.assertTrue(rejects.toString().contains("\"error\":\"Numero already exists: 1\""), "Numero");
+            Assertions.assertTrue(rejects.toString().contains("\"line\":"), "Not JSON");
+
+            // The duenio resolved by rut
+            Ficha ficha = repoFicha.findAll("numero", 1).get(0);
+            Assertions.assertEquals("Diego", ficha.getDuenio().getNombre(), "Duenio");
+            Assertions.assertNotNull(ficha.getFechaNacimiento(), "Fecha nacimiento");
+
+            String controles = "fecha,fechaProximoControl,temperatura,peso,altura,diagnostico,rutVeterinario,"
+                    + "numeroFicha\n"
+                    + "2020-05-25T10:15:30-04:00,2020-06-25T10:15:30-04:00,38.5,12.3,0.5,Sano," + rut(10000003)
+                    + ",1\n"
+                    + "2020-05-26T10:15:30-04:00,,39.1,4.1,0.3,\"Otitis, leve\"," + rut(10000003) + ",2\n"
+                    + "2020-05-27T10:15:30-04:00,,39.1,4.1,0.3,Nope," + rut(10000003) + ",99\n"
+                    + "not a fecha,,39.1,4.1,0.3,Nope," + rut(10000003) + ",1\n";
+            report = importer.importControles(Format.CSV, new StringReader(controles), null);
+            log.debug("Controles: {}", report);
+
+            Assertions.assertEquals(2, report.getImported(), "Imported != 2");
+            Assertions.assertEquals(2, report.getRejected(), "Rejected != 2");
+            List<Control> all = repoControl.findAll();
+            Assertions.assertEquals(2, all.size(), "Controles != 2");
+            Assertions.assertEquals("Kira", all.get(0).getVeterinario().getNombre(), "Veterinario");
+            Assertions.assertEquals(2, all.get(1).getFicha().getNumero(), "Ficha");
+            Assertions.assertEquals("Otitis, leve", all.get(1).getDiagnostico(), "Diagnostico");
+        }
+    }
+
+    /**
+     * The chunk with a row that fails in the database: rolled back and written one by one (the rest once).
+     */
+    @Test
+    public void testImportChunkFailure() throws IOException, SQLException {
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            ContratosImpl.schema(connectionSource).migrate();
+            BulkImporter importer = importer(connectionSource);
+
+            // The nombre longer than the column: valid, but the insert fails
+            StringBuilder longName = new StringBuilder();
+            for (int i = 0; i < 300; i++) {
+                longName.append('x');
+            }
+            String personas = "rut,nombre,apellido,direccion,telefonoFijo,telefonoMovil,email\n"
+                    + rut(10000002) + ",Diego,Urrutia,,,,durrutia@ucn.cl\n"
+                    + rut(10000003) + "," + longName + ",Perez,,,,kira@ucn.cl\n"
+                    + rut(10000007) + ",Juan,Gonzalez,,,,juan@ucn.cl\n";
+            ImportReport report = importer.importPersonas(Format.CSV, new StringReader(personas), null);
+            log.debug("Personas: {}", report);
+
+            Assertions.assertEquals(2, report.getImported(), "Imported != 2");
+            Assertions.assertEquals(1, report.getRejected(), "Rejected != 1");
+            RepositoryOrmLite<Persona, Long> repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            Assertions.assertEquals(2, repoPersona.findAll().size(), "Personas != 2");
+
+            // The ones before the failure are known by the importer
+            String fichas = "{\"numero\":1,\"nombrePaciente\":\"Firulais\",\"especie\":\"Perro\",\"sexo\":\"MACHO\","
+                    + "\"tipo\":\"INTERNO\",\"rutDuenio\":\"" + rut(10000002) + "\"}\n";
+            report = importer.importFichas(Format.JSONL, new StringReader(fichas), null);
+            Assertions.assertEquals(1, report.getImported(), "Ficha not imported");
+        }
+    }
+
+    /**
+     * The export of a backend (CSV, JSON lines and gzip) imported in other.
+     */
+    @Test
+    public void testExport() throws IOException, SQLException {
+
+        try (ConnectionSource source = new JdbcConnectionSource("jdbc:h2:mem:");
+             ConnectionSource target = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            ContratosImpl.schema(source).migrate();
+            ContratosImpl.schema(target).migrate();
+            BulkImporter importer = importer(source);
+
+            // 2 personas, 3 fichas, 5 controles (the ficha 1 without controles)
+            StringBuilder personas = new StringBuilder(String.join(",", BulkExporter.PERSONA_COLUMNS)).append('\n');
+            personas.append(rut(20000001)).append(",Diego,Urrutia,\"Angamos 0610, Antofagasta\",,,d@ucn.cl\n");
+            personas.append(rut(20000002)).append(",Kira,Perez,,552355000,,k@ucn.cl\n");
+            StringBuilder fichas = new StringBuilder(String.join(",", BulkExporter.FICHA_COLUMNS)).append('\n');
+            for (int numero = 1; numero <= 3; numero++) {
+                fichas.append(numero).append(",Paciente ").append(numero).append(",Perro,,,MACHO,,INTERNO,")
+                        .append(rut(20000001)).append('\n');
+            }
+            StringBuilder controles = new StringBuilder(String.join(",", BulkExporter.CONTROL_COLUMNS)).append('\n');
+            for (int i = 0; i < 5; i++) {
+                controles.append("2020-05-").append(10 + i).append("T10:15:30-04:00,,38.5,12.25,0.5,\"Sano, \"\"ok\"\"\",")
+                        .append(rut(20000002)).append(',').append(i % 2 + 2).append('\n');
+            }
+            Assertions.assertEquals(2, importer.importPersonas(Format.CSV, new StringReader(personas.toString()),
+                    null).getImported());
+            Assertions.assertEquals(3, importer.importFichas(Format.CSV, new StringReader(fichas.toString()),
+                    null).getImported());
+            Assertions.assertEquals(5, importer.importControles(Format.CSV, new StringReader(controles.toString()),
+                    null).getImported());
+
+            BulkExporter exporter = new BulkExporter(new RepositoryOrmLite<>(source, Persona.class),
+                    new RepositoryOrmLite<>(source, Ficha.class), new RepositoryOrmLite<>(source, Control.class));
+
+            // CSV: the same of the import
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assertions.assertEquals(2, exporter.exportPersonas(Format.CSV, false, out));
+            String personasCsv = out.toString("UTF-8");
+            log.debug("Personas:\n{}", personasCsv);
+            Assertions.assertEquals(personas.toString().replace("-", ""), personasCsv, "Personas (rut canonical)");
+
+            // JSON lines: the fichas with their controles
+            out = new ByteArrayOutputStream();
+            Assertions.assertEquals(3, exporter.exportFichas(Format.JSONL, false, out));
+            String fichasJson = out.toString("UTF-8");
+            log.debug("Fichas:\n{}", fichasJson);
+            String[] lines = fichasJson.split("\n");
+            Assertions.assertEquals(3, lines.length, "Fichas != 3");
+            Assertions.assertTrue(lines[0].endsWith("\"controles\":[]}"), "Ficha 1 without controles");
+            Assertions.assertEquals(3, lines[1].split("\"fecha\"").length - 1, "Ficha 2 with 3 controles");
+            Assertions.assertEquals(2, lines[2].split("\"fecha\"").length - 1, "Ficha 3 with 2 controles");
+
+            // gzip: the controles in a range
+            out = new ByteArrayOutputStream();
+            Assertions.assertEquals(2, exporter.exportControles(Format.CSV, true, out,
+                    ZonedDateTime.parse("2020-05-11T00:00:00-04:00"), ZonedDateTime.parse("2020-05-13T00:00:00-04:00")));
+            out = new ByteArrayOutputStream();
+            Assertions.assertEquals(5, exporter.exportControles(Format.CSV, true, out, null, null));
+            byte[] controlesGz = out.toByteArray();
+
+            // The export in other backend
+            BulkImporter other = importer(target);
+            Assertions.assertEquals(2, other.importPersonas(Format.CSV, new StringReader(personasCsv), null)
+                    .getImported());
+            Assertions.assertEquals(3, other.importFichas(Format.JSONL, new StringReader(fichasJson), null)
+                    .getImported());
+            try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(controlesGz)),
+                    StandardCharsets.UTF_8)) {
+                Assertions.assertEquals(5, other.importControles(Format.CSV, reader, null).getImported());
+            }
+            List<Control> all = new RepositoryOrmLite<>(target, Control.class).findAll();
+            Assertions.assertEquals("Sano, \"ok\"", all.get(0).getDiagnostico(), "Diagnostico");
+            Assertions.assertEquals(12.25f, all.get(0).getPeso(), "Peso");
+        }
+    }
+
+    /**
+     * @param connectionSource to use.
+     * @return the importer of the backend.
+     */
+    private static BulkImporter importer(ConnectionSource connectionSource) {
+        return new BulkImporter(new RepositoryOrmLite<>(connectionSource, Persona.class),
+                new RepositoryOrmLite<>(connectionSource, Ficha.class),
+                new RepositoryOrmLite<>(connectionSource, Control.class), BulkImporter.DEFAULT_CHUNK_SIZE);
+    }
+
+}
@@ -24,20 +24,54 @@
 
 package cl.ucn.disc.pdbp.tdd.dao;
 
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.dao.GenericRawResults;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.support.DatabaseConnection;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.DatabaseTable;
+import com.j256.ormlite.table.DatabaseTableConfig;
 import com.j256.ormlite.table.TableUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * The Test of Repository.
@@ -159,6 +193,648 @@ public class RepositoryTest {
 
     }
 
+    /**
+     * The keyset pagination and the stream.
+     */
+    @Test
+    public void testPagination() {
+
+        // The source of the data
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            TableUtils.createTableIfNotExists(connectionSource, TheModel.class);
+            Repository<TheModel, Long> theRepo = new RepositoryOrmLite<>(connectionSource, TheModel.class);
+
+            for (int i = 0; i < 25; i++) {
+                theRepo.create(new TheModel(ZonedDateTime.now(), "The Name " + i));
+            }
+
+            // Page by page
+            {
+                Assertions.assertThrows(IllegalArgumentException.class,
+                        () -> theRepo.findPage(null, 0, Fetch.DEFAULT), "Page without limit");
+
+                List<Long> ids = new ArrayList<>();
+                Long after = null;
+                int pages = 0;
+                List<TheModel> page;
+                do {
+                    page = theRepo.findPage(after, 10, Fetch.BATCH);
+                    for (TheModel theModel : page) {
+                        ids.add(theModel.getId());
+                        after = theModel.getId();
+                    }
+                    pages++;
+                } while (page.size() == 10);
+
+                log.debug("Pages: {}, ids: {}.", pages, ids);
+                Assertions.assertEquals(3, pages, "Pages != 3");
+                Assertions.assertEquals(25, ids.size(), "Size != 25");
+                Assertions.assertEquals(25, new HashSet<>(ids).size(), "Duplicated ids");
+            }
+
+            // The stream
+            try (Stream<TheModel> stream = theRepo.stream()) {
+                Assertions.assertEquals(25, stream.filter(m -> m.getTheName().startsWith("The Name")).count(),
+                        "Count != 25");
+            }
+
+        } catch (SQLException | IOException exception) {
+            throw new RuntimeException(exception);
+        }
+
+    }
+
+    /**
+     * The writes in batches.
+     */
+    @Test
+    public void testBatch() {
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            TableUtils.createTableIfNotExists(connectionSource, TheModel.class);
+            RepositoryOrmLite<TheModel, Long> theRepo = new RepositoryOrmLite<>(connectionSource, TheModel.class);
+            theRepo.setBatchSize(1000);
+
+            Assertions.assertThrows(IllegalArgumentException.class, () -> theRepo.setBatchSize(0), "Size 0");
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> theRepo.createAll(Collections.singletonList(null)), "Create null");
+
+            // Create
+            List<TheModel> models = new ArrayList<>();
+            for (int i = 0; i < 2500; i++) {
+                models.add(new TheModel(ZonedDateTime.now(), "The Name " + i));
+            }
+            Assertions.assertEquals(2500, theRepo.createAll(models), "Created != 2500");
+            Assertions.assertNotNull(models.get(2499).getId(), "Id was null");
+
+            // Update
+            models.forEach(m -> m.setTheName("The New Name"));
+            Assertions.assertEquals(2500, theRepo.updateAll(models), "Updated != 2500");
+            Assertions.assertEquals(2500, theRepo.findAll("theName", "The New Name").size(), "Size != 2500");
+
+            // Delete
+            List<Long> ids = models.stream().map(TheModel::getId).collect(Collectors.toList());
+            Assertions.assertEquals(2500, theRepo.deleteAll(ids), "Deleted != 2500");
+            Assertions.assertEquals(0, theRepo.findAll().size(), "Size != 0");
+
+        } catch (SQLException | IOException exception) {
+            throw new RuntimeException(exception);
+        }
+
+    }
+
+    /**
+     * The batch that fails: all the rows rolled back, the listeners not notified.
+     */
+    @Test
+    public void testBatchFailure() throws Exception {
+
+        for (String databaseUrl : Arrays.asList("jdbc:h2:mem:", "jdbc:sqlite::memory:")) {
+            try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+                TableUtils.createTableIfNotExists(connectionSource, TheModel.class);
+                RepositoryOrmLite<TheModel, Long> theRepo = new RepositoryOrmLite<>(connectionSource,
+                        TheModel.class);
+                List<TheModel> created = new ArrayList<>();
+                theRepo.addListener(new RepositoryListener<TheModel, Long>() {
+
+                    @Override
+                    public void onCreate(TheModel theModel) {
+                        created.add(theModel);
+                    }
+
+                    @Override
+                    public void onUpdate(TheModel theModel) {
+                        // Nothing here
+                    }
+
+                    @Override
+                    public void onDelete(Long id) {
+                        // Nothing here
+                    }
+                });
+
+                // The good one and the bad one (null name) in the same batch
+                List<TheModel> models = Arrays.asList(new TheModel(ZonedDateTime.now(), "The Good"),
+                        new TheModel(ZonedDateTime.now(), null));
+                Assertions.assertThrows(RuntimeException.class, () -> theRepo.createAll(models), "Bad saved");
+                Assertions.assertEquals(0, theRepo.findAll().size(), "Rows committed in " + databaseUrl);
+                Assertions.assertTrue(created.isEmpty(), "Listener notified in " + databaseUrl);
+
+                // The update: rolled back too
+                TheModel theModel = new TheModel(ZonedDateTime.now(), "The Name");
+                TheModel theOther = new TheModel(ZonedDateTime.now(), "The Other");
+                theRepo.createAll(Arrays.asList(theModel, theOther));
+                theModel.setTheName("The New Name");
+                theOther.setTheName(null);
+                Assertions.assertThrows(RuntimeException.class,
+                        () -> theRepo.updateAll(Arrays.asList(theModel, theOther)), "Bad updated");
+                Assertions.assertEquals("The Name", theRepo.findById(theModel.getId()).getTheName(),
+                        "Update committed in " + databaseUrl);
+            }
+        }
+
+    }
+
+    /**
+     * The write behind: the writes of many threads in few transactions, each one completed after the commit.
+     */
+    @Test
+    public void testWriteBehindQueue() throws Exception {
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            TableUtils.createTableIfNotExists(connectionSource, TheModel.class);
+            RepositoryOrmLite<TheModel, Long> theRepo = new RepositoryOrmLite<>(connectionSource, TheModel.class);
+
+            try (WriteBehindQueue<TheModel, Long> queue = new WriteBehindQueue<>(theRepo, 50, 5, 2000)) {
+
+                Assertions.assertThrows(IllegalArgumentException.class, () -> queue.submit(null), "Null");
+
+                // 8 threads, 1000 writes
+                ExecutorService executor = Executors.newFixedThreadPool(8);
+                List<Future<CompletableFuture<TheModel>>> submits = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    String name = "The Name " + i;
+                    submits.add(executor.submit(() -> queue.submit(new TheModel(ZonedDateTime.now(), name))));
+                }
+                for (Future<CompletableFuture<TheModel>> submit : submits) {
+                    Assertions.assertNotNull(submit.get().get(10, TimeUnit.SECONDS).getId(), "Not saved");
+                }
+                executor.shutdown();
+
+                log.debug("Committed: {} in {} batches, latency p99: {} us.", queue.getCommitted(),
+                        queue.getBatches(), queue.getLatencies().getValueAtQuantile(0.99) / 1000);
+                Assertions.assertEquals(1000, theRepo.findAll().size(), "Size != 1000");
+                Assertions.assertEquals(1000, queue.getCommitted(), "Committed != 1000");
+                Assertions.assertEquals(1000, queue.getLatencies().getCount(), "Latencies != 1000");
+                Assertions.assertTrue(queue.getBatches() >= 20 && queue.getBatches() < 1000, "Not grouped");
+
+                // The wrong one fails, the rest of its batch is saved
+                CompletableFuture<TheModel> wrong = queue.submit(new TheModel(ZonedDateTime.now(), null));
+                CompletableFuture<TheModel> right = queue.submit(new TheModel(ZonedDateTime.now(), "Right"));
+                Assertions.assertThrows(ExecutionException.class, () -> wrong.get(10, TimeUnit.SECONDS), "Saved");
+                Assertions.assertNotNull(right.get(10, TimeUnit.SECONDS).getId(), "Not saved");
+                Assertions.assertEquals(1, queue.getFailed(), "Failed != 1");
+                Assertions.assertEquals(0, queue.getDepth(), "Depth != 0");
+
+                // The right one before the wrong one: saved once
+                CompletableFuture<TheModel> good = queue.submit(new TheModel(ZonedDateTime.now(), "Good"));
+                CompletableFuture<TheModel> bad = queue.submit(new TheModel(ZonedDateTime.now(), null));
+                Assertions.assertNotNull(good.get(10, TimeUnit.SECONDS).getId(), "Not saved");
+                Assertions.assertThrows(ExecutionException.class, () -> bad.get(10, TimeUnit.SECONDS), "Saved");
+                Assertions.assertEquals(1, theRepo.findAll("theName", "Good").size(), "Good saved != 1");
+                Assertions.assertEquals(1002, theRepo.findAll().size(), "Size != 1002");
+            }
+
+            // Closed: the waiting ones are saved, the next ones rejected
+            WriteBehindQueue<TheModel, Long> closed;
+            CompletableFuture<TheModel> last;
+            try (WriteBehindQueue<TheModel, Long> queue = new WriteBehindQueue<>(theRepo, 50, 5, 2000)) {
+                closed = queue;
+                last = queue.submit(new TheModel(ZonedDateTime.now(), "Last"));
+            }
+            Assertions.assertTrue(last.isDone() && !last.isCompletedExceptionally(), "Last not saved");
+            ExecutionException error = Assertions.assertThrows(ExecutionException.class,
+                    () -> closed.submit(new TheModel(ZonedDateTime.now(), "Late")).get());
+            Assertions.assertTrue(error.getCause() instanceof RejectedExecutionException, "Cause != REE");
+            Assertions.assertEquals(1003, theRepo.findAll().size(), "Size != 1003");
+        }
+    }
+
+    /**
+     * The ZonedDateTime as number and the migration from string.
+     */
+    @Test
+    public void testZonedDateTimeEpoch() {
+
+        // The conversion: instant (the number + the nanos) and offset
+        ZonedDateTime santiago = ZonedDateTime.of(2020, 5, 20, 10, 15, 30, 123_456_789, ZoneId.of("America/Santiago"));
+        ZonedDateTime old = ZonedDateTime.of(1500, 1, 1, 0, 0, 0, 1_001, ZoneOffset.ofHoursMinutes(5, 45));
+        for (ZonedDateTime zonedDateTime : Arrays.asList(santiago, old)) {
+            ZonedDateTime back = ZonedDateTimeEpochType.withNanos(ZonedDateTimeEpochType.fromEpoch(
+                    ZonedDateTimeEpochType.toEpoch(zonedDateTime)), ZonedDateTimeEpochType.nanosOf(zonedDateTime));
+            Assertions.assertEquals(zonedDateTime.toInstant(), back.toInstant(), "Instant !=");
+            Assertions.assertEquals(zonedDateTime.getOffset(), back.getOffset(), "Offset !=");
+        }
+        Assertions.assertEquals(789, ZonedDateTimeEpochType.nanosOf(santiago), "Nanos != 789");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> ZonedDateTimeEpochType.withNanos(santiago, 1_000), "Nanos out of range");
+
+        // The region: a fixed offset, the offset not in quarters: UTC
+        ZonedDateTime lmt = ZonedDateTime.of(1900, 1, 1, 0, 0, 0, 0, ZoneId.of("Europe/Amsterdam"));
+        Assertions.assertEquals(santiago.getOffset(), ZonedDateTimeEpochType.fromEpoch(
+                ZonedDateTimeEpochType.toEpoch(santiago)).getZone(), "Region not as offset");
+        Assertions.assertEquals(ZoneOffset.UTC, ZonedDateTimeEpochType.fromEpoch(
+                ZonedDateTimeEpochType.toEpoch(lmt)).getZone(), "Offset not in UTC");
+
+        // The order of the numbers is the order of the instants
+        Assertions.assertTrue(ZonedDateTimeEpochType.toEpoch(old) < ZonedDateTimeEpochType.toEpoch(santiago));
+        Assertions.assertTrue(ZonedDateTimeEpochType.toEpoch(santiago)
+                < ZonedDateTimeEpochType.toEpoch(santiago.withZoneSameInstant(ZoneOffset.UTC).plusNanos(1_000)));
+        Assertions.assertTrue(ZonedDateTimeEpochType.lowerBound(santiago.toInstant())
+                <= ZonedDateTimeEpochType.toEpoch(santiago));
+        Assertions.assertTrue(ZonedDateTimeEpochType.upperBound(santiago.toInstant())
+                >= ZonedDateTimeEpochType.toEpoch(santiago));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> ZonedDateTimeEpochType.toEpoch(ZonedDateTime.of(9999, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)));
+
+        // The migration in both databases
+        for (String databaseUrl : Arrays.asList("jdbc:h2:mem:", "jdbc:sqlite::memory:")) {
+
+            try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+                // The old table (string)
+                TableUtils.createTableIfNotExists(connectionSource, TheModel.class);
+                Repository<TheModel, Long> theRepo = new RepositoryOrmLite<>(connectionSource, TheModel.class);
+                theRepo.create(new TheModel(santiago, "The Santiago"));
+                theRepo.create(new TheModel(null, "The Null"));
+
+                // Migrate: one column, the second time nothing
+                Assertions.assertEquals(1, ZonedDateTimeMigration.migrate(connectionSource, TheEpochModel.class));
+                Assertions.assertEquals(0, ZonedDateTimeMigration.migrate(connectionSource, TheEpochModel.class));
+
+                // The new table (number)
+                RepositoryOrmLite<TheEpochModel, Long> epochRepo = new RepositoryOrmLite<>(connectionSource,
+                        TheEpochModel.class);
+                epochRepo.create(new TheEpochModel(old, "The Old"));
+
+                List<TheEpochModel> models = epochRepo.getQuery().orderBy("theDate", true).query();
+                Assertions.assertEquals(3, models.size(), "Size != 3");
+                Assertions.assertNull(models.get(0).getTheDate(), "Date not null");
+                Assertions.assertEquals(old.toInstant(), models.get(1).getTheDate().toInstant(), "Old !=");
+                Assertions.assertEquals(santiago.toInstant(), models.get(2).getTheDate().toInstant(), "Santiago !=");
+                Assertions.assertEquals(santiago.getOffset(), models.get(2).getTheDate().getOffset(), "Offset !=");
+
+            } catch (SQLException | IOException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+
+    }
+
+    /**
+     * The pool: max size, timeout, the transactions and the metrics.
+     */
+    @Test
+    public void testPooledConnectionSource() throws Exception {
+
+        // Wrong config
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PoolConfig(3, 2, 0, 1000, 0, 0));
+        Properties properties = new Properties();
+        properties.setProperty("pool.maxSize", "2");
+        properties.setProperty("pool.acquireTimeoutMillis", "50");
+        PoolConfig config = PoolConfig.fromProperties(properties, "pool.");
+        Assertions.assertEquals(2, config.getMaxSize(), "Max size != 2");
+        Assertions.assertEquals(PoolConfig.DEFAULT.getMinSize(), config.getMinSize(), "Min size != default");
+
+        try (PooledConnectionSource pool = new PooledConnectionSource("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1", config)) {
+
+            // The warm-up
+            Assertions.assertEquals(1, pool.getIdleConnections(), "Idle != 1");
+            Assertions.assertEquals(0, pool.getActiveConnections(), "Active != 0");
+            Assertions.assertTrue(pool.ping(), "Ping failed");
+
+            // Full: the third waits 50 ms and fail
+            DatabaseConnection first = pool.getReadWriteConnection(null);
+            DatabaseConnection second = pool.getReadWriteConnection(null);
+            Assertions.assertEquals(2, pool.getActiveConnections(), "Active != 2");
+            Assertions.assertThrows(SQLException.class, () -> pool.getReadWriteConnection(null));
+            Assertions.assertEquals(1, pool.getTimeouts(), "Timeouts != 1");
+            pool.releaseConnection(first);
+            pool.releaseConnection(second);
+            Assertions.assertEquals(0, pool.getActiveConnections(), "Active != 0");
+
+            // The transaction use one connection, the nested gets included
+            TableUtils.createTableIfNotExists(pool, TheModel.class);
+            Repository<TheModel, Long> theRepo = new RepositoryOrmLite<>(pool, TheModel.class);
+            TransactionManager.callInTransaction(pool, () -> {
+                theRepo.create(new TheModel(ZonedDateTime.now(), "The Transaction"));
+                Assertions.assertEquals(1, pool.getActiveConnections(), "Active in transaction != 1");
+                return theRepo.findAll().size();
+            });
+            Assertions.assertEquals(0, pool.getActiveConnections(), "Active != 0");
+
+            // The metrics: one wait for each checkout
+            Assertions.assertEquals(pool.getCheckouts(), pool.getWaits().getCount(), "Waits != gets");
+        }
+
+        // The idle ones closed, but not below the min size
+        try (PooledConnectionSource pool = new PooledConnectionSource("jdbc:h2:mem:idle;DB_CLOSE_DELAY=-1",
+                new PoolConfig(1, 3, 100, 60_000, 0, 1000))) {
+            List<DatabaseConnection> connections = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                connections.add(pool.getReadWriteConnection(null));
+            }
+            for (DatabaseConnection connection : connections) {
+                pool.releaseConnection(connection);
+            }
+            Assertions.assertEquals(3, pool.getIdleConnections(), "Idle != 3");
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (pool.getIdleConnections() > 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(300);
+            Assertions.assertEquals(1, pool.getIdleConnections(), "Idle != min size");
+            Assertions.assertEquals(2, pool.getIdleClosed(), "Idle closed != 2");
+            Assertions.assertEquals(2, pool.getCloseCount(), "Closed twice");
+        }
+
+    }
+
+    /**
+     * The reads to the replica, the writes to the primary, read-your-writes.
+     */
+    @Test
+    public void testRoutingConnectionSource() throws Exception {
+
+        PoolConfig config = new PoolConfig(0, 2, 0, 60_000, 0, 1000);
+        try (PooledConnectionSource primary = new PooledConnectionSource("jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1",
+                config);
+             PooledConnectionSource replica = new PooledConnectionSource("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1",
+                     config)) {
+
+            // The same table, different data
+            TableUtils.createTableIfNotExists(primary, TheModel.class);
+            TableUtils.createTableIfNotExists(replica, TheModel.class);
+            new RepositoryOrmLite<>(replica, TheModel.class).create(new TheModel(null, "The Replica"));
+
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> new RoutingConnectionSource(primary, Collections.singletonList(null), 0));
+
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> new RoutingConnectionSource(primary, Collections.emptyList(), 0, null));
+
+            // The clock of the sticky time: moved by hand
+            AtomicLong clock = new AtomicLong();
+            RoutingConnectionSource router = new RoutingConnectionSource(primary, Collections.singletonList(replica),
+                    1000, clock::get);
+            RoutingConnectionSource.Session.bind(new RoutingConnectionSource.Session());
+            Repository<TheModel, Long> theRepo = new RepositoryOrmLite<>(router, TheModel.class);
+
+            // Read: the replica
+            Assertions.assertEquals("The Replica", theRepo.findAll().get(0).getTheName(), "Not the replica");
+            Assertions.assertEquals(1, router.getReplicaReads(), "Replica reads != 1");
+
+            // Write: the primary, then the reads of this thread too
+            theRepo.create(new TheModel(null, "The Primary"));
+            Assertions.assertEquals("The Primary", theRepo.findAll().get(0).getTheName(), "Not the primary");
+            Assertions.assertEquals(1, router.getPrimaryReads(), "Primary reads != 1");
+
+            // Other thread: the replica
+            CompletableFuture<String> other = CompletableFuture.supplyAsync(
+                    () -> theRepo.findAll().get(0).getTheName());
+            Assertions.assertEquals("The Replica", other.get(10, TimeUnit.SECONDS), "Other thread not in replica");
+
+            // Just before the end of the sticky time: the primary, after: the replica
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000) - 1);
+            Assertions.assertEquals("The Primary", theRepo.findAll().get(0).getTheName(), "Not sticky");
+            clock.incrementAndGet();
+            Assertions.assertEquals("The Replica", theRepo.findAll().get(0).getTheName(), "Still sticky");
+
+            // The write of other thread on behalf of this one (the session bound): this one reads the primary
+            RoutingConnectionSource.Session session = RoutingConnectionSource.Session.current();
+            CompletableFuture.runAsync(() -> {
+                RoutingConnectionSource.Session.bind(session);
+                try {
+                    theRepo.create(new TheModel(null, "The Async"));
+                } finally {
+                    RoutingConnectionSource.Session.bind(null);
+                }
+            }).get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals("The Primary", theRepo.findAll().get(0).getTheName(), "Async write not sticky");
+
+            // The write made by other thread without the session (ej. write behind): marked by the caller
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+            Assertions.assertEquals("The Replica", theRepo.findAll().get(0).getTheName(), "Still sticky");
+            router.markWrite();
+            Assertions.assertEquals("The Primary", theRepo.findAll().get(0).getTheName(), "Mark not sticky");
+
+            // The transaction: the primary
+            String inTransaction = TransactionManager.callInTransaction(router,
+                    () -> theRepo.findAll().get(0).getTheName());
+            Assertions.assertEquals("The Primary", inTransaction, "Transaction not in primary");
+
+            // All the connections released in the right pool
+            Assertions.assertEquals(0, primary.getActiveConnections(), "Primary active != 0");
+            Assertions.assertEquals(0, replica.getActiveConnections(), "Replica active != 0");
+        } finally {
+            RoutingConnectionSource.Session.bind(null);
+        }
+
+    }
+
+    /**
+     * SQLite: WAL, the single writer and the read-only readers that don't wait the writer.
+     */
+    @Test
+    public void testSqliteConfig() throws Exception {
+
+        // Wrong config and urls
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SqliteConfig("WAL", "NORMAL", -1, 0,
+                "MEMORY", 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> SqliteConfig.DEFAULT.writerUrl("jdbc:sqlite::memory:"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> SqliteConfig.DEFAULT.readerUrl("jdbc:h2:mem:"));
+        Properties properties = new Properties();
+        properties.setProperty("sqlite.synchronous", "FULL");
+        SqliteConfig config = SqliteConfig.fromProperties(properties, "sqlite.");
+        Assertions.assertEquals("FULL", config.getSynchronous(), "Synchronous != FULL");
+        Assertions.assertEquals("WAL", config.getJournalMode(), "Journal mode != default");
+        Assertions.assertEquals(1, config.writerPool(PoolConfig.DEFAULT).getMaxSize(), "Writers != 1");
+
+        Path directory = Files.createTempDirectory("sqlite");
+        String databaseUrl = "jdbc:sqlite:" + directory.resolve("the.db");
+        PoolConfig poolConfig = new PoolConfig(1, 4, 0, 60_000, 0, 1000);
+        try (PooledConnectionSource writer = new PooledConnectionSource(config.writerUrl(databaseUrl),
+                config.writerPool(poolConfig));
+             PooledConnectionSource readers = new PooledConnectionSource(config.readerUrl(databaseUrl),
+                     poolConfig)) {
+
+            TableUtils.createTableIfNotExists(writer, TheModel.class);
+            Dao<TheModel, Long> dao = DaoManager.createDao(writer, TheModel.class);
+            Assertions.assertEquals("wal", dao.queryRaw("PRAGMA journal_mode").getFirstResult()[0],
+                    "Not in WAL");
+
+            Repository<TheModel, Long> theWriter = new RepositoryOrmLite<>(writer, TheModel.class);
+            Repository<TheModel, Long> theReader = new RepositoryOrmLite<>(readers, TheModel.class);
+            theWriter.create(new TheModel(ZonedDateTime.now(), "The Committed"));
+
+            // The readers: read-only
+            Assertions.assertThrows(RuntimeException.class,
+                    () -> theReader.create(new TheModel(ZonedDateTime.now(), "The Reader")));
+
+            // The reads in a write: the last commit, without waiting the writer
+            TransactionManager.callInTransaction(writer, () -> {
+                theWriter.create(new TheModel(ZonedDateTime.now(), "The Uncommitted"));
+                int size = CompletableFuture.supplyAsync(() -> theReader.findAll().size()).get(1, TimeUnit.SECONDS);
+                Assertions.assertEquals(1, size, "The reader saw the uncommitted or waited");
+                return null;
+            });
+            Assertions.assertEquals(2, theReader.findAll().size(), "The reader didn't see the commit");
+        }
+
+    }
+
+    /**
+     * The prepared queries: compiled once, executed with different values (and from many threads).
+     */
+    @Test
+    public void testPreparedQueries() {
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            TableUtils.createTableIfNotExists(connectionSource, TheModel.class);
+            RepositoryOrmLite<TheModel, Long> theRepo = new RepositoryOrmLite<>(connectionSource, TheModel.class);
+            for (int i = 0; i < 100; i++) {
+                theRepo.create(new TheModel(ZonedDateTime.now(), "The Name " + (i % 10)));
+            }
+
+            theRepo.prepare("byName", query -> query.orderBy("id", true).where().eq("theName", new SelectArg()));
+            theRepo.prepare("countByName", query -> query.setCountOf(true).where().eq("theName", new SelectArg()));
+            theRepo.prepare("idsLike", query -> query.selectColumns("id").where().like("theName", new SelectArg()));
+
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> theRepo.prepare("byName", query -> query.where().eq("theName", new SelectArg())),
+                    "Prepared twice");
+            Assertions.assertThrows(IllegalArgumentException.class, () -> theRepo.query("nope"), "Not prepared");
+            Assertions.assertThrows(IllegalArgumentException.class, () -> theRepo.query("byName"), "Without args");
+            Assertions.assertThrows(RuntimeException.class,
+                    () -> theRepo.prepare("wrong", query -> query.where().eq("nope", new SelectArg())), "Column");
+
+            // Same query, other values
+            Assertions.assertEquals(10, theRepo.query("byName", "The Name 3").size(), "Size != 10");
+            Assertions.assertEquals(0, theRepo.query("byName", "The Name X").size(), "Size != 0");
+            Assertions.assertEquals(10, theRepo.countOf("countByName", "The Name 5"), "Count != 10");
+            Assertions.assertEquals(10, theRepo.findAll("theName", "The Name 7").size(), "Size != 10");
+            try (GenericRawResults<String[]> rows = theRepo.queryRaw("idsLike", "The Name%")) {
+                Assertions.assertEquals(100, rows.getResults().size(), "Size != 100");
+            }
+
+            // Each thread with its own values
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String name = "The Name " + (i % 10);
+                futures.add(CompletableFuture.supplyAsync(() -> theRepo.query("byName", name).stream()
+                        .allMatch(m -> m.getTheName().equals(name))));
+            }
+            for (CompletableFuture<Boolean> future : futures) {
+                Assertions.assertTrue(future.join(), "Values of other thread");
+            }
+
+        } catch (Exception exception) {
+            throw new RuntimeException(exception);
+        }
+
+    }
+
+    /**
+     * The versions of the schema: each one applied once, in order, all or nothing.
+     */
+    @Test
+    public void testSchemaMigrator() {
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new SchemaMigrator(null), "Null");
+
+            SchemaMigrator migrator = new SchemaMigrator(connectionSource)
+                    .add(2, "The index of the name", SchemaMigrator.createIndex("themodel_thename_idx",
+                            "themodel", "theName"))
+                    .add(1, "The table", SchemaMigrator.createTables(TheModel.class));
+
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> migrator.add(1, "Again", SchemaMigrator.createTables(TheModel.class)), "Version twice");
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> migrator.add(0, "Zero", SchemaMigrator.createTables(TheModel.class)), "Version zero");
+
+            // From zero
+            Assertions.assertEquals(0, migrator.getVersion(), "Version != 0");
+            Assertions.assertEquals(2, migrator.migrate(), "Applied != 2");
+            Assertions.assertEquals(2, migrator.getVersion(), "Version != 2");
+            Assertions.assertEquals(0, migrator.migrate(), "Applied twice");
+
+            Repository<TheModel, Long> theRepo = new RepositoryOrmLite<>(connectionSource, TheModel.class);
+            theRepo.create(new TheModel(ZonedDateTime.now(), "The Name"));
+
+            // A version that fail: not recorded
+            migrator.add(3, "The wrong one", cs -> {
+                throw new SQLException("Fail");
+            });
+            Assertions.assertThrows(RuntimeException.class, migrator::migrate, "Migration failed");
+            Assertions.assertEquals(2, migrator.getVersion(), "Version != 2");
+
+            // Only the new one
+            SchemaMigrator upgrade = new SchemaMigrator(connectionSource)
+                    .add(1, "The table", SchemaMigrator.createTables(TheModel.class))
+                    .add(2, "The index of the name", SchemaMigrator.createIndex("themodel_thename_idx",
+                            "themodel", "theName"))
+                    .add(4, "The index of the date", SchemaMigrator.createIndex("themodel_thedate_idx",
+                            "themodel", "theDate", "theName"));
+            Assertions.assertEquals(1, upgrade.migrate(), "Applied != 1");
+            Assertions.assertEquals(Arrays.asList(1, 2, 4), upgrade.getApplied().stream()
+                    .map(SchemaVersion::getVersion).collect(Collectors.toList()), "Versions");
+            Assertions.assertEquals(1, theRepo.findAll("theName", "The Name").size(), "Data lost");
+
+            // The index duplicated: dropped (and again, without error)
+            String indexes = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES "
+                    + "WHERE UPPER(INDEX_NAME) = 'THEMODEL_THENAME_IDX'";
+            DatabaseConnection connection = connectionSource.getReadOnlyConnection(null);
+            try {
+                Assertions.assertEquals(1, connection.queryForLong(indexes), "Index not created");
+                upgrade.add(5, "Without the index of the name", SchemaMigrator.dropIndex("themodel_thename_idx"));
+                Assertions.assertEquals(1, upgrade.migrate(), "Applied != 1");
+                Assertions.assertEquals(0, connection.queryForLong(indexes), "Index not dropped");
+                SchemaMigrator.dropIndex("themodel_thename_idx").migrate(connectionSource);
+            } finally {
+                connectionSource.releaseConnection(connection);
+            }
+            Assertions.assertThrows(IllegalArgumentException.class, () -> SchemaMigrator.dropIndex(null), "Null");
+
+        } catch (SQLException | IOException exception) {
+            throw new RuntimeException(exception);
+        }
+
+    }
+
+    /**
+     * The configuration of the tables precomputed: up to date with the annotations and usable to build the daos.
+     */
+    @Test
+    public void testTableConfigs() throws Exception {
+
+        // The resource == the annotations (if not: ./gradlew ormliteConfig)
+        StringWriter generated = new StringWriter();
+        TableConfigs.write(generated, TableConfigs.generate(Arrays.asList(Ficha.class, Persona.class,
+                Control.class, SchemaVersion.class, IdempotencyKey.class)));
+        List<String> resource;
+        try (InputStream in = TableConfigs.class.getResourceAsStream(TableConfigs.RESOURCE)) {
+            Assertions.assertNotNull(in, "Resource not found");
+            resource = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines()
+                    .collect(Collectors.toList());
+        }
+        Assertions.assertEquals(Arrays.asList(generated.toString().split("\\R")), resource,
+                "The configuration is outdated, run ./gradlew ormliteConfig");
+
+        List<DatabaseTableConfig<?>> configs = TableConfigs.load();
+        Assertions.assertEquals(5, configs.size(), "Size != 5");
+
+        // A dao from the configuration (without the annotations)
+        @SuppressWarnings("unchecked")
+        DatabaseTableConfig<Persona> config = (DatabaseTableConfig<Persona>) configs.stream()
+                .filter(c -> c.getDataClass() == Persona.class).findFirst().orElseThrow(AssertionError::new);
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+            TableUtils.createTable(connectionSource, config);
+            Dao<Persona, Long> dao = DaoManager.createDao(connectionSource, config);
+            dao.create(new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl"));
+            Assertions.assertEquals("Diego", dao.queryForEq("rut", "130144918").get(0).getNombre(), "Nombre");
+        }
+
+    }
+
     /**
      * The Model.
      */
@@ -227,5 +903,71 @@ public class RepositoryTest {
         }
     }
 
+    /**
+     * The Model (same table) with the date as number.
+     */
+    @DatabaseTable(tableName = "themodel")
+    public static final class TheEpochModel {
+
+        /**
+         * The id: Primary Key (autoincrement).
+         */
+        @DatabaseField(generatedId = true)
+        private Long id;
+
+        /**
+         * The date.
+         */
+        @DatabaseField(persisterClass = ZonedDateTimeEpochType.class)
+        private ZonedDateTime theDate;
+
+        /**
+         * The nanos of the date.
+         */
+        @DatabaseField(useGetSet = true, defaultValue = "0")
+        private transient int theDateNanos;
+
+        /**
+         * The string
+         */
+        @DatabaseField(canBeNull = false)
+        private String theName;
+
+        /**
+         * Empty constructor.
+         */
+        TheEpochModel() {
+            // Nothing here
+        }
+
+        /**
+         * The Constructor.
+         */
+        public TheEpochModel(ZonedDateTime theDate, String theName) {
+            this.theDate = theDate;
+            this.theName = theName;
+        }
+
+        /**
+         * @return the theDate.
+         */
+        public ZonedDateTime getTheDate() {
+            return theDate;
+        }
+
+        /**
+         * @return the nanos of the date.
+         */
+        public int getTheDateNanos() {
+            return ZonedDateTimeEpochType.nanosOf(this.theDate);
+        }
+
+        /**
+         * @param theDateNanos the nanos of the date.
+         */
+        public void setTheDateNanos(int theDateNanos) {
+            this.theDate = ZonedDateTimeEpochType.withNanos(this.theDate, theDateNanos);
+        }
+    }
 
 }
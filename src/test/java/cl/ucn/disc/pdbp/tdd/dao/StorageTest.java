@@ -39,7 +39,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Model test.
@@ -127,6 +129,62 @@ public final class StorageTest {
 
     }
 
+    /**
+     * Testing the cache in front of the Repository of Persona.
+     */
+    @Test
+    public void testRepositoryPersonaCached() {
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+
+            RepositoryOrmLite<Persona, Long> backend = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            RepositoryCached<Persona, Long> theRepo = new RepositoryCached<>(backend, 1, 1, TimeUnit.MINUTES,
+                    "rut");
+
+            Persona andrea = new Persona("Andrea", "Contreras", "152532873", "acontreras@ucn.cl");
+            Persona diego = new Persona("Diego", "Urrutia", "132204810", "durrutia@ucn.cl");
+            theRepo.create(andrea);
+            theRepo.create(diego);
+
+            // Miss + hit by rut
+            Assertions.assertEquals(andrea.getId(), theRepo.findAll("rut", "152532873").get(0).getId(), "Id !=");
+            Assertions.assertEquals(andrea.getId(), theRepo.findAll("rut", "152532873").get(0).getId(), "Id !=");
+            Assertions.assertEquals(1, theRepo.getHits(), "Hits != 1");
+            Assertions.assertEquals(1, theRepo.getMisses(), "Misses != 1");
+
+            // Size 1: diego evict andrea
+            Assertions.assertNotNull(theRepo.findById(diego.getId()), "Diego was null");
+            Assertions.assertEquals(1, theRepo.getEvictions(), "Evictions != 1");
+            Assertions.assertEquals(1, theRepo.size(), "Size != 1");
+
+            // The not found are not cached
+            Assertions.assertTrue(theRepo.findAll("rut", "19").isEmpty(), "Found something !?");
+
+            // The writes without the cache invalidate too
+            backend.upsert(new Persona("Diego Alberto", "Urrutia", diego.getRut(), diego.getEmail()), "rut");
+            Assertions.assertEquals("Diego Alberto", theRepo.findById(diego.getId()).getNombre(), "Stale");
+
+            // In a transaction: invalidated after the commit (the reads before the commit can cache the old one)
+            RepositoryOrmLite.callInTransaction(connectionSource, () -> {
+                theRepo.upsert(new Persona("Diego Andres", "Urrutia", diego.getRut(), diego.getEmail()), "rut");
+                return theRepo.findAll("rut", diego.getRut());
+            });
+            Assertions.assertEquals("Diego Andres", theRepo.findAll("rut", diego.getRut()).get(0).getNombre(),
+                    "Stale after the commit");
+
+            // Delete invalidate
+            theRepo.delete(diego.getId());
+            Assertions.assertNull(theRepo.findById(diego.getId()), "Diego deleted found");
+            Assertions.assertEquals(0, theRepo.size(), "Size != 0");
+
+        } catch (SQLException | IOException exception) {
+            throw new RuntimeException(exception);
+        }
+
+    }
+
     /**
      * Testing the Repository of Ficha.
      */
@@ -260,6 +318,43 @@ public final class StorageTest {
 
             }
 
+            // Get from repository in batch
+            {
+                List<Ficha> fichas = repoFicha.findAll(Fetch.BATCH);
+                Assertions.assertEquals(1, fichas.size(), "Size != 1");
+
+                Ficha ficha = fichas.get(0);
+                Assertions.assertNotNull(ficha.getDuenio(), "Duenio was null");
+                Assertions.assertNotNull(ficha.getDuenio().getRut(), "Rut was null");
+
+                // The controles with the veterinario, the ficha only with the id
+                Assertions.assertEquals(1, ficha.getControles().size(), "Size != 1");
+                Control control = ficha.getControles().get(0);
+                Assertions.assertNotNull(control.getVeterinario().getRut(), "Rut of Veterinario was null");
+                Assertions.assertEquals(ficha.getId(), control.getFicha().getId(), "Id of Ficha !=");
+
+                // Same result by ids
+                List<Ficha> byIds = repoFicha.findByIds(Collections.singletonList(ficha.getId()), Fetch.BATCH);
+                Assertions.assertEquals(1, byIds.get(0).getControles().size(), "Size != 1");
+            }
+
+            // Get from repository in batch, the controles on first access
+            {
+                Ficha ficha = repoFicha.findByIds(Collections.singletonList(1L), Fetch.LAZY).get(0);
+                Assertions.assertNotNull(ficha.getDuenio().getRut(), "Rut was null");
+                Assertions.assertEquals(1, ficha.getControles().size(), "Size != 1");
+                Assertions.assertSame(ficha.getControles(), ficha.getControles(), "Controles loaded twice");
+
+                // A Control added later: not read again until the reload
+                Control other = new Control(ZonedDateTime.now(), ZonedDateTime.now(), 38.0f, 12, 51, "Otro",
+                        ficha.getControles().get(0).getVeterinario(), ficha);
+                new RepositoryOrmLite<>(connectionSource, Control.class).create(other);
+                Assertions.assertEquals(1, ficha.getControles().size(), "Controles read again");
+                ficha.reloadControles();
+                Assertions.assertEquals(2, ficha.getControles().size(), "Control added not loaded");
+                Assertions.assertEquals("Otro", ficha.getControles().get(0).getDiagnostico(), "Not the most recent");
+            }
+
         } catch (SQLException | IOException exception) {
             throw new RuntimeException(exception);
         }
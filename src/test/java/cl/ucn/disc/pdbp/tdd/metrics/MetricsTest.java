@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.metrics;
+
+import cl.ucn.disc.pdbp.tdd.dao.Repository;
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Test of the metrics.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class MetricsTest {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(MetricsTest.class);
+
+    /**
+     * The quantiles of the histogram: max error 1/8.
+     */
+    @Test
+    public void testHistogram() {
+
+        Histogram histogram = new Histogram();
+        Assertions.assertEquals(0, histogram.getValueAtQuantile(0.99), "Empty != 0");
+
+        // 1 .. 1000 microseconds
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        Assertions.assertEquals(1000, histogram.getCount(), "Count != 1000");
+        Assertions.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMax(), "Max != 1 ms");
+
+        for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+            double expected = TimeUnit.MICROSECONDS.toNanos(Math.round(quantile * 1000));
+            long value = histogram.getValueAtQuantile(quantile);
+            log.debug("Quantile {}: {} ns.", quantile, value);
+            Assertions.assertTrue(value >= expected && value <= expected * 1.125, "Quantile " + quantile);
+        }
+        Assertions.assertEquals(histogram.getMax(), histogram.getValueAtQuantile(1), "p100 != max");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtQuantile(2));
+
+        // The extremes
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+        Assertions.assertEquals(Long.MAX_VALUE, histogram.getValueAtQuantile(1), "Max !=");
+
+    }
+
+    /**
+     * The text format of Prometheus and the timers of the repositories.
+     */
+    @Test
+    public void testRegistry() throws SQLException, IOException {
+
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram("test_seconds", "The test.", "route", "/a\"b").record(1_500_000);
+        registry.counter("test_total", "The counter.").add(3);
+        registry.gauge("test_gauge", "The gauge.", () -> 0.25);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.counter("test_seconds", "Other."));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.counter("test_odd", "Odd.", "route"));
+
+        StringBuilder sb = new StringBuilder();
+        registry.writePrometheus(sb);
+        String text = sb.toString();
+        log.debug("Metrics:\n{}", text);
+        Assertions.assertTrue(text.contains("# TYPE test_seconds summary\n"), "No summary");
+        Assertions.assertTrue(text.contains("test_seconds_count{route=\"/a\\\"b\"} 1\n"), "No count");
+        Assertions.assertTrue(text.contains("test_seconds{route=\"/a\\\"b\",quantile=\"0.5\"} 0.0015"), "No p50");
+        Assertions.assertTrue(text.contains("test_total 3\n"), "No counter");
+        Assertions.assertTrue(text.contains("test_gauge 0.25\n"), "No gauge");
+
+        // The repositories: the timer of each method and the db time of the request
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:h2:mem:")) {
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            Repository<Persona, Long> repo = new RepositoryOrmLite<>(connectionSource, Persona.class);
+
+            RequestTiming timing = RequestTiming.begin();
+            try {
+                repo.create(new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl"));
+                repo.findAll();
+            } finally {
+                RequestTiming.bind(null);
+            }
+            Assertions.assertTrue(timing.getDbNanos() > 0, "Db time == 0");
+            Assertions.assertTrue(timing.toServerTiming().startsWith("db;dur="), "Wrong Server-Timing");
+
+            Histogram findAll = MetricsRegistry.getDefault().histogram("repository_call_seconds", "The time.",
+                    "repository", "Persona", "method", "findAll");
+            Assertions.assertTrue(findAll.getCount() > 0, "findAll not timed");
+        }
+
+    }
+
+}
@@ -30,6 +30,8 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 /**
  * Model test.
  *
@@ -151,6 +153,37 @@ public final class ModelTest {
         Assertions.assertFalse(Validation.isRutValid("15253287K"));
         Assertions.assertFalse(Validation.isRutValid("15253287-"));
 
+        // Formatted
+        Assertions.assertTrue(Validation.isRutValid("15.253.287-3"));
+        Assertions.assertTrue(Validation.isRutValid("15253287-3"));
+        Assertions.assertTrue(Validation.isRutValid("21.195.194-k"));
+        Assertions.assertTrue(Validation.isRutValid("21195194k"));
+        Assertions.assertFalse(Validation.isRutValid(".15253287-3"));
+        Assertions.assertFalse(Validation.isRutValid("15..253.287-3"));
+        Assertions.assertFalse(Validation.isRutValid("15.253.287.-3"));
+        Assertions.assertFalse(Validation.isRutValid("15253287--3"));
+        Assertions.assertFalse(Validation.isRutValid("-9"));
+
+        // Long ruts (no overflow)
+        long body = 123456789012345678L;
+        Assertions.assertTrue(Validation.isRutValid(String.valueOf(body) + Validation.rutCheckDigit(body)));
+        Assertions.assertFalse(Validation.isRutValid("1234567890123456789" + Validation.rutCheckDigit(body)));
+
+        // The body and the canonical form
+        Assertions.assertEquals(15253287L, Validation.parseRut("15.253.287-3"));
+        Assertions.assertEquals(Validation.RUT_INVALID, Validation.parseRut("15.253.287-4"));
+        Assertions.assertEquals('K', Validation.rutCheckDigit(21195194L));
+        Assertions.assertEquals("21195194K", Validation.normalizeRut("21.195.194-k"));
+        Assertions.assertNull(Validation.normalizeRut("1"));
+
+        // Bulk
+        long[] bodies = Validation.parseRuts(Arrays.asList("152532873", "1525A2873", "12.124.407-1", null));
+        Assertions.assertArrayEquals(new long[]{15253287L, Validation.RUT_INVALID, 12124407L, Validation.RUT_INVALID}, bodies);
+
+        // The Persona keep the canonical rut
+        Persona persona = new Persona("Diego", "Urrutia", "15.253.287-3", "durrutia@ucn.cl");
+        Assertions.assertEquals("152532873", persona.getRut());
+
     }
 
 }
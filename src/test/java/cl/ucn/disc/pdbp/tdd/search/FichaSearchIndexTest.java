@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Diego Urrutia-Astorga <durrutia@ucn.cl>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.search;
+
+import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.model.Sexo;
+import cl.ucn.disc.pdbp.tdd.model.Tipo;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Test of the search index.
+ *
+ * @author Diego Urrutia-Astorga.
+ */
+public final class FichaSearchIndexTest {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FichaSearchIndexTest.class);
+
+    /**
+     * Testing the index of n-grams.
+     */
+    @Test
+    public void testNGramIndex() {
+
+        NGramIndex<Long> index = new NGramIndex<>(new int[]{2, 1}, new boolean[]{true, false});
+        index.put(1L, "123", "Firulais");
+        index.put(2L, "456", "Fído");
+        index.put(3L, "789", "Cachupín 123");
+
+        // Exact field first, then contains
+        Assertions.assertEquals(Arrays.asList(1L, 3L), index.search("123"), "Ranking !=");
+
+        // Case and accents
+        Assertions.assertEquals(Collections.singletonList(2L), index.search("FIDO"), "Accents");
+        Assertions.assertEquals(Collections.singletonList(3L), index.search("chupin"), "Accents");
+
+        // Short queries
+        Assertions.assertEquals(Arrays.asList(1L, 2L), index.search("fi"), "Short query");
+
+        // Not found
+        Assertions.assertTrue(index.search("xyz").isEmpty(), "Found something !?");
+
+        // Replace and remove
+        index.put(1L, "123", "Rex");
+        Assertions.assertTrue(index.search("firu").isEmpty(), "Old value found");
+        index.remove(1L);
+        Assertions.assertEquals(Collections.singletonList(3L), index.search("123"), "Removed found");
+        Assertions.assertEquals(2, index.size(), "Size != 2");
+
+    }
+
+    /**
+     * Testing the index in sync with the repositories.
+     */
+    @Test
+    public void testFichaSearchIndex() {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            TableUtils.createTableIfNotExists(connectionSource, Control.class);
+
+            RepositoryOrmLite<Ficha, Long> repoFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+            RepositoryOrmLite<Persona, Long> repoPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+
+            // Data before the index
+            Persona persona = new Persona("Diego", "Urrutia", "130144918", "durrutia@ucn.cl");
+            repoPersona.create(persona);
+            Ficha firulais = new Ficha(123, "Firulais", "Canino", ZonedDateTime.now(), "Rottweiler",
+                    Sexo.MACHO, "Negro", Tipo.INTERNO, persona);
+            repoFicha.create(firulais);
+
+            // The index
+            FichaSearchIndex index = FichaSearchIndex.build(repoFicha, repoPersona);
+            repoFicha.addListener(index.fichaListener());
+            repoPersona.addListener(index.personaListener());
+            Assertions.assertEquals(1, index.size(), "Size != 1");
+
+            // Data after the index
+            Ficha michi = new Ficha(456, "Michi", "Felino", ZonedDateTime.now(), "Angora",
+                    Sexo.HEMBRA, "Blanco", Tipo.INTERNO, persona);
+            repoFicha.create(michi);
+
+            log.debug("Searching ..");
+            Assertions.assertEquals(Collections.singletonList(firulais.getId()), index.search("123"), "By numero");
+            Assertions.assertEquals(Collections.singletonList(michi.getId()), index.search("mich"), "By nombre");
+            Assertions.assertEquals(2, index.search("014491").size(), "By rut");
+            Assertions.assertEquals(2, index.search("dieg").size(), "By duenio");
+
+            // The repository keep the order of the index
+            List<Ficha> fichas = repoFicha.findByIds(index.search("123"));
+            Assertions.assertEquals(1, fichas.size(), "Size != 1");
+            Assertions.assertEquals("Firulais", fichas.get(0).getNombrePaciente(), "Nombre !=");
+
+            // Delete
+            repoFicha.delete(michi.getId());
+            Assertions.assertTrue(index.search("mich").isEmpty(), "Deleted found");
+
+        } catch (SQLException | IOException exception) {
+            throw new RuntimeException(exception);
+        }
+
+    }
+
+}